@@ -0,0 +1,100 @@
+package cliente;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Caché local de una tabla completa (universidades o estudiantes) guardada como objetos de modelos.
+ * Tiene un límite de tamaño y un tiempo de vida; el servidor la invalida cuando cambian los datos.
+ */
+public class CacheLocal<T> {
+    private final int maxEntradas;
+    private final long ttlNanos;
+    private final ToIntFunction<T> obtenerId;
+
+    private final Map<Integer, T> entradas = new LinkedHashMap<>();
+    private boolean completa;
+    private long cargadaEn;
+
+    private long aciertos;
+    private long fallos;
+
+    public CacheLocal(int maxEntradas, long ttlMillis, ToIntFunction<T> obtenerId) {
+        this.maxEntradas = maxEntradas;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.obtenerId = obtenerId;
+    }
+
+    /**
+     * Devuelve la tabla completa si está vigente, o null si hay que pedirla al servidor
+     */
+    public synchronized List<T> obtenerTodos() {
+        if (!completa || System.nanoTime() - cargadaEn > ttlNanos) {
+            fallos++;
+            return null;
+        }
+        aciertos++;
+        return new ArrayList<>(entradas.values());
+    }
+
+    /**
+     * Reemplaza el contenido con la tabla recibida del servidor.
+     * Si la tabla supera el límite de tamaño no se guarda.
+     */
+    public synchronized void cargar(List<T> elementos) {
+        entradas.clear();
+        completa = false;
+        if (elementos.size() > maxEntradas) {
+            return;
+        }
+        for (T elemento : elementos) {
+            entradas.put(obtenerId.applyAsInt(elemento), elemento);
+        }
+        completa = true;
+        cargadaEn = System.nanoTime();
+    }
+
+    /**
+     * Descarta un registro; la tabla deja de estar completa y el próximo listado irá al servidor
+     */
+    public synchronized void invalidar(int id) {
+        entradas.remove(id);
+        completa = false;
+    }
+
+    /**
+     * Reemplaza un registro con su versión actual del servidor, o lo quita si es null, sin dejar
+     * de considerar completa la tabla
+     */
+    public synchronized void actualizar(int id, T elemento) {
+        if (elemento == null) {
+            entradas.remove(id);
+        } else if (entradas.put(id, elemento) == null && entradas.size() > maxEntradas) {
+            entradas.clear();
+            completa = false;
+        }
+    }
+
+    /**
+     * Si la tabla completa está en caché y no venció
+     */
+    public synchronized boolean isVigente() {
+        return completa && System.nanoTime() - cargadaEn <= ttlNanos;
+    }
+
+    public synchronized void invalidarTodo() {
+        entradas.clear();
+        completa = false;
+    }
+
+    public synchronized long getAciertos() {
+        return aciertos;
+    }
+
+    public synchronized long getFallos() {
+        return fallos;
+    }
+}
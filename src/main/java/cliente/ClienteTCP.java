@@ -1,20 +1,47 @@
 package cliente;
 
+import modelos.Estudiante;
+import modelos.FormatoTablas;
+import modelos.Universidad;
+
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Cliente TCP para comunicarse con el servidor
  */
 public class ClienteTCP {
-    private static final String HOST = "localhost";
-    private static final int PUERTO = 5000;
+    // Servidor o proxy balanceador: -Dcliente.host y -Dcliente.puerto
+    private static final String HOST = System.getProperty("cliente.host", "localhost");
+    private static final int PUERTO = Integer.getInteger("cliente.puerto", 5000);
+
+    // Caché local opcional: -Dcliente.cache=true
+    private static final boolean CACHE_ACTIVA = Boolean.getBoolean("cliente.cache");
+    private static final int CACHE_MAX_ENTRADAS = Integer.getInteger("cliente.cache.maxEntradas", 10000);
+    private static final long CACHE_TTL_MS = Long.getLong("cliente.cache.ttlMs", 30000L);
+
+    // Latido (PING) para que el servidor no cierre la sesión mientras el usuario está en el menú; 0 lo desactiva
+    private static final long LATIDO_SEG = Long.getLong("cliente.latidoSeg", 60L);
 
     private Socket socket;
     private PrintWriter salida;
     private BufferedReader entrada;
     private Scanner scanner;
+    private ScheduledExecutorService latido;
+
+    private final CacheLocal<Universidad> cacheUniversidades =
+            new CacheLocal<>(CACHE_MAX_ENTRADAS, CACHE_TTL_MS, Universidad::getId);
+    private final CacheLocal<Estudiante> cacheEstudiantes =
+            new CacheLocal<>(CACHE_MAX_ENTRADAS, CACHE_TTL_MS, Estudiante::getId);
+    // Cambia con cada invalidación recibida; una tabla leída mientras llegaba una no se guarda
+    private long generacion;
 
     public ClienteTCP() {
         scanner = new Scanner(System.in);
@@ -23,10 +50,15 @@ public class ClienteTCP {
     public boolean conectar() {
         try {
             socket = new Socket(HOST, PUERTO);
-            salida = new PrintWriter(socket.getOutputStream(), true);
-            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            salida = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
 
             System.out.println("\n✓ Conectado al servidor TCP en " + HOST + ":" + PUERTO);
+
+            if (CACHE_ACTIVA) {
+                System.out.println("✓ Caché local activada: " + enviarComando("SUSCRIBIR_INVALIDACIONES"));
+            }
+            iniciarLatido();
             return true;
 
         } catch (IOException e) {
@@ -35,23 +67,41 @@ public class ClienteTCP {
         }
     }
 
-    public String enviarComando(String comando) {
+    private void iniciarLatido() {
+        if (LATIDO_SEG <= 0) {
+            return;
+        }
+        latido = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "cliente-latido");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        latido.scheduleWithFixedDelay(() -> enviarComando("PING"), LATIDO_SEG, LATIDO_SEG, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Envía un comando y lee su respuesta; es sincronizado porque el latido comparte el socket
+     */
+    public synchronized String enviarComando(String comando) {
         try {
             salida.println(comando);
 
             StringBuilder respuesta = new StringBuilder();
             String linea;
 
-            if (comando.startsWith("CONSULTAR")) {
-                while ((linea = entrada.readLine()) != null) {
+            if (comando.startsWith("CONSULTAR") || comando.startsWith("FILTRAR") ||
+                    comando.startsWith("BUSCAR") || comando.equals("STATS")) {
+                // Las respuestas en formato de datos siempre terminan con "Total:"
+                boolean formatoDatos = comando.endsWith("|DATOS");
+                while ((linea = leerLinea()) != null) {
                     respuesta.append(linea).append("\n");
                     if (linea.startsWith("Total:") || linea.startsWith("ERROR:") ||
-                            linea.contains("No hay")) {
+                            (!formatoDatos && linea.contains("No hay"))) {
                         break;
                     }
                 }
             } else {
-                linea = entrada.readLine();
+                linea = leerLinea();
                 if (linea != null) {
                     respuesta.append(linea);
                 }
@@ -64,6 +114,124 @@ public class ClienteTCP {
         }
     }
 
+    /**
+     * Lee la siguiente línea de respuesta, aplicando las invalidaciones que el servidor intercale
+     */
+    private String leerLinea() throws IOException {
+        String linea;
+        while ((linea = entrada.readLine()) != null && linea.startsWith("INVALIDAR|")) {
+            aplicarInvalidacion(linea);
+        }
+        return linea;
+    }
+
+    /**
+     * Aplica las invalidaciones que llegaron mientras el cliente no estaba leyendo
+     */
+    private void procesarInvalidacionesPendientes() throws IOException {
+        while (entrada.ready()) {
+            String linea = entrada.readLine();
+            if (linea == null) {
+                return;
+            }
+            if (linea.startsWith("INVALIDAR|")) {
+                aplicarInvalidacion(linea);
+            }
+        }
+    }
+
+    private void aplicarInvalidacion(String linea) {
+        // INVALIDAR|entidad|id|operacion
+        String[] partes = linea.split("\\|");
+        if (partes.length < 3) {
+            return;
+        }
+        generacion++;
+        // "*" avisa un lote: cambió la tabla entera
+        boolean tabla = partes[2].equals("*");
+        int id;
+        try {
+            id = tabla ? 0 : Integer.parseInt(partes[2]);
+        } catch (NumberFormatException e) {
+            id = 0;
+        }
+        if (partes[1].equals("UNIVERSIDAD")) {
+            if (tabla) {
+                cacheUniversidades.invalidarTodo();
+            } else {
+                cacheUniversidades.invalidar(id);
+            }
+            // Los estudiantes guardan el nombre de su universidad
+            cacheEstudiantes.invalidarTodo();
+        } else if (partes[1].equals("ESTUDIANTE")) {
+            if (tabla) {
+                cacheEstudiantes.invalidarTodo();
+            } else {
+                cacheEstudiantes.invalidar(id);
+            }
+        }
+    }
+
+    /**
+     * Obtiene todas las universidades, desde la caché local si está activa y vigente
+     */
+    public synchronized List<Universidad> obtenerUniversidades() throws IOException {
+        if (CACHE_ACTIVA) {
+            procesarInvalidacionesPendientes();
+            List<Universidad> enCache = cacheUniversidades.obtenerTodos();
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        long generacionCarga = generacion;
+        List<Universidad> universidades = new ArrayList<>();
+        for (String linea : pedirDatos("CONSULTAR_UNIVERSIDADES|DATOS")) {
+            universidades.add(Universidad.desdeLineaDatos(linea));
+        }
+        if (CACHE_ACTIVA && generacion == generacionCarga) {
+            cacheUniversidades.cargar(universidades);
+        }
+        return universidades;
+    }
+
+    /**
+     * Obtiene todos los estudiantes, desde la caché local si está activa y vigente
+     */
+    public synchronized List<Estudiante> obtenerEstudiantes() throws IOException {
+        if (CACHE_ACTIVA) {
+            procesarInvalidacionesPendientes();
+            List<Estudiante> enCache = cacheEstudiantes.obtenerTodos();
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        long generacionCarga = generacion;
+        List<Estudiante> estudiantes = new ArrayList<>();
+        for (String linea : pedirDatos("CONSULTAR_ESTUDIANTES|DATOS")) {
+            estudiantes.add(Estudiante.desdeLineaDatos(linea));
+        }
+        if (CACHE_ACTIVA && generacion == generacionCarga) {
+            cacheEstudiantes.cargar(estudiantes);
+        }
+        return estudiantes;
+    }
+
+    private List<String> pedirDatos(String comando) throws IOException {
+        String respuesta = enviarComando(comando);
+        if (respuesta.startsWith("ERROR:")) {
+            throw new IOException(respuesta.trim());
+        }
+        List<String> lineas = new ArrayList<>();
+        for (String linea : respuesta.split("\n")) {
+            if (!linea.isEmpty() && !linea.startsWith("Total:")) {
+                lineas.add(linea);
+            }
+        }
+        return lineas;
+    }
+
     public void mostrarMenu() {
         boolean continuar = true;
 
@@ -107,7 +275,8 @@ public class ClienteTCP {
             System.out.println("║  2. Consultar Universidades              ║");
             System.out.println("║  3. Actualizar Universidad               ║");
             System.out.println("║  4. Eliminar Universidad                 ║");
-            System.out.println("║  5. Volver al menú principal             ║");
+            System.out.println("║  5. Buscar Universidad por nombre        ║");
+            System.out.println("║  6. Volver al menú principal             ║");
             System.out.println("╚══════════════════════════════════════════╝");
             System.out.print("Seleccione una opción: ");
 
@@ -128,6 +297,9 @@ public class ClienteTCP {
                     eliminarUniversidad();
                     break;
                 case 5:
+                    buscarUniversidad();
+                    break;
+                case 6:
                     continuar = false;
                     break;
                 default:
@@ -147,7 +319,9 @@ public class ClienteTCP {
             System.out.println("║  2. Consultar Estudiantes                ║");
             System.out.println("║  3. Actualizar Estudiante                ║");
             System.out.println("║  4. Eliminar Estudiante                  ║");
-            System.out.println("║  5. Volver al menú principal             ║");
+            System.out.println("║  5. Filtrar Estudiantes                  ║");
+            System.out.println("║  6. Buscar Estudiante por nombre         ║");
+            System.out.println("║  7. Volver al menú principal             ║");
             System.out.println("╚══════════════════════════════════════════╝");
             System.out.print("Seleccione una opción: ");
 
@@ -168,6 +342,12 @@ public class ClienteTCP {
                     eliminarEstudiante();
                     break;
                 case 5:
+                    filtrarEstudiantes();
+                    break;
+                case 6:
+                    buscarEstudiante();
+                    break;
+                case 7:
                     continuar = false;
                     break;
                 default:
@@ -196,7 +376,16 @@ public class ClienteTCP {
 
     private void consultarUniversidades() {
         System.out.println("\n--- CONSULTAR UNIVERSIDADES ---");
-        String respuesta = enviarComando("CONSULTAR_UNIVERSIDADES");
+        String respuesta;
+        if (CACHE_ACTIVA) {
+            try {
+                respuesta = FormatoTablas.universidades(obtenerUniversidades());
+            } catch (IOException e) {
+                respuesta = e.getMessage();
+            }
+        } else {
+            respuesta = enviarComando("CONSULTAR_UNIVERSIDADES");
+        }
         System.out.println("\n" + respuesta);
     }
 
@@ -232,6 +421,15 @@ public class ClienteTCP {
         System.out.println("\n" + respuesta);
     }
 
+    private void buscarUniversidad() {
+        System.out.println("\n--- BUSCAR UNIVERSIDAD ---");
+        System.out.print("Nombre o ciudad (puede ser parcial): ");
+        String texto = scanner.nextLine();
+
+        String respuesta = enviarComando("BUSCAR_UNIVERSIDAD|" + texto);
+        System.out.println("\n" + respuesta);
+    }
+
     // ========== MÉTODOS ESTUDIANTES ==========
     private void insertarEstudiante() {
         System.out.println("\n--- INSERTAR ESTUDIANTE ---");
@@ -259,7 +457,16 @@ public class ClienteTCP {
 
     private void consultarEstudiantes() {
         System.out.println("\n--- CONSULTAR ESTUDIANTES ---");
-        String respuesta = enviarComando("CONSULTAR_ESTUDIANTES");
+        String respuesta;
+        if (CACHE_ACTIVA) {
+            try {
+                respuesta = FormatoTablas.estudiantes(obtenerEstudiantes());
+            } catch (IOException e) {
+                respuesta = e.getMessage();
+            }
+        } else {
+            respuesta = enviarComando("CONSULTAR_ESTUDIANTES");
+        }
         System.out.println("\n" + respuesta);
     }
 
@@ -302,7 +509,36 @@ public class ClienteTCP {
         System.out.println("\n" + respuesta);
     }
 
+    private void filtrarEstudiantes() {
+        System.out.println("\n--- FILTRAR ESTUDIANTES ---");
+        System.out.println("Condiciones separadas por ';' (ej: universidadId=3;edad>25;apellido~gar), * para todos");
+        System.out.print("Condiciones: ");
+        String condiciones = scanner.nextLine();
+
+        System.out.print("Orden (ej: apellido:ASC,edad:DESC, vacío sin orden): ");
+        String orden = scanner.nextLine();
+
+        String comando = "FILTRAR_ESTUDIANTES|" + (condiciones.isBlank() ? "*" : condiciones);
+        if (!orden.isBlank()) {
+            comando += "|" + orden;
+        }
+        String respuesta = enviarComando(comando);
+        System.out.println("\n" + respuesta);
+    }
+
+    private void buscarEstudiante() {
+        System.out.println("\n--- BUSCAR ESTUDIANTE ---");
+        System.out.print("Nombre o apellido (puede ser parcial): ");
+        String texto = scanner.nextLine();
+
+        String respuesta = enviarComando("BUSCAR_ESTUDIANTE|" + texto);
+        System.out.println("\n" + respuesta);
+    }
+
     public void desconectar() {
+        if (latido != null) {
+            latido.shutdownNow();
+        }
         try {
             if (salida != null) {
                 salida.println("SALIR");
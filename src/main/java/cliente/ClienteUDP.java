@@ -1,21 +1,59 @@
 package cliente;
 
+import modelos.Estudiante;
+import modelos.FormatoTablas;
+import modelos.Universidad;
+
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Cliente UDP para comunicarse con el servidor
  */
 public class ClienteUDP {
-    private static final String HOST = "localhost";
-    private static final int PUERTO = 5001;
+    // Servidor o proxy balanceador: -Dcliente.host y -Dcliente.puerto
+    private static final String HOST = System.getProperty("cliente.host", "localhost");
+    private static final int PUERTO = Integer.getInteger("cliente.puerto", 5001);
     private static final int TAMAÑO_BUFFER = 65535;
 
+    // Caché local mantenida con los avisos multicast del servidor: -Dcliente.multicast.grupo
+    // (vacío = sin caché), -Dcliente.multicast.puerto y -Dcliente.multicast.interfaz (p. ej. lo)
+    private static final String GRUPO_MULTICAST = System.getProperty("cliente.multicast.grupo", "");
+    private static final int PUERTO_MULTICAST = Integer.getInteger("cliente.multicast.puerto", 5002);
+    private static final String INTERFAZ_MULTICAST = System.getProperty("cliente.multicast.interfaz", "");
+    private static final int CACHE_MAX_ENTRADAS = Integer.getInteger("cliente.cache.maxEntradas", 10000);
+    private static final long CACHE_TTL_MS = Long.getLong("cliente.cache.ttlMs", 30000L);
+    // Con más registros cambiados que estos, recargar la tabla cuesta menos que pedirlos uno a uno
+    private static final int MAX_REFRESCOS = Integer.getInteger("cliente.multicast.maxRefrescos", 50);
+
     private DatagramSocket socket;
     private InetAddress direccionServidor;
     private Scanner scanner;
 
+    // Null si no se usa la caché local
+    private MulticastSocket avisos;
+    private final CacheLocal<Universidad> cacheUniversidades =
+            new CacheLocal<>(CACHE_MAX_ENTRADAS, CACHE_TTL_MS, Universidad::getId);
+    private final CacheLocal<Estudiante> cacheEstudiantes =
+            new CacheLocal<>(CACHE_MAX_ENTRADAS, CACHE_TTL_MS, Estudiante::getId);
+    // IDs avisados que se pedirán al servidor antes del próximo listado
+    private final Set<Integer> universidadesPendientes = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> estudiantesPendientes = ConcurrentHashMap.newKeySet();
+    // Última versión vista de cada servidor que publica en el grupo; solo la usa el hilo de avisos
+    private final Map<SocketAddress, Long> versiones = new HashMap<>();
+    // Cambia con cada invalidación completa; una tabla pedida antes de un cambio no se guarda
+    private volatile long generacion;
+
     public ClienteUDP() {
         scanner = new Scanner(System.in);
     }
@@ -26,6 +64,9 @@ public class ClienteUDP {
             direccionServidor = InetAddress.getByName(HOST);
 
             System.out.println("\n✓ Cliente UDP configurado para servidor en " + HOST + ":" + PUERTO);
+            if (!GRUPO_MULTICAST.isBlank()) {
+                iniciarAvisos();
+            }
             return true;
 
         } catch (SocketException | UnknownHostException e) {
@@ -36,7 +77,7 @@ public class ClienteUDP {
 
     public String enviarComando(String comando) {
         try {
-            byte[] bufferSalida = comando.getBytes();
+            byte[] bufferSalida = comando.getBytes(StandardCharsets.UTF_8);
             DatagramPacket paqueteSalida = new DatagramPacket(
                     bufferSalida, bufferSalida.length, direccionServidor, PUERTO);
             socket.send(paqueteSalida);
@@ -47,7 +88,7 @@ public class ClienteUDP {
             socket.setSoTimeout(5000);
             socket.receive(paqueteEntrada);
 
-            String respuesta = new String(paqueteEntrada.getData(), 0, paqueteEntrada.getLength());
+            String respuesta = new String(paqueteEntrada.getData(), 0, paqueteEntrada.getLength(), StandardCharsets.UTF_8);
             return respuesta;
 
         } catch (SocketTimeoutException e) {
@@ -57,6 +98,184 @@ public class ClienteUDP {
         }
     }
 
+    /**
+     * Se une al grupo multicast y recibe los avisos en un hilo aparte; si no puede, el cliente
+     * sigue funcionando sin caché
+     */
+    private void iniciarAvisos() {
+        try {
+            InetAddress grupo = InetAddress.getByName(GRUPO_MULTICAST);
+            NetworkInterface interfaz = INTERFAZ_MULTICAST.isBlank() ? null
+                    : NetworkInterface.getByName(INTERFAZ_MULTICAST);
+            avisos = new MulticastSocket(PUERTO_MULTICAST);
+            avisos.joinGroup(new InetSocketAddress(grupo, PUERTO_MULTICAST), interfaz);
+        } catch (IOException e) {
+            System.err.println("⚠ No se pudo unir al grupo multicast, se consultará siempre al servidor: "
+                    + e.getMessage());
+            if (avisos != null) {
+                avisos.close();
+                avisos = null;
+            }
+            return;
+        }
+        Thread hilo = new Thread(this::recibirAvisos, "cliente-avisos");
+        hilo.setDaemon(true);
+        hilo.start();
+        System.out.println("✓ Caché local activada con avisos de " + GRUPO_MULTICAST + ":" + PUERTO_MULTICAST);
+    }
+
+    private void recibirAvisos() {
+        byte[] buffer = new byte[512];
+        while (!avisos.isClosed()) {
+            DatagramPacket paquete = new DatagramPacket(buffer, buffer.length);
+            try {
+                avisos.receive(paquete);
+            } catch (IOException e) {
+                continue;
+            }
+            aplicarAviso(new String(paquete.getData(), 0, paquete.getLength(), StandardCharsets.UTF_8), paquete.getSocketAddress());
+        }
+    }
+
+    private void aplicarAviso(String mensaje, SocketAddress origen) {
+        // CAMBIO|entidad|id|operacion|version
+        String[] partes = mensaje.split("\\|");
+        if (partes.length != 5 || !partes[0].equals("CAMBIO")) {
+            return;
+        }
+        int id;
+        long version;
+        try {
+            id = Integer.parseInt(partes[2]);
+            version = Long.parseLong(partes[4]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        Long anterior = versiones.put(origen, version);
+        if (anterior == null ? version != 1 : version != anterior + 1) {
+            // Se perdieron avisos, o el servidor ya había publicado antes de que el cliente se uniera
+            invalidarTodo();
+            return;
+        }
+        if (partes[1].equals("UNIVERSIDAD")) {
+            universidadesPendientes.add(id);
+            if (!partes[3].equals("INSERTAR")) {
+                // Los estudiantes guardan el nombre de su universidad
+                generacion++;
+                estudiantesPendientes.clear();
+                cacheEstudiantes.invalidarTodo();
+            }
+        } else if (partes[1].equals("ESTUDIANTE")) {
+            estudiantesPendientes.add(id);
+        }
+    }
+
+    private void invalidarTodo() {
+        generacion++;
+        universidadesPendientes.clear();
+        estudiantesPendientes.clear();
+        cacheUniversidades.invalidarTodo();
+        cacheEstudiantes.invalidarTodo();
+    }
+
+    /**
+     * Obtiene todas las universidades, desde la caché local si está activa y vigente
+     */
+    public List<Universidad> obtenerUniversidades() throws IOException {
+        if (avisos != null) {
+            refrescarPendientes(universidadesPendientes, cacheUniversidades, "CONSULTAR_UNIVERSIDAD",
+                    Universidad::desdeLineaDatos);
+            List<Universidad> enCache = cacheUniversidades.obtenerTodos();
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        long generacionCarga = generacion;
+        // Lo avisado hasta aquí ya viene en la tabla completa
+        universidadesPendientes.clear();
+        List<Universidad> universidades = new ArrayList<>();
+        for (String linea : pedirDatos("CONSULTAR_UNIVERSIDADES|DATOS")) {
+            universidades.add(Universidad.desdeLineaDatos(linea));
+        }
+        if (avisos != null && generacion == generacionCarga) {
+            cacheUniversidades.cargar(universidades);
+        }
+        return universidades;
+    }
+
+    /**
+     * Obtiene todos los estudiantes, desde la caché local si está activa y vigente
+     */
+    public List<Estudiante> obtenerEstudiantes() throws IOException {
+        if (avisos != null) {
+            refrescarPendientes(estudiantesPendientes, cacheEstudiantes, "CONSULTAR_ESTUDIANTE",
+                    Estudiante::desdeLineaDatos);
+            List<Estudiante> enCache = cacheEstudiantes.obtenerTodos();
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        long generacionCarga = generacion;
+        estudiantesPendientes.clear();
+        List<Estudiante> estudiantes = new ArrayList<>();
+        for (String linea : pedirDatos("CONSULTAR_ESTUDIANTES|DATOS")) {
+            estudiantes.add(Estudiante.desdeLineaDatos(linea));
+        }
+        if (avisos != null && generacion == generacionCarga) {
+            cacheEstudiantes.cargar(estudiantes);
+        }
+        return estudiantes;
+    }
+
+    /**
+     * Pide al servidor solo los registros avisados y los reemplaza en la caché. Si son demasiados
+     * o falla alguno, descarta la tabla para que se recargue completa.
+     */
+    private <T> void refrescarPendientes(Set<Integer> pendientes, CacheLocal<T> cache, String consulta,
+                                         Function<String, T> desdeLinea) {
+        if (pendientes.isEmpty() || !cache.isVigente()) {
+            return;
+        }
+        if (pendientes.size() > MAX_REFRESCOS) {
+            cache.invalidarTodo();
+            return;
+        }
+        Iterator<Integer> iterador = pendientes.iterator();
+        while (iterador.hasNext()) {
+            int id = iterador.next();
+            iterador.remove();
+            long generacionAntes = generacion;
+            List<String> lineas;
+            try {
+                lineas = pedirDatos(consulta + "|" + id + "|DATOS");
+            } catch (IOException e) {
+                cache.invalidarTodo();
+                return;
+            }
+            if (generacion != generacionAntes) {
+                return;
+            }
+            cache.actualizar(id, lineas.isEmpty() ? null : desdeLinea.apply(lineas.get(0)));
+        }
+    }
+
+    private List<String> pedirDatos(String comando) throws IOException {
+        String respuesta = enviarComando(comando);
+        if (respuesta.startsWith("ERROR:")) {
+            throw new IOException(respuesta.trim());
+        }
+        List<String> lineas = new ArrayList<>();
+        for (String linea : respuesta.split("\n")) {
+            if (!linea.isEmpty() && !linea.startsWith("Total:")) {
+                lineas.add(linea);
+            }
+        }
+        return lineas;
+    }
+
     public void mostrarMenu() {
         boolean continuar = true;
 
@@ -189,7 +408,16 @@ public class ClienteUDP {
 
     private void consultarUniversidades() {
         System.out.println("\n--- CONSULTAR UNIVERSIDADES ---");
-        String respuesta = enviarComando("CONSULTAR_UNIVERSIDADES");
+        String respuesta;
+        if (avisos != null) {
+            try {
+                respuesta = FormatoTablas.universidades(obtenerUniversidades());
+            } catch (IOException e) {
+                respuesta = e.getMessage();
+            }
+        } else {
+            respuesta = enviarComando("CONSULTAR_UNIVERSIDADES");
+        }
         System.out.println("\n" + respuesta);
     }
 
@@ -252,7 +480,16 @@ public class ClienteUDP {
 
     private void consultarEstudiantes() {
         System.out.println("\n--- CONSULTAR ESTUDIANTES ---");
-        String respuesta = enviarComando("CONSULTAR_ESTUDIANTES");
+        String respuesta;
+        if (avisos != null) {
+            try {
+                respuesta = FormatoTablas.estudiantes(obtenerEstudiantes());
+            } catch (IOException e) {
+                respuesta = e.getMessage();
+            }
+        } else {
+            respuesta = enviarComando("CONSULTAR_ESTUDIANTES");
+        }
         System.out.println("\n" + respuesta);
     }
 
@@ -297,6 +534,9 @@ public class ClienteUDP {
 
     public void desconectar() {
         try {
+            if (avisos != null) {
+                avisos.close();
+            }
             if (socket != null && !socket.isClosed()) {
                 enviarComando("SALIR");
                 socket.close();
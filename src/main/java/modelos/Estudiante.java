@@ -92,6 +92,34 @@ public class Estudiante {
         this.universidadNombre = universidadNombre;
     }
 
+    /**
+     * Serializa el estudiante en una línea de datos del protocolo
+     */
+    public String aLineaDatos() {
+        return "ESTUDIANTE|" + id + "|" + valor(nombre) + "|" + valor(apellido) + "|" + valor(email) + "|" +
+                edad + "|" + universidadId + "|" + valor(universidadNombre);
+    }
+
+    /**
+     * Reconstruye un estudiante a partir de una línea de datos del protocolo
+     */
+    public static Estudiante desdeLineaDatos(String linea) {
+        String[] partes = linea.split("\\|", -1);
+        if (partes.length != 8 || !partes[0].equals("ESTUDIANTE")) {
+            throw new IllegalArgumentException("Línea de estudiante inválida: " + linea);
+        }
+        Estudiante estudiante = new Estudiante(Integer.parseInt(partes[1]), partes[2], partes[3], partes[4],
+                Integer.parseInt(partes[5]), Integer.parseInt(partes[6]));
+        if (!partes[7].isEmpty()) {
+            estudiante.setUniversidadNombre(partes[7]);
+        }
+        return estudiante;
+    }
+
+    private static String valor(String texto) {
+        return texto != null ? texto : "";
+    }
+
     @Override
     public String toString() {
         return String.format("ID: %d | %s %s | %s | Edad: %d | Universidad: %s",
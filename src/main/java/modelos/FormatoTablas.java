@@ -0,0 +1,72 @@
+package modelos;
+
+import java.util.List;
+
+/**
+ * Formato de las tablas que se muestran al consultar universidades y estudiantes.
+ * Lo comparten el servidor y la caché local del cliente para que ambas vistas sean idénticas.
+ */
+public final class FormatoTablas {
+
+    private FormatoTablas() {
+    }
+
+    /**
+     * Genera la tabla de universidades
+     */
+    public static String universidades(List<Universidad> universidades) {
+        if (universidades.isEmpty()) {
+            return "No hay universidades registradas en la base de datos.";
+        }
+
+        StringBuilder resultado = new StringBuilder();
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+        resultado.append("                    LISTA DE UNIVERSIDADES\n");
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+
+        for (Universidad universidad : universidades) {
+            resultado.append(String.format("ID: %-4d | %-30s | %-20s | %s\n",
+                    universidad.getId(),
+                    universidad.getNombre(),
+                    universidad.getCiudad(),
+                    universidad.getPais()));
+        }
+
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+        resultado.append(String.format("Total: %d universidad(es)\n", universidades.size()));
+        return resultado.toString();
+    }
+
+    /**
+     * Genera la tabla de estudiantes con el nombre de su universidad
+     */
+    public static String estudiantes(List<Estudiante> estudiantes) {
+        if (estudiantes.isEmpty()) {
+            return "No hay estudiantes registrados en la base de datos.";
+        }
+
+        StringBuilder resultado = new StringBuilder();
+        resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
+        resultado.append("                           LISTA DE ESTUDIANTES\n");
+        resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
+
+        for (Estudiante estudiante : estudiantes) {
+            String universidad = estudiante.getUniversidadNombre();
+            if (universidad == null) {
+                universidad = "Sin asignar";
+            }
+
+            resultado.append(String.format("ID: %-4d | %-15s %-15s | %-25s | Edad: %-3d | %s\n",
+                    estudiante.getId(),
+                    estudiante.getNombre(),
+                    estudiante.getApellido(),
+                    estudiante.getEmail(),
+                    estudiante.getEdad(),
+                    universidad));
+        }
+
+        resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
+        resultado.append(String.format("Total: %d estudiante(s)\n", estudiantes.size()));
+        return resultado.toString();
+    }
+}
@@ -61,6 +61,28 @@ public class Universidad {
         this.pais = pais;
     }
 
+    /**
+     * Serializa la universidad en una línea de datos del protocolo
+     */
+    public String aLineaDatos() {
+        return "UNIVERSIDAD|" + id + "|" + valor(nombre) + "|" + valor(ciudad) + "|" + valor(pais);
+    }
+
+    /**
+     * Reconstruye una universidad a partir de una línea de datos del protocolo
+     */
+    public static Universidad desdeLineaDatos(String linea) {
+        String[] partes = linea.split("\\|", -1);
+        if (partes.length != 5 || !partes[0].equals("UNIVERSIDAD")) {
+            throw new IllegalArgumentException("Línea de universidad inválida: " + linea);
+        }
+        return new Universidad(Integer.parseInt(partes[1]), partes[2], partes[3], partes[4]);
+    }
+
+    private static String valor(String texto) {
+        return texto != null ? texto : "";
+    }
+
     @Override
     public String toString() {
         return String.format("ID: %d | %s | %s, %s",
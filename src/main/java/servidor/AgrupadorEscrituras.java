@@ -0,0 +1,231 @@
+package servidor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Agrupa inserciones y actualizaciones de filas sueltas que llegan al mismo tiempo desde
+ * distintos clientes y las ejecuta como un lote JDBC en una sola transacción (group commit).
+ *
+ * Cada llamador espera su propio resultado: el ID generado en las inserciones o las filas
+ * afectadas en las actualizaciones. Si el lote falla, se reintenta cada escritura por separado
+ * para que solo la escritura inválida reciba el error.
+ */
+public class AgrupadorEscrituras {
+    private static final long ESPERA_RESULTADO_MS = 30000L;
+
+    private static final class Escritura {
+        final String sql;
+        final boolean generaClave;
+        final Object[] parametros;
+        final CompletableFuture<Integer> resultado = new CompletableFuture<>();
+
+        Escritura(String sql, boolean generaClave, Object[] parametros) {
+            this.sql = sql;
+            this.generaClave = generaClave;
+            this.parametros = parametros;
+        }
+    }
+
+    private final PoolConexiones pool;
+    private final long ventanaNanos;
+    private final int maxLote;
+    private final LinkedBlockingQueue<Escritura> cola = new LinkedBlockingQueue<>();
+    private final Thread hilo;
+    private volatile boolean ejecutando = true;
+
+    public AgrupadorEscrituras(PoolConexiones pool, long ventanaMicros, int maxLote) {
+        this.pool = pool;
+        this.ventanaNanos = TimeUnit.MICROSECONDS.toNanos(ventanaMicros);
+        this.maxLote = maxLote;
+        this.hilo = new Thread(this::procesarCola, "agrupador-escrituras");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+
+        Metricas.registrarMedidor("db.agrupador.enCola", cola::size);
+    }
+
+    /**
+     * Encola una escritura y espera a que se ejecute con su lote.
+     * Devuelve el ID generado (si generaClave) o la cantidad de filas afectadas.
+     */
+    public int ejecutar(String sql, boolean generaClave, Object... parametros) throws SQLException {
+        if (!ejecutando) {
+            throw new SQLException("El agrupador de escrituras está detenido");
+        }
+        Escritura escritura = new Escritura(sql, generaClave, parametros);
+        long inicioEspera = Traza.marcar();
+        cola.add(escritura);
+        try {
+            try {
+                return escritura.resultado.get(ESPERA_RESULTADO_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Solo falla si nunca entró en un lote; si ya está en uno, puede confirmarse igual
+                if (cola.remove(escritura)) {
+                    Metricas.incrementar("db.agrupador.vencidas");
+                    throw new SQLException("La escritura no se completó en " + ESPERA_RESULTADO_MS + " ms");
+                }
+                return escritura.resultado.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando la escritura");
+        } finally {
+            // La espera del lote incluye su conexión; se cuenta toda como SQL
+            Traza.sumar(Traza.Fase.SQL, inicioEspera);
+        }
+    }
+
+    public void detener() {
+        ejecutando = false;
+        hilo.interrupt();
+    }
+
+    private void procesarCola() {
+        List<Escritura> lote = new ArrayList<>(maxLote);
+        while (ejecutando || !cola.isEmpty()) {
+            try {
+                Escritura primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+
+                // Junta lo que llegue durante la ventana, sin pasar del máximo del lote
+                long limite = System.nanoTime() + ventanaNanos;
+                while (lote.size() < maxLote) {
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) {
+                        cola.drainTo(lote, maxLote - lote.size());
+                        break;
+                    }
+                    Escritura siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                }
+            } catch (InterruptedException e) {
+                if (!ejecutando) {
+                    cola.drainTo(lote);
+                }
+            }
+
+            if (!lote.isEmpty()) {
+                ejecutarLote(lote);
+                lote.clear();
+            }
+        }
+    }
+
+    private void ejecutarLote(List<Escritura> lote) {
+        long inicio = System.nanoTime();
+        Metricas.incrementar("db.agrupador.lotes");
+        Metricas.sumar("db.agrupador.escrituras", lote.size());
+
+        // Mismo SQL en el mismo PreparedStatement; se conserva el orden de llegada dentro de cada grupo
+        Map<String, List<Escritura>> grupos = new LinkedHashMap<>();
+        for (Escritura escritura : lote) {
+            grupos.computeIfAbsent(escritura.sql, k -> new ArrayList<>()).add(escritura);
+        }
+
+        Connection conexion = null;
+        try {
+            conexion = pool.obtener();
+            conexion.setAutoCommit(false);
+            Map<Escritura, Integer> resultados = new LinkedHashMap<>();
+            for (List<Escritura> grupo : grupos.values()) {
+                ejecutarGrupo(conexion, grupo, resultados);
+            }
+            conexion.commit();
+            resultados.forEach((escritura, valor) -> escritura.resultado.complete(valor));
+        } catch (SQLException e) {
+            Metricas.incrementar("db.agrupador.lotesFallidos");
+            if (conexion != null) {
+                try {
+                    conexion.rollback();
+                } catch (SQLException ignorada) {
+                    // La conexión se descarta al liberarla si quedó inservible
+                }
+            }
+            ejecutarPorSeparado(conexion, lote, e);
+        } finally {
+            pool.liberar(conexion);
+            Metricas.registrarTiempo("db.agrupador.lote", inicio);
+        }
+    }
+
+    private void ejecutarGrupo(Connection conexion, List<Escritura> grupo, Map<Escritura, Integer> resultados)
+            throws SQLException {
+        Escritura modelo = grupo.get(0);
+        try (PreparedStatement pstmt = modelo.generaClave
+                ? conexion.prepareStatement(modelo.sql, Statement.RETURN_GENERATED_KEYS)
+                : conexion.prepareStatement(modelo.sql)) {
+
+            for (Escritura escritura : grupo) {
+                asignarParametros(pstmt, escritura.parametros);
+                pstmt.addBatch();
+            }
+            int[] filas = pstmt.executeBatch();
+
+            if (modelo.generaClave) {
+                try (ResultSet claves = pstmt.getGeneratedKeys()) {
+                    for (int i = 0; i < grupo.size(); i++) {
+                        resultados.put(grupo.get(i), claves.next() ? claves.getInt(1) : 0);
+                    }
+                }
+            } else {
+                for (int i = 0; i < grupo.size(); i++) {
+                    resultados.put(grupo.get(i), filas[i] == Statement.SUCCESS_NO_INFO ? 1 : filas[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tras un lote fallido, ejecuta cada escritura en su propia transacción
+     */
+    private void ejecutarPorSeparado(Connection conexion, List<Escritura> lote, SQLException errorLote) {
+        if (conexion == null) {
+            lote.forEach(escritura -> escritura.resultado.completeExceptionally(errorLote));
+            return;
+        }
+        for (Escritura escritura : lote) {
+            try {
+                conexion.setAutoCommit(true);
+                Map<Escritura, Integer> resultado = new LinkedHashMap<>();
+                ejecutarGrupo(conexion, List.of(escritura), resultado);
+                escritura.resultado.complete(resultado.get(escritura));
+            } catch (SQLException e) {
+                escritura.resultado.completeExceptionally(e);
+            }
+        }
+    }
+
+    static void asignarParametros(PreparedStatement pstmt, Object[] parametros) throws SQLException {
+        for (int i = 0; i < parametros.length; i++) {
+            if (parametros[i] instanceof Integer) {
+                pstmt.setInt(i + 1, (Integer) parametros[i]);
+            } else {
+                pstmt.setString(i + 1, (String) parametros[i]);
+            }
+        }
+    }
+}
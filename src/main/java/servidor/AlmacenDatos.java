@@ -0,0 +1,106 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Acceso a los datos de universidades y estudiantes. DatabaseManager arma las respuestas,
+ * avisa a los oyentes y registra métricas; el almacén solo guarda y lee.
+ *
+ * Hay dos implementaciones: AlmacenJdbc (PostgreSQL) y AlmacenMemoria (en el proceso,
+ * persistido con diario e instantáneas periódicas). Se elige con -Dbd.almacen=postgres|memoria.
+ */
+public interface AlmacenDatos {
+
+    // ==================== UNIVERSIDADES ====================
+
+    /** Devuelve el ID generado, o 0 si el almacén no lo informa */
+    int insertarUniversidad(String nombre, String ciudad, String pais) throws SQLException;
+
+    /** Inserta con un ID asignado afuera, por ejemplo al repartir filas entre fragmentos */
+    void insertarUniversidadConId(int id, String nombre, String ciudad, String pais) throws SQLException;
+
+    List<Universidad> listarUniversidades() throws SQLException;
+
+    /** Busca por clave primaria; devuelve null si no existe */
+    Universidad obtenerUniversidad(int id) throws SQLException;
+
+    /** Devuelve false si no existe ninguna universidad con ese ID */
+    boolean actualizarUniversidad(int id, String nombre, String ciudad, String pais) throws SQLException;
+
+    boolean eliminarUniversidad(int id) throws SQLException;
+
+    // ==================== ESTUDIANTES ====================
+
+    int insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException;
+
+    void insertarEstudianteConId(int id, String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException;
+
+    /** Ordenados por ID. El nombre de la universidad lo completa DatabaseManager desde su mapa residente */
+    List<Estudiante> listarEstudiantes() throws SQLException;
+
+    /** Busca por clave primaria, sin el nombre de la universidad; devuelve null si no existe */
+    Estudiante obtenerEstudiante(int id) throws SQLException;
+
+    boolean actualizarEstudiante(int id, String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException;
+
+    boolean eliminarEstudiante(int id) throws SQLException;
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    /**
+     * Inserta lo que pueda del lote. Devuelve el ID de cada fila en el orden recibido:
+     * -1 si la fila no se insertó, 0 si se insertó pero el almacén no informó la clave.
+     */
+    int[] insertarLoteUniversidades(List<Universidad> universidades, boolean conId) throws SQLException;
+
+    int[] insertarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) throws SQLException;
+
+    /** El ID más alto de la tabla, o 0 si está vacía */
+    int maximoId(String tabla) throws SQLException;
+
+    /** Tras insertar IDs explícitos, los IDs generados siguen después del más alto */
+    void ajustarSecuencia(String tabla) throws SQLException;
+
+    /**
+     * Reserva un bloque de tamano IDs de estudiante consecutivos que nadie más recibirá, aunque
+     * varios servidores compartan la base, y devuelve el primero; nunca empieza en minimo o antes
+     */
+    int reservarIdsEstudiantes(int tamano, int minimo) throws SQLException;
+
+    /** Entrega el encabezado y cada fila de la tabla al escritor; devuelve cuántas filas escribió */
+    long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException;
+
+    // ==================== TRANSACCIONES ====================
+
+    /** Abre una transacción para el hilo actual; las operaciones siguientes la usan */
+    Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException;
+
+    /** Transacción abierta por el hilo actual, o null */
+    Transaccion transaccionActual();
+
+    /** Desvincula la transacción del hilo actual y la devuelve para confirmarla o revertirla */
+    Transaccion soltarTransaccion();
+
+    // ==================== CICLO DE VIDA ====================
+
+    /** Abre conexiones y prepara las sentencias habituales antes de aceptar clientes */
+    void precalentar() throws SQLException;
+
+    // ==================== RÉPLICAS ====================
+
+    /** Cuánto atrasa este almacén respecto de su primaria, en milisegundos; 0 si no es réplica */
+    long retrasoReplicacionMs() throws SQLException;
+
+    /** Si las lecturas del hilo actual van a la primaria para que la sesión vea sus propias escrituras */
+    boolean lecturasFijadasAPrimaria();
+
+    void cerrar();
+}
@@ -0,0 +1,449 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte los estudiantes entre varios almacenes (fragmentos) según su ID: el estudiante con
+ * ID i vive en el fragmento i mod N. Los IDs los asigna este almacén, así que son únicos entre
+ * todos los fragmentos, y un estudiante no cambia de fragmento aunque cambie de universidad.
+ * Salen de bloques reservados en una secuencia del primer fragmento, para que varios servidores
+ * sobre los mismos fragmentos no repartan el mismo ID.
+ *
+ * Las universidades son pocas y casi no cambian: se copian en todos los fragmentos para que la
+ * clave foránea de cada estudiante se valide en su propio fragmento. El primero es la fuente
+ * de sus IDs y de sus lecturas.
+ *
+ * Las operaciones sobre un estudiante van a un solo fragmento; el listado se pide a todos en
+ * paralelo y se une en orden de ID. El email único solo lo valida cada fragmento dentro de lo
+ * suyo. No hay transacciones explícitas, porque abarcarían varias bases.
+ */
+public class AlmacenFragmentado implements AlmacenDatos {
+    private final List<AlmacenDatos> fragmentos;
+    private final AlmacenDatos principal;
+    private final int tamanoBloque;
+    // ID más alto que se sabe guardado; los bloques nuevos empiezan después
+    private final AtomicInteger maximoConocido;
+    private final ExecutorService dispersion;
+
+    // Bloque de IDs reservado en curso, de siguienteId a finBloque (exclusivo); protegidos por this
+    private int siguienteId;
+    private int finBloque;
+
+    @FunctionalInterface
+    private interface Operacion<T> {
+        T ejecutar(int fragmento) throws SQLException;
+    }
+
+    /**
+     * @param tamanoBloque IDs que se reservan de una vez; todos los servidores deben usar el mismo
+     */
+    public AlmacenFragmentado(List<AlmacenDatos> fragmentos, int tamanoBloque) throws SQLException {
+        if (fragmentos.isEmpty()) {
+            throw new IllegalArgumentException("Se necesita al menos un fragmento");
+        }
+        this.fragmentos = new ArrayList<>(fragmentos);
+        this.principal = fragmentos.get(0);
+        this.tamanoBloque = tamanoBloque;
+
+        int maximo = 0;
+        for (AlmacenDatos fragmento : fragmentos) {
+            maximo = Math.max(maximo, fragmento.maximoId("estudiantes"));
+        }
+        this.maximoConocido = new AtomicInteger(maximo);
+
+        AtomicInteger numero = new AtomicInteger();
+        this.dispersion = Executors.newFixedThreadPool(fragmentos.size(), r -> {
+            Thread hilo = new Thread(r, "fragmentos-" + numero.getAndIncrement());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        Metricas.registrarMedidor("db.fragmentos", fragmentos::size);
+    }
+
+    /**
+     * Toma el siguiente ID del bloque en curso, reservando otro cuando se agota
+     */
+    private synchronized int nuevoIdEstudiante() throws SQLException {
+        if (siguienteId >= finBloque) {
+            reservarBloque();
+        }
+        return siguienteId++;
+    }
+
+    private synchronized void reservarBloque() throws SQLException {
+        siguienteId = principal.reservarIdsEstudiantes(tamanoBloque, maximoConocido.get());
+        finBloque = siguienteId + tamanoBloque;
+        Metricas.incrementar("db.fragmentos.bloquesIds");
+    }
+
+    private AlmacenDatos fragmento(int idEstudiante) {
+        return fragmentos.get(Math.floorMod(idEstudiante, fragmentos.size()));
+    }
+
+    /**
+     * Ejecuta la operación en todos los fragmentos a la vez y devuelve los resultados en orden de fragmento
+     */
+    private <T> List<T> dispersar(Operacion<T> operacion) throws SQLException {
+        List<Callable<T>> tareas = new ArrayList<>(fragmentos.size());
+        for (int i = 0; i < fragmentos.size(); i++) {
+            int fragmento = i;
+            tareas.add(() -> operacion.ejecutar(fragmento));
+        }
+        try {
+            List<T> resultados = new ArrayList<>(fragmentos.size());
+            for (Future<T> futuro : dispersion.invokeAll(tareas)) {
+                resultados.add(futuro.get());
+            }
+            return resultados;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Error en un fragmento: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Consulta a los fragmentos interrumpida");
+        }
+    }
+
+    /**
+     * Une listas ya ordenadas por ID tomando siempre la cabeza menor (k-way merge)
+     */
+    static List<Estudiante> mezclarPorId(List<List<Estudiante>> listas) {
+        int total = 0;
+        PriorityQueue<int[]> cabezas = new PriorityQueue<>(Math.max(1, listas.size()),
+                (a, b) -> Integer.compare(listas.get(a[0]).get(a[1]).getId(), listas.get(b[0]).get(b[1]).getId()));
+        for (int i = 0; i < listas.size(); i++) {
+            total += listas.get(i).size();
+            if (!listas.get(i).isEmpty()) {
+                cabezas.add(new int[]{i, 0});
+            }
+        }
+
+        List<Estudiante> resultado = new ArrayList<>(total);
+        while (!cabezas.isEmpty()) {
+            int[] cabeza = cabezas.poll();
+            List<Estudiante> lista = listas.get(cabeza[0]);
+            resultado.add(lista.get(cabeza[1]));
+            if (++cabeza[1] < lista.size()) {
+                cabezas.add(cabeza);
+            }
+        }
+        return resultado;
+    }
+
+    // ==================== UNIVERSIDADES ====================
+
+    @Override
+    public int insertarUniversidad(String nombre, String ciudad, String pais) throws SQLException {
+        int id = principal.insertarUniversidad(nombre, ciudad, pais);
+        if (id <= 0) {
+            throw new SQLException("El fragmento principal no informó el ID de la universidad; no se puede copiar");
+        }
+        copiarUniversidad(new Universidad(id, nombre, ciudad, pais));
+        return id;
+    }
+
+    @Override
+    public void insertarUniversidadConId(int id, String nombre, String ciudad, String pais) throws SQLException {
+        principal.insertarUniversidadConId(id, nombre, ciudad, pais);
+        copiarUniversidad(new Universidad(id, nombre, ciudad, pais));
+    }
+
+    /**
+     * Copia una universidad recién insertada en el principal al resto de los fragmentos.
+     * Si una copia falla se deshacen las anteriores y la inserción del principal.
+     */
+    private void copiarUniversidad(Universidad universidad) throws SQLException {
+        int copiadas = 1;
+        try {
+            for (; copiadas < fragmentos.size(); copiadas++) {
+                fragmentos.get(copiadas).insertarUniversidadConId(universidad.getId(), universidad.getNombre(),
+                        universidad.getCiudad(), universidad.getPais());
+            }
+        } catch (SQLException e) {
+            for (int i = copiadas - 1; i >= 0; i--) {
+                try {
+                    fragmentos.get(i).eliminarUniversidad(universidad.getId());
+                } catch (SQLException errorDeshacer) {
+                    Log.error("✗ No se pudo deshacer la universidad {} en el fragmento {}: {}",
+                            universidad.getId(), i, errorDeshacer.getMessage());
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<Universidad> listarUniversidades() throws SQLException {
+        return principal.listarUniversidades();
+    }
+
+    @Override
+    public Universidad obtenerUniversidad(int id) throws SQLException {
+        return principal.obtenerUniversidad(id);
+    }
+
+    @Override
+    public boolean actualizarUniversidad(int id, String nombre, String ciudad, String pais) throws SQLException {
+        if (!principal.actualizarUniversidad(id, nombre, ciudad, pais)) {
+            return false;
+        }
+        for (int i = 1; i < fragmentos.size(); i++) {
+            fragmentos.get(i).actualizarUniversidad(id, nombre, ciudad, pais);
+        }
+        return true;
+    }
+
+    /**
+     * Borra del último fragmento al principal. Si un fragmento la rechaza porque tiene
+     * estudiantes asignados, se vuelve a insertar en los que ya la habían borrado.
+     */
+    @Override
+    public boolean eliminarUniversidad(int id) throws SQLException {
+        Universidad universidad = principal.obtenerUniversidad(id);
+        if (universidad == null) {
+            return false;
+        }
+        int i = fragmentos.size() - 1;
+        try {
+            for (; i >= 0; i--) {
+                fragmentos.get(i).eliminarUniversidad(id);
+            }
+            return true;
+        } catch (SQLException e) {
+            for (int j = i + 1; j < fragmentos.size(); j++) {
+                try {
+                    fragmentos.get(j).insertarUniversidadConId(id, universidad.getNombre(),
+                            universidad.getCiudad(), universidad.getPais());
+                } catch (SQLException errorDeshacer) {
+                    Log.error("✗ No se pudo restaurar la universidad {} en el fragmento {}: {}",
+                            id, j, errorDeshacer.getMessage());
+                }
+            }
+            throw e;
+        }
+    }
+
+    // ==================== ESTUDIANTES ====================
+
+    @Override
+    public int insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException {
+        int id = nuevoIdEstudiante();
+        fragmento(id).insertarEstudianteConId(id, nombre, apellido, email, edad, universidadId);
+        return id;
+    }
+
+    @Override
+    public void insertarEstudianteConId(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        maximoConocido.accumulateAndGet(id, Math::max);
+        fragmento(id).insertarEstudianteConId(id, nombre, apellido, email, edad, universidadId);
+    }
+
+    @Override
+    public List<Estudiante> listarEstudiantes() throws SQLException {
+        long inicio = System.nanoTime();
+        List<Estudiante> estudiantes = mezclarPorId(dispersar(i -> fragmentos.get(i).listarEstudiantes()));
+        Metricas.registrarTiempo("db.fragmentos.listarEstudiantes", inicio);
+        return estudiantes;
+    }
+
+    @Override
+    public Estudiante obtenerEstudiante(int id) throws SQLException {
+        return fragmento(id).obtenerEstudiante(id);
+    }
+
+    @Override
+    public boolean actualizarEstudiante(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        return fragmento(id).actualizarEstudiante(id, nombre, apellido, email, edad, universidadId);
+    }
+
+    @Override
+    public boolean eliminarEstudiante(int id) throws SQLException {
+        return fragmento(id).eliminarEstudiante(id);
+    }
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    @Override
+    public int[] insertarLoteUniversidades(List<Universidad> universidades, boolean conId) throws SQLException {
+        int[] ids = principal.insertarLoteUniversidades(universidades, conId);
+        List<Universidad> copias = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] > 0) {
+                Universidad u = universidades.get(i);
+                copias.add(new Universidad(ids[i], u.getNombre(), u.getCiudad(), u.getPais()));
+            } else if (ids[i] == 0) {
+                Log.warn("⚠ Universidad \"{}\" insertada sin ID conocido; no se copió a los demás fragmentos",
+                        universidades.get(i).getNombre());
+            }
+        }
+        for (int i = 1; i < fragmentos.size() && !copias.isEmpty(); i++) {
+            fragmentos.get(i).insertarLoteUniversidades(copias, true);
+        }
+        return ids;
+    }
+
+    /**
+     * Asigna los IDs que falten, separa el lote por fragmento y lo inserta en todos a la vez
+     */
+    @Override
+    public int[] insertarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) throws SQLException {
+        int n = fragmentos.size();
+        List<List<Estudiante>> partes = new ArrayList<>(n);
+        List<List<Integer>> posiciones = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            partes.add(new ArrayList<>());
+            posiciones.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < estudiantes.size(); i++) {
+            Estudiante e = estudiantes.get(i);
+            int id = conId ? e.getId() : nuevoIdEstudiante();
+            if (conId) {
+                maximoConocido.accumulateAndGet(id, Math::max);
+            }
+            int destino = Math.floorMod(id, n);
+            partes.get(destino).add(new Estudiante(id, e.getNombre(), e.getApellido(), e.getEmail(),
+                    e.getEdad(), e.getUniversidadId()));
+            posiciones.get(destino).add(i);
+        }
+
+        List<int[]> resultados = dispersar(i -> partes.get(i).isEmpty()
+                ? new int[0]
+                : fragmentos.get(i).insertarLoteEstudiantes(partes.get(i), true));
+
+        int[] ids = new int[estudiantes.size()];
+        for (int f = 0; f < n; f++) {
+            int[] idsFragmento = resultados.get(f);
+            List<Estudiante> parte = partes.get(f);
+            for (int j = 0; j < idsFragmento.length; j++) {
+                // Con IDs explícitos algunos almacenes no devuelven la clave: es la que se envió
+                ids[posiciones.get(f).get(j)] = idsFragmento[j] == 0 ? parte.get(j).getId() : idsFragmento[j];
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public int maximoId(String tabla) throws SQLException {
+        if (tabla.equals("estudiantes")) {
+            int maximo = 0;
+            for (int id : dispersar(i -> fragmentos.get(i).maximoId(tabla))) {
+                maximo = Math.max(maximo, id);
+            }
+            return maximo;
+        }
+        return principal.maximoId(tabla);
+    }
+
+    /**
+     * Con estudiantes, además adelanta la secuencia de bloques más allá de los IDs importados,
+     * para que los otros servidores tampoco los repitan
+     */
+    @Override
+    public void ajustarSecuencia(String tabla) throws SQLException {
+        for (AlmacenDatos fragmento : fragmentos) {
+            fragmento.ajustarSecuencia(tabla);
+        }
+        if (tabla.equals("estudiantes")) {
+            maximoConocido.accumulateAndGet(maximoId(tabla), Math::max);
+            reservarBloque();
+        }
+    }
+
+    @Override
+    public int reservarIdsEstudiantes(int tamano, int minimo) throws SQLException {
+        return principal.reservarIdsEstudiantes(tamano, minimo);
+    }
+
+    /**
+     * Los estudiantes se exportan en orden de ID, unidos desde todos los fragmentos
+     */
+    @Override
+    public long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException {
+        if (!tabla.equals("estudiantes")) {
+            return principal.exportarTabla(tabla, escritor);
+        }
+        escritor.escribirFila(new String[]{"id", "nombre", "apellido", "email", "edad", "universidad_id"});
+        long filas = 0;
+        for (Estudiante e : listarEstudiantes()) {
+            escritor.escribirFila(new String[]{String.valueOf(e.getId()), e.getNombre(), e.getApellido(),
+                    e.getEmail(), String.valueOf(e.getEdad()), String.valueOf(e.getUniversidadId())});
+            filas++;
+        }
+        return filas;
+    }
+
+    // ==================== TRANSACCIONES ====================
+
+    @Override
+    public Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException {
+        throw new SQLException("Las transacciones explícitas no están disponibles con los estudiantes fragmentados");
+    }
+
+    @Override
+    public Transaccion transaccionActual() {
+        return null;
+    }
+
+    @Override
+    public Transaccion soltarTransaccion() {
+        return null;
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    @Override
+    public void precalentar() throws SQLException {
+        dispersar(i -> {
+            fragmentos.get(i).precalentar();
+            return null;
+        });
+    }
+
+    // ==================== RÉPLICAS ====================
+
+    @Override
+    public long retrasoReplicacionMs() throws SQLException {
+        long maximo = 0;
+        for (long retraso : dispersar(i -> fragmentos.get(i).retrasoReplicacionMs())) {
+            maximo = Math.max(maximo, retraso);
+        }
+        return maximo;
+    }
+
+    @Override
+    public boolean lecturasFijadasAPrimaria() {
+        for (AlmacenDatos fragmento : fragmentos) {
+            if (fragmento.lecturasFijadasAPrimaria()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void cerrar() {
+        dispersion.shutdownNow();
+        for (AlmacenDatos fragmento : fragmentos) {
+            fragmento.cerrar();
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Almacén sobre PostgreSQL, con pool de conexiones, agrupación opcional de escrituras
+ * y transacciones explícitas fijadas al hilo del cliente
+ */
+public class AlmacenJdbc implements AlmacenDatos {
+    // Sentencias de las operaciones por fila; el calentamiento las prepara en cada conexión
+    private static final String SQL_INSERTAR_UNIVERSIDAD =
+            "INSERT INTO universidades (nombre, ciudad, pais) VALUES (?, ?, ?)";
+    private static final String SQL_OBTENER_UNIVERSIDAD =
+            "SELECT * FROM universidades WHERE id = ?";
+    private static final String SQL_ACTUALIZAR_UNIVERSIDAD =
+            "UPDATE universidades SET nombre = ?, ciudad = ?, pais = ? WHERE id = ?";
+    private static final String SQL_ELIMINAR_UNIVERSIDAD =
+            "DELETE FROM universidades WHERE id = ?";
+    private static final String SQL_INSERTAR_ESTUDIANTE =
+            "INSERT INTO estudiantes (nombre, apellido, email, edad, universidad_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String SQL_OBTENER_ESTUDIANTE =
+            "SELECT id, nombre, apellido, email, edad, universidad_id FROM estudiantes WHERE id = ?";
+    private static final String SQL_ACTUALIZAR_ESTUDIANTE =
+            "UPDATE estudiantes SET nombre = ?, apellido = ?, email = ?, edad = ?, universidad_id = ? WHERE id = ?";
+    private static final String SQL_ELIMINAR_ESTUDIANTE =
+            "DELETE FROM estudiantes WHERE id = ?";
+
+    // Secuencia de los bloques de IDs de estudiante que reservan los servidores fragmentados
+    private static final String SECUENCIA_BLOQUES = "estudiantes_bloques_seq";
+
+    // El driver pasa a sentencias preparadas en el servidor tras esta cantidad de ejecuciones
+    private static final int EJECUCIONES_PREPARACION = 5;
+
+    private final PoolConexiones pool;
+    private final AgrupadorEscrituras agrupador;
+    private volatile boolean secuenciaBloquesPreparada;
+
+    // Transacción abierta por el cliente que atiende el hilo actual (cada ClientHandler tiene su hilo)
+    private final ThreadLocal<Transaccion> transaccionActual = new ThreadLocal<>();
+
+    public AlmacenJdbc(PoolConexiones pool, AgrupadorEscrituras agrupador) {
+        this(pool, agrupador, "db.pool");
+    }
+
+    /**
+     * @param nombreMetricas prefijo de los medidores del pool, para distinguir primaria y réplicas
+     */
+    public AlmacenJdbc(PoolConexiones pool, AgrupadorEscrituras agrupador, String nombreMetricas) {
+        this.pool = pool;
+        this.agrupador = agrupador;
+
+        Metricas.registrarMedidor(nombreMetricas + ".abiertas", pool::getAbiertas);
+        Metricas.registrarMedidor(nombreMetricas + ".enUso", pool::getEnUso);
+        Metricas.registrarMedidor(nombreMetricas + ".maximo", pool::getTamanoMaximo);
+    }
+
+    /**
+     * Conexión prestada para una operación. Si el hilo tiene una transacción abierta se usa
+     * su conexión; si no, se toma una del pool y se devuelve al cerrar.
+     */
+    private final class ConexionPrestada implements AutoCloseable {
+        private final Connection conexion;
+        private final Transaccion transaccion;
+        private final long inicioSql;
+
+        ConexionPrestada() throws SQLException {
+            long inicioEspera = Traza.marcar();
+            this.transaccion = transaccionActual.get();
+            this.conexion = transaccion != null ? transaccion.usar() : pool.obtener();
+            Traza.sumar(Traza.Fase.CONEXION, inicioEspera);
+            // Lo que pasa mientras se tiene la conexión cuenta como SQL, incluida la lectura de filas
+            this.inicioSql = Traza.marcar();
+        }
+
+        @Override
+        public void close() {
+            Traza.sumar(Traza.Fase.SQL, inicioSql);
+            if (transaccion != null) {
+                transaccion.dejarDeUsar();
+            } else {
+                pool.liberar(conexion);
+            }
+        }
+    }
+
+    // ==================== TRANSACCIONES ====================
+
+    @Override
+    public Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException {
+        if (transaccionActual.get() != null) {
+            throw new SQLException("Ya hay una transacción abierta");
+        }
+        long inicioEspera = Traza.marcar();
+        Connection conexion = pool.obtener();
+        Traza.sumar(Traza.Fase.CONEXION, inicioEspera);
+        try {
+            Transaccion transaccion = new Transaccion(conexion, pool, duracionMaxMs);
+            transaccionActual.set(transaccion);
+            Metricas.incrementar("db.transaccion.iniciadas");
+            return transaccion;
+        } catch (SQLException e) {
+            pool.liberar(conexion);
+            throw e;
+        }
+    }
+
+    @Override
+    public Transaccion transaccionActual() {
+        return transaccionActual.get();
+    }
+
+    @Override
+    public Transaccion soltarTransaccion() {
+        Transaccion transaccion = transaccionActual.get();
+        transaccionActual.remove();
+        return transaccion;
+    }
+
+    /**
+     * Las escrituras dentro de una transacción explícita no pasan por el agrupador
+     */
+    private boolean usarAgrupador() {
+        return agrupador != null && transaccionActual.get() == null;
+    }
+
+    // ==================== UNIVERSIDADES ====================
+
+    @Override
+    public int insertarUniversidad(String nombre, String ciudad, String pais) throws SQLException {
+        String sql = SQL_INSERTAR_UNIVERSIDAD;
+        if (usarAgrupador()) {
+            return agrupador.ejecutar(sql, true, nombre, ciudad, pais);
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, nombre);
+            pstmt.setString(2, ciudad);
+            pstmt.setString(3, pais);
+
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void insertarUniversidadConId(int id, String nombre, String ciudad, String pais) throws SQLException {
+        String sql = "INSERT INTO universidades (id, nombre, ciudad, pais) VALUES (?, ?, ?, ?)";
+        if (usarAgrupador()) {
+            agrupador.ejecutar(sql, false, id, nombre, ciudad, pais);
+            return;
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+            AgrupadorEscrituras.asignarParametros(pstmt, new Object[]{id, nombre, ciudad, pais});
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Universidad> listarUniversidades() throws SQLException {
+        String sql = "SELECT * FROM universidades ORDER BY id";
+        List<Universidad> universidades = new ArrayList<>();
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                universidades.add(new Universidad(
+                        rs.getInt("id"),
+                        rs.getString("nombre"),
+                        rs.getString("ciudad"),
+                        rs.getString("pais")));
+            }
+        }
+        return universidades;
+    }
+
+    @Override
+    public Universidad obtenerUniversidad(int id) throws SQLException {
+        String sql = SQL_OBTENER_UNIVERSIDAD;
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Universidad(
+                        rs.getInt("id"),
+                        rs.getString("nombre"),
+                        rs.getString("ciudad"),
+                        rs.getString("pais"));
+            }
+        }
+    }
+
+    @Override
+    public boolean actualizarUniversidad(int id, String nombre, String ciudad, String pais) throws SQLException {
+        String sql = SQL_ACTUALIZAR_UNIVERSIDAD;
+        if (usarAgrupador()) {
+            return agrupador.ejecutar(sql, false, nombre, ciudad, pais, id) > 0;
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setString(1, nombre);
+            pstmt.setString(2, ciudad);
+            pstmt.setString(3, pais);
+            pstmt.setInt(4, id);
+
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean eliminarUniversidad(int id) throws SQLException {
+        String sql = SQL_ELIMINAR_UNIVERSIDAD;
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setInt(1, id);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    // ==================== ESTUDIANTES ====================
+
+    @Override
+    public int insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException {
+        String sql = SQL_INSERTAR_ESTUDIANTE;
+        if (usarAgrupador()) {
+            return agrupador.ejecutar(sql, true, nombre, apellido, email, edad, universidadId);
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            pstmt.setString(1, nombre);
+            pstmt.setString(2, apellido);
+            pstmt.setString(3, email);
+            pstmt.setInt(4, edad);
+            pstmt.setInt(5, universidadId);
+
+            pstmt.executeUpdate();
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public void insertarEstudianteConId(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        String sql = "INSERT INTO estudiantes (id, nombre, apellido, email, edad, universidad_id) VALUES (?, ?, ?, ?, ?, ?)";
+        if (usarAgrupador()) {
+            agrupador.ejecutar(sql, false, id, nombre, apellido, email, edad, universidadId);
+            return;
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+            AgrupadorEscrituras.asignarParametros(pstmt, new Object[]{id, nombre, apellido, email, edad, universidadId});
+            pstmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<Estudiante> listarEstudiantes() throws SQLException {
+        String sql = "SELECT id, nombre, apellido, email, edad, universidad_id FROM estudiantes ORDER BY id";
+        List<Estudiante> estudiantes = new ArrayList<>();
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                estudiantes.add(new Estudiante(
+                        rs.getInt("id"),
+                        rs.getString("nombre"),
+                        rs.getString("apellido"),
+                        rs.getString("email"),
+                        rs.getInt("edad"),
+                        rs.getInt("universidad_id")));
+            }
+        }
+        return estudiantes;
+    }
+
+    @Override
+    public Estudiante obtenerEstudiante(int id) throws SQLException {
+        String sql = SQL_OBTENER_ESTUDIANTE;
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Estudiante(
+                        rs.getInt("id"),
+                        rs.getString("nombre"),
+                        rs.getString("apellido"),
+                        rs.getString("email"),
+                        rs.getInt("edad"),
+                        rs.getInt("universidad_id"));
+            }
+        }
+    }
+
+    @Override
+    public boolean actualizarEstudiante(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        String sql = SQL_ACTUALIZAR_ESTUDIANTE;
+        if (usarAgrupador()) {
+            return agrupador.ejecutar(sql, false, nombre, apellido, email, edad, universidadId, id) > 0;
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setString(1, nombre);
+            pstmt.setString(2, apellido);
+            pstmt.setString(3, email);
+            pstmt.setInt(4, edad);
+            pstmt.setInt(5, universidadId);
+            pstmt.setInt(6, id);
+
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean eliminarEstudiante(int id) throws SQLException {
+        String sql = SQL_ELIMINAR_ESTUDIANTE;
+
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             PreparedStatement pstmt = prestada.conexion.prepareStatement(sql)) {
+
+            pstmt.setInt(1, id);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    @Override
+    public int[] insertarLoteUniversidades(List<Universidad> universidades, boolean conId) throws SQLException {
+        String sql = conId
+                ? "INSERT INTO universidades (id, nombre, ciudad, pais) VALUES (?, ?, ?, ?)"
+                : "INSERT INTO universidades (nombre, ciudad, pais) VALUES (?, ?, ?)";
+        List<Object[]> filas = new ArrayList<>(universidades.size());
+        for (Universidad u : universidades) {
+            filas.add(conId
+                    ? new Object[]{u.getId(), u.getNombre(), u.getCiudad(), u.getPais()}
+                    : new Object[]{u.getNombre(), u.getCiudad(), u.getPais()});
+        }
+        return insertarLote(sql, filas);
+    }
+
+    @Override
+    public int[] insertarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) throws SQLException {
+        String sql = conId
+                ? "INSERT INTO estudiantes (id, nombre, apellido, email, edad, universidad_id) VALUES (?, ?, ?, ?, ?, ?)"
+                : "INSERT INTO estudiantes (nombre, apellido, email, edad, universidad_id) VALUES (?, ?, ?, ?, ?)";
+        List<Object[]> filas = new ArrayList<>(estudiantes.size());
+        for (Estudiante e : estudiantes) {
+            filas.add(conId
+                    ? new Object[]{e.getId(), e.getNombre(), e.getApellido(), e.getEmail(), e.getEdad(), e.getUniversidadId()}
+                    : new Object[]{e.getNombre(), e.getApellido(), e.getEmail(), e.getEdad(), e.getUniversidadId()});
+        }
+        return insertarLote(sql, filas);
+    }
+
+    /**
+     * Ejecuta el lote con executeBatch y un solo commit. Si falla, reintenta fila por fila
+     * para que una fila inválida no descarte el resto.
+     */
+    private int[] insertarLote(String sql, List<Object[]> filas) throws SQLException {
+        int[] ids = new int[filas.size()];
+
+        try (ConexionPrestada prestada = new ConexionPrestada()) {
+            Connection conexion = prestada.conexion;
+            conexion.setAutoCommit(false);
+            try (PreparedStatement pstmt = conexion.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (Object[] fila : filas) {
+                    AgrupadorEscrituras.asignarParametros(pstmt, fila);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                try (ResultSet claves = pstmt.getGeneratedKeys()) {
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = claves.next() ? claves.getInt(1) : 0;
+                    }
+                }
+                conexion.commit();
+            } catch (SQLException e) {
+                conexion.rollback();
+                Metricas.incrementar("db.lotesFallidos");
+                conexion.setAutoCommit(true);
+                for (int i = 0; i < ids.length; i++) {
+                    try (PreparedStatement pstmt = conexion.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                        AgrupadorEscrituras.asignarParametros(pstmt, filas.get(i));
+                        pstmt.executeUpdate();
+                        try (ResultSet claves = pstmt.getGeneratedKeys()) {
+                            ids[i] = claves.next() ? claves.getInt(1) : 0;
+                        }
+                    } catch (SQLException errorFila) {
+                        ids[i] = -1;
+                        Metricas.incrementar("db.errores");
+                    }
+                }
+            } finally {
+                conexion.setAutoCommit(true);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public int maximoId(String tabla) throws SQLException {
+        if (!tabla.equals("universidades") && !tabla.equals("estudiantes")) {
+            throw new SQLException("Tabla desconocida: " + tabla);
+        }
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + tabla)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public void ajustarSecuencia(String tabla) throws SQLException {
+        String sql = "SELECT setval(pg_get_serial_sequence('" + tabla + "', 'id'), COALESCE(MAX(id), 1)) FROM " + tabla;
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Cada nextval de una secuencia con INCREMENT BY tamano es un bloque entero para quien lo
+     * pide; la secuencia se crea la primera vez y solo se adelanta si ya hay filas más allá
+     */
+    @Override
+    public int reservarIdsEstudiantes(int tamano, int minimo) throws SQLException {
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement()) {
+            if (!secuenciaBloquesPreparada) {
+                stmt.execute("CREATE SEQUENCE IF NOT EXISTS " + SECUENCIA_BLOQUES + " INCREMENT BY " + tamano);
+                stmt.execute("ALTER SEQUENCE " + SECUENCIA_BLOQUES + " INCREMENT BY " + tamano);
+                secuenciaBloquesPreparada = true;
+            }
+            long primero = siguienteBloque(stmt, 1);
+            if (primero <= minimo) {
+                // Filas insertadas con ID explícito, por ejemplo al importar, que la secuencia no vio.
+                // Se avanza solo con nextval: un setval podría hacerla retroceder por debajo de un
+                // bloque que otro nodo acaba de tomar
+                primero = siguienteBloque(stmt, (minimo - primero) / tamano + 1);
+            }
+            return Math.toIntExact(primero);
+        }
+    }
+
+    /**
+     * Toma "saltos" bloques seguidos y devuelve el último; cada nextval es atómico, así que
+     * ninguno se repite aunque otros nodos pidan bloques al mismo tiempo
+     */
+    private static long siguienteBloque(Statement stmt, long saltos) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT MAX(nextval('" + SECUENCIA_BLOQUES + "')) FROM generate_series(1, "
+                + saltos + ")")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Recorre la tabla sin cargarla entera en memoria (el driver trae las filas de a bloques con un cursor)
+     */
+    @Override
+    public long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException {
+        String sql;
+        if (tabla.equals("universidades")) {
+            sql = "SELECT id, nombre, ciudad, pais FROM universidades ORDER BY id";
+        } else if (tabla.equals("estudiantes")) {
+            sql = "SELECT id, nombre, apellido, email, edad, universidad_id FROM estudiantes ORDER BY id";
+        } else {
+            throw new SQLException("Tabla desconocida: " + tabla);
+        }
+
+        try (ConexionPrestada prestada = new ConexionPrestada()) {
+            Connection conexion = prestada.conexion;
+            boolean autoCommit = conexion.getAutoCommit();
+            // PostgreSQL solo usa cursor (fetchSize) fuera de auto-commit
+            conexion.setAutoCommit(false);
+            try (Statement stmt = conexion.createStatement()) {
+                stmt.setFetchSize(1000);
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    int columnas = rs.getMetaData().getColumnCount();
+                    String[] encabezado = new String[columnas];
+                    for (int i = 0; i < columnas; i++) {
+                        encabezado[i] = rs.getMetaData().getColumnName(i + 1);
+                    }
+                    escritor.escribirFila(encabezado);
+
+                    long filas = 0;
+                    String[] valores = new String[columnas];
+                    while (rs.next()) {
+                        for (int i = 0; i < columnas; i++) {
+                            valores[i] = rs.getString(i + 1);
+                        }
+                        escritor.escribirFila(valores);
+                        filas++;
+                    }
+                    return filas;
+                }
+            } finally {
+                if (autoCommit) {
+                    conexion.commit();
+                    conexion.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    /**
+     * Abre todas las conexiones del pool y prepara en cada una las sentencias por fila.
+     * Las búsquedas por ID se ejecutan con un ID inexistente hasta quedar preparadas en el
+     * servidor; las escrituras solo se preparan en el driver, porque ejecutarlas cambiaría datos.
+     */
+    @Override
+    public void precalentar() throws SQLException {
+        List<Connection> conexiones = new ArrayList<>();
+        try {
+            for (int i = 0; i < pool.getTamanoMaximo(); i++) {
+                Connection conexion = pool.obtener();
+                conexiones.add(conexion);
+                for (String sql : new String[]{SQL_OBTENER_UNIVERSIDAD, SQL_OBTENER_ESTUDIANTE}) {
+                    for (int j = 0; j < EJECUCIONES_PREPARACION; j++) {
+                        try (PreparedStatement pstmt = conexion.prepareStatement(sql)) {
+                            pstmt.setInt(1, -1);
+                            pstmt.executeQuery().close();
+                        }
+                    }
+                }
+                for (String sql : new String[]{SQL_INSERTAR_UNIVERSIDAD, SQL_ACTUALIZAR_UNIVERSIDAD,
+                        SQL_ELIMINAR_UNIVERSIDAD, SQL_INSERTAR_ESTUDIANTE, SQL_ACTUALIZAR_ESTUDIANTE,
+                        SQL_ELIMINAR_ESTUDIANTE}) {
+                    conexion.prepareStatement(sql).close();
+                }
+            }
+        } finally {
+            for (Connection conexion : conexiones) {
+                pool.liberar(conexion);
+            }
+        }
+    }
+
+    // ==================== RÉPLICAS ====================
+
+    /**
+     * En una réplica en espera mide la antigüedad de la última transacción aplicada; si ya aplicó
+     * todo lo recibido no hay atraso aunque la primaria esté quieta. En una primaria devuelve 0.
+     */
+    @Override
+    public long retrasoReplicacionMs() throws SQLException {
+        String sql = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+                "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+        try (ConexionPrestada prestada = new ConexionPrestada();
+             Statement stmt = prestada.conexion.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Sin réplicas todas las lecturas van a esta base
+     */
+    @Override
+    public boolean lecturasFijadasAPrimaria() {
+        return false;
+    }
+
+    @Override
+    public void cerrar() {
+        if (agrupador != null) {
+            agrupador.detener();
+        }
+        pool.cerrar();
+    }
+}
@@ -0,0 +1,740 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Almacén dentro del proceso, para correr los servidores sin PostgreSQL.
+ *
+ * Las lecturas no toman cerrojos: los mapas son concurrentes y las filas guardadas no se
+ * modifican nunca (una actualización reemplaza el objeto). Las escrituras se serializan con un
+ * cerrojo que cubre validar, anotar en el diario y aplicar, y esperan la durabilidad fuera de él,
+ * así varias escrituras comparten el mismo fsync.
+ *
+ * Con un directorio, cada cambio se anota en un DiarioEscritura y cada cierto tiempo (o cierta
+ * cantidad de registros) se guarda una instantánea binaria completa. Al arrancar se carga la
+ * última instantánea y se reproducen solo los registros posteriores a ella.
+ */
+public class AlmacenMemoria implements AlmacenDatos {
+    private static final String ARCHIVO_INSTANTANEA = "instantanea.bin";
+    private static final int MAGICO = 0x554E4956; // "UNIV"
+    private static final int VERSION = 2; // la 2 guarda los contadores de IDs en la cabecera
+
+    // Tipos de registro del diario; guardar es insertar o actualizar. Eliminar lleva también el
+    // contador de IDs, para que borrar el ID más alto no lo deje libre después de reiniciar
+    private static final byte GUARDAR_UNIVERSIDAD = 1;
+    private static final byte ELIMINAR_UNIVERSIDAD = 2;
+    private static final byte GUARDAR_ESTUDIANTE = 3;
+    private static final byte ELIMINAR_ESTUDIANTE = 4;
+
+    private final ConcurrentSkipListMap<Integer, Universidad> universidades = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, Estudiante> estudiantes = new ConcurrentSkipListMap<>();
+
+    // Protegidos por cerrojoEscritura
+    private final Object cerrojoEscritura = new Object();
+    private final Map<String, Integer> idPorEmail = new HashMap<>();
+    private final Map<Integer, Integer> estudiantesPorUniversidad = new HashMap<>();
+    private int ultimoIdUniversidad;
+    private int ultimoIdEstudiante;
+    private long registrosDesdeInstantanea;
+
+    private final Path directorio;
+    private final DiarioEscritura diario;
+    private final long instantaneaCadaRegistros;
+    private final ScheduledExecutorService programador;
+    private final Object cerrojoInstantanea = new Object();
+    private final AtomicBoolean cerrado = new AtomicBoolean();
+
+    /**
+     * Almacén sin persistencia: los datos se pierden al terminar el proceso
+     */
+    public AlmacenMemoria() {
+        this.directorio = null;
+        this.diario = null;
+        this.instantaneaCadaRegistros = 0;
+        this.programador = null;
+        registrarMedidores();
+    }
+
+    /**
+     * Almacén persistido en el directorio; recupera lo que haya en él antes de volver
+     */
+    public AlmacenMemoria(Path directorio, DiarioEscritura.Durabilidad durabilidad, long intervaloMs,
+                          long instantaneaCadaSeg, long instantaneaCadaRegistros) throws IOException {
+        this.directorio = directorio;
+        this.instantaneaCadaRegistros = instantaneaCadaRegistros;
+        Files.createDirectories(directorio);
+
+        long inicio = System.nanoTime();
+        long lsnInstantanea = cargarInstantanea();
+        long[] reproducidos = {0};
+        long ultimoLsn = DiarioEscritura.recuperar(directorio, lsnInstantanea, (lsn, cuerpo) -> {
+            reproducir(cuerpo);
+            reproducidos[0]++;
+        });
+        registrosDesdeInstantanea = reproducidos[0];
+        System.out.println("✓ Almacén en memoria recuperado: " + universidades.size() + " universidad(es), "
+                + estudiantes.size() + " estudiante(s), " + reproducidos[0] + " registro(s) del diario en "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+
+        this.diario = new DiarioEscritura(directorio, durabilidad, intervaloMs, ultimoLsn);
+
+        this.programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "almacen-instantaneas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        if (instantaneaCadaSeg > 0) {
+            programador.scheduleWithFixedDelay(this::tomarInstantaneaRegistrando,
+                    instantaneaCadaSeg, instantaneaCadaSeg, TimeUnit.SECONDS);
+        }
+        registrarMedidores();
+        Metricas.registrarMedidor("almacen.diario.lsn", diario::getUltimoLsn);
+    }
+
+    private void registrarMedidores() {
+        Metricas.registrarMedidor("almacen.universidades", universidades::size);
+        Metricas.registrarMedidor("almacen.estudiantes", estudiantes::size);
+    }
+
+    // ==================== UNIVERSIDADES ====================
+
+    @Override
+    public int insertarUniversidad(String nombre, String ciudad, String pais) throws SQLException {
+        long lsn;
+        int id;
+        synchronized (cerrojoEscritura) {
+            id = ultimoIdUniversidad + 1;
+            lsn = guardarUniversidad(new Universidad(id, nombre, ciudad, pais));
+        }
+        esperarDiario(lsn);
+        return id;
+    }
+
+    @Override
+    public void insertarUniversidadConId(int id, String nombre, String ciudad, String pais) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (universidades.containsKey(id)) {
+                throw new SQLException("Ya existe una universidad con ID " + id);
+            }
+            lsn = guardarUniversidad(new Universidad(id, nombre, ciudad, pais));
+        }
+        esperarDiario(lsn);
+    }
+
+    @Override
+    public List<Universidad> listarUniversidades() {
+        List<Universidad> lista = new ArrayList<>(universidades.size());
+        for (Universidad u : universidades.values()) {
+            lista.add(new Universidad(u.getId(), u.getNombre(), u.getCiudad(), u.getPais()));
+        }
+        return lista;
+    }
+
+    @Override
+    public Universidad obtenerUniversidad(int id) {
+        Universidad u = universidades.get(id);
+        return u == null ? null : new Universidad(u.getId(), u.getNombre(), u.getCiudad(), u.getPais());
+    }
+
+    @Override
+    public boolean actualizarUniversidad(int id, String nombre, String ciudad, String pais) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (!universidades.containsKey(id)) {
+                return false;
+            }
+            lsn = guardarUniversidad(new Universidad(id, nombre, ciudad, pais));
+        }
+        esperarDiario(lsn);
+        return true;
+    }
+
+    @Override
+    public boolean eliminarUniversidad(int id) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (!universidades.containsKey(id)) {
+                return false;
+            }
+            if (estudiantesPorUniversidad.getOrDefault(id, 0) > 0) {
+                throw new SQLException("La universidad con ID " + id + " tiene estudiantes asignados");
+            }
+            lsn = anotar(cuerpo(ELIMINAR_UNIVERSIDAD, salida -> {
+                salida.writeInt(id);
+                salida.writeInt(ultimoIdUniversidad);
+            }));
+            aplicarEliminarUniversidad(id);
+        }
+        esperarDiario(lsn);
+        return true;
+    }
+
+    private long guardarUniversidad(Universidad universidad) throws SQLException {
+        long lsn = anotar(cuerpo(GUARDAR_UNIVERSIDAD, salida -> escribirUniversidad(salida, universidad)));
+        aplicarGuardarUniversidad(universidad);
+        return lsn;
+    }
+
+    // ==================== ESTUDIANTES ====================
+
+    @Override
+    public int insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException {
+        long lsn;
+        int id;
+        synchronized (cerrojoEscritura) {
+            id = ultimoIdEstudiante + 1;
+            lsn = guardarEstudiante(new Estudiante(id, nombre, apellido, email, edad, universidadId));
+        }
+        esperarDiario(lsn);
+        return id;
+    }
+
+    @Override
+    public void insertarEstudianteConId(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (estudiantes.containsKey(id)) {
+                throw new SQLException("Ya existe un estudiante con ID " + id);
+            }
+            lsn = guardarEstudiante(new Estudiante(id, nombre, apellido, email, edad, universidadId));
+        }
+        esperarDiario(lsn);
+    }
+
+    @Override
+    public List<Estudiante> listarEstudiantes() {
+        List<Estudiante> lista = new ArrayList<>(estudiantes.size());
+        for (Estudiante e : estudiantes.values()) {
+            lista.add(new Estudiante(e.getId(), e.getNombre(), e.getApellido(), e.getEmail(),
+                    e.getEdad(), e.getUniversidadId()));
+        }
+        return lista;
+    }
+
+    @Override
+    public Estudiante obtenerEstudiante(int id) {
+        Estudiante e = estudiantes.get(id);
+        if (e == null) {
+            return null;
+        }
+        return new Estudiante(e.getId(), e.getNombre(), e.getApellido(), e.getEmail(),
+                e.getEdad(), e.getUniversidadId());
+    }
+
+    @Override
+    public boolean actualizarEstudiante(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (!estudiantes.containsKey(id)) {
+                return false;
+            }
+            lsn = guardarEstudiante(new Estudiante(id, nombre, apellido, email, edad, universidadId));
+        }
+        esperarDiario(lsn);
+        return true;
+    }
+
+    @Override
+    public boolean eliminarEstudiante(int id) throws SQLException {
+        long lsn;
+        synchronized (cerrojoEscritura) {
+            if (!estudiantes.containsKey(id)) {
+                return false;
+            }
+            lsn = anotar(cuerpo(ELIMINAR_ESTUDIANTE, salida -> {
+                salida.writeInt(id);
+                salida.writeInt(ultimoIdEstudiante);
+            }));
+            aplicarEliminarEstudiante(id);
+        }
+        esperarDiario(lsn);
+        return true;
+    }
+
+    /**
+     * Valida las mismas restricciones que el esquema de PostgreSQL (universidad existente y
+     * email único) antes de anotar el cambio
+     */
+    private long guardarEstudiante(Estudiante estudiante) throws SQLException {
+        if (!universidades.containsKey(estudiante.getUniversidadId())) {
+            throw new SQLException("No existe la universidad con ID " + estudiante.getUniversidadId());
+        }
+        Integer duenoEmail = estudiante.getEmail() != null ? idPorEmail.get(estudiante.getEmail()) : null;
+        if (duenoEmail != null && duenoEmail != estudiante.getId()) {
+            throw new SQLException("Ya existe un estudiante con el email " + estudiante.getEmail());
+        }
+        long lsn = anotar(cuerpo(GUARDAR_ESTUDIANTE, salida -> escribirEstudiante(salida, estudiante)));
+        aplicarGuardarEstudiante(estudiante);
+        return lsn;
+    }
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    @Override
+    public int[] insertarLoteUniversidades(List<Universidad> lote, boolean conId) throws SQLException {
+        int[] ids = new int[lote.size()];
+        long lsn = 0;
+        synchronized (cerrojoEscritura) {
+            for (int i = 0; i < ids.length; i++) {
+                Universidad u = lote.get(i);
+                int id = conId ? u.getId() : ultimoIdUniversidad + 1;
+                if (conId && universidades.containsKey(id)) {
+                    Metricas.incrementar("db.errores");
+                    ids[i] = -1;
+                    continue;
+                }
+                lsn = guardarUniversidad(new Universidad(id, u.getNombre(), u.getCiudad(), u.getPais()));
+                ids[i] = id;
+            }
+        }
+        esperarDiario(lsn);
+        return ids;
+    }
+
+    @Override
+    public int[] insertarLoteEstudiantes(List<Estudiante> lote, boolean conId) throws SQLException {
+        int[] ids = new int[lote.size()];
+        long lsn = 0;
+        synchronized (cerrojoEscritura) {
+            for (int i = 0; i < ids.length; i++) {
+                Estudiante e = lote.get(i);
+                int id = conId ? e.getId() : ultimoIdEstudiante + 1;
+                try {
+                    if (conId && estudiantes.containsKey(id)) {
+                        throw new SQLException("Ya existe un estudiante con ID " + id);
+                    }
+                    lsn = guardarEstudiante(new Estudiante(id, e.getNombre(), e.getApellido(), e.getEmail(),
+                            e.getEdad(), e.getUniversidadId()));
+                    ids[i] = id;
+                } catch (SQLException errorFila) {
+                    ids[i] = -1;
+                    Metricas.incrementar("db.errores");
+                }
+            }
+        }
+        esperarDiario(lsn);
+        return ids;
+    }
+
+    @Override
+    public int maximoId(String tabla) throws SQLException {
+        if (tabla.equals("universidades")) {
+            return universidades.isEmpty() ? 0 : universidades.lastKey();
+        } else if (tabla.equals("estudiantes")) {
+            return estudiantes.isEmpty() ? 0 : estudiantes.lastKey();
+        }
+        throw new SQLException("Tabla desconocida: " + tabla);
+    }
+
+    /**
+     * Los IDs generados ya siguen al más alto guardado, así que no hay nada que ajustar
+     */
+    @Override
+    public void ajustarSecuencia(String tabla) {
+    }
+
+    /**
+     * Los bloques salen del mismo contador que los IDs generados; solo este proceso lo usa
+     */
+    @Override
+    public int reservarIdsEstudiantes(int tamano, int minimo) {
+        synchronized (cerrojoEscritura) {
+            int primero = Math.max(ultimoIdEstudiante, minimo) + 1;
+            ultimoIdEstudiante = primero + tamano - 1;
+            return primero;
+        }
+    }
+
+    @Override
+    public long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException {
+        long filas = 0;
+        if (tabla.equals("universidades")) {
+            escritor.escribirFila(new String[]{"id", "nombre", "ciudad", "pais"});
+            for (Universidad u : universidades.values()) {
+                escritor.escribirFila(new String[]{String.valueOf(u.getId()), u.getNombre(), u.getCiudad(), u.getPais()});
+                filas++;
+            }
+        } else if (tabla.equals("estudiantes")) {
+            escritor.escribirFila(new String[]{"id", "nombre", "apellido", "email", "edad", "universidad_id"});
+            for (Estudiante e : estudiantes.values()) {
+                escritor.escribirFila(new String[]{String.valueOf(e.getId()), e.getNombre(), e.getApellido(),
+                        e.getEmail(), String.valueOf(e.getEdad()), String.valueOf(e.getUniversidadId())});
+                filas++;
+            }
+        } else {
+            throw new SQLException("Tabla desconocida: " + tabla);
+        }
+        return filas;
+    }
+
+    // ==================== TRANSACCIONES ====================
+
+    @Override
+    public Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException {
+        throw new SQLException("Las transacciones explícitas no están disponibles con el almacén en memoria");
+    }
+
+    @Override
+    public Transaccion transaccionActual() {
+        return null;
+    }
+
+    @Override
+    public Transaccion soltarTransaccion() {
+        return null;
+    }
+
+    // ==================== APLICAR CAMBIOS ====================
+    // Se usan tanto al escribir como al reproducir el diario; no validan nada
+
+    private void aplicarGuardarUniversidad(Universidad universidad) {
+        universidades.put(universidad.getId(), universidad);
+        ultimoIdUniversidad = Math.max(ultimoIdUniversidad, universidad.getId());
+    }
+
+    private void aplicarEliminarUniversidad(int id) {
+        universidades.remove(id);
+    }
+
+    private void aplicarGuardarEstudiante(Estudiante estudiante) {
+        Estudiante anterior = estudiantes.put(estudiante.getId(), estudiante);
+        if (anterior != null) {
+            olvidarIndices(anterior);
+        }
+        if (estudiante.getEmail() != null) {
+            idPorEmail.put(estudiante.getEmail(), estudiante.getId());
+        }
+        estudiantesPorUniversidad.merge(estudiante.getUniversidadId(), 1, Integer::sum);
+        ultimoIdEstudiante = Math.max(ultimoIdEstudiante, estudiante.getId());
+    }
+
+    private void aplicarEliminarEstudiante(int id) {
+        Estudiante anterior = estudiantes.remove(id);
+        if (anterior != null) {
+            olvidarIndices(anterior);
+        }
+    }
+
+    private void olvidarIndices(Estudiante estudiante) {
+        if (estudiante.getEmail() != null) {
+            idPorEmail.remove(estudiante.getEmail(), estudiante.getId());
+        }
+        estudiantesPorUniversidad.computeIfPresent(estudiante.getUniversidadId(),
+                (universidadId, cantidad) -> cantidad > 1 ? cantidad - 1 : null);
+    }
+
+    private void reproducir(ByteBuffer cuerpo) {
+        byte tipo = cuerpo.get();
+        switch (tipo) {
+            case GUARDAR_UNIVERSIDAD:
+                aplicarGuardarUniversidad(leerUniversidad(cuerpo));
+                break;
+            case ELIMINAR_UNIVERSIDAD:
+                aplicarEliminarUniversidad(cuerpo.getInt());
+                // Los registros anteriores a guardar el contador terminan en el ID
+                if (cuerpo.hasRemaining()) {
+                    ultimoIdUniversidad = Math.max(ultimoIdUniversidad, cuerpo.getInt());
+                }
+                break;
+            case GUARDAR_ESTUDIANTE:
+                aplicarGuardarEstudiante(leerEstudiante(cuerpo));
+                break;
+            case ELIMINAR_ESTUDIANTE:
+                aplicarEliminarEstudiante(cuerpo.getInt());
+                if (cuerpo.hasRemaining()) {
+                    ultimoIdEstudiante = Math.max(ultimoIdEstudiante, cuerpo.getInt());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Tipo de registro desconocido en el diario: " + tipo);
+        }
+    }
+
+    // ==================== DIARIO ====================
+
+    private interface Escritura {
+        void escribir(DataOutputStream salida) throws IOException;
+    }
+
+    private static byte[] cuerpo(byte tipo, Escritura escritura) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream salida = new DataOutputStream(bytes);
+            salida.writeByte(tipo);
+            escritura.escribir(salida);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Anota el cambio en el diario; se llama con cerrojoEscritura tomado para que el orden del
+     * diario coincida con el orden en que se aplican los cambios
+     */
+    private long anotar(byte[] cuerpo) throws SQLException {
+        if (diario == null) {
+            return 0;
+        }
+        try {
+            long lsn = diario.agregar(cuerpo);
+            if (++registrosDesdeInstantanea == instantaneaCadaRegistros && !programador.isShutdown()) {
+                programador.execute(this::tomarInstantaneaRegistrando);
+            }
+            return lsn;
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    private void esperarDiario(long lsn) throws SQLException {
+        if (diario == null || lsn == 0) {
+            return;
+        }
+        try {
+            diario.esperar(lsn);
+        } catch (IOException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    // ==================== INSTANTÁNEAS ====================
+
+    private void tomarInstantaneaRegistrando() {
+        try {
+            tomarInstantanea();
+        } catch (IOException | RuntimeException e) {
+            Metricas.incrementar("almacen.instantanea.errores");
+            Log.error("✗ Error al guardar la instantánea del almacén: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Copia el estado bajo el cerrojo de escritura (solo referencias: las filas no se modifican),
+     * corta el diario en ese punto y escribe el archivo sin bloquear a nadie. Cuando la instantánea
+     * ya está en disco se borran los segmentos que cubre.
+     */
+    public void tomarInstantanea() throws IOException {
+        if (diario == null) {
+            return;
+        }
+        synchronized (cerrojoInstantanea) {
+            long inicio = System.nanoTime();
+            List<Universidad> copiaUniversidades;
+            List<Estudiante> copiaEstudiantes;
+            long lsn;
+            long primerLsnNuevo;
+            int idUniversidad;
+            int idEstudiante;
+            synchronized (cerrojoEscritura) {
+                copiaUniversidades = new ArrayList<>(universidades.values());
+                copiaEstudiantes = new ArrayList<>(estudiantes.values());
+                idUniversidad = ultimoIdUniversidad;
+                idEstudiante = ultimoIdEstudiante;
+                lsn = diario.getUltimoLsn();
+                primerLsnNuevo = diario.rotar();
+                registrosDesdeInstantanea = 0;
+            }
+
+            Path temporal = directorio.resolve(ARCHIVO_INSTANTANEA + ".tmp");
+            CRC32 crc = new CRC32();
+            try (FileOutputStream archivo = new FileOutputStream(temporal.toFile());
+                 DataOutputStream salida = new DataOutputStream(
+                         new BufferedOutputStream(new CheckedOutputStream(archivo, crc), 1 << 16))) {
+                salida.writeInt(MAGICO);
+                salida.writeInt(VERSION);
+                salida.writeLong(lsn);
+                salida.writeInt(idUniversidad);
+                salida.writeInt(idEstudiante);
+                salida.writeInt(copiaUniversidades.size());
+                for (Universidad u : copiaUniversidades) {
+                    escribirUniversidad(salida, u);
+                }
+                salida.writeInt(copiaEstudiantes.size());
+                for (Estudiante e : copiaEstudiantes) {
+                    escribirEstudiante(salida, e);
+                }
+                salida.flush();
+                // El CRC de todo lo anterior va al final, fuera del cálculo
+                new DataOutputStream(archivo).writeLong(crc.getValue());
+                archivo.getFD().sync();
+            }
+            Files.move(temporal, directorio.resolve(ARCHIVO_INSTANTANEA),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            diario.borrarSegmentosAnteriores(primerLsnNuevo);
+
+            Metricas.incrementar("almacen.instantaneas");
+            Metricas.registrarTiempo("almacen.instantanea.duracion", inicio);
+            Log.info("✓ Instantánea del almacén guardada hasta el registro {} ({} universidades, {} estudiantes)",
+                    lsn, copiaUniversidades.size(), copiaEstudiantes.size());
+        }
+    }
+
+    /**
+     * Carga la instantánea si existe y es válida; devuelve el último LSN que incluye
+     */
+    private long cargarInstantanea() throws IOException {
+        Files.deleteIfExists(directorio.resolve(ARCHIVO_INSTANTANEA + ".tmp"));
+        Path archivo = directorio.resolve(ARCHIVO_INSTANTANEA);
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (datos.remaining() < 8 + 4 + 4 + 8) {
+                throw new IOException("La instantánea " + archivo + " está incompleta");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(datos.slice(0, datos.limit() - 8));
+            if (crc.getValue() != datos.getLong(datos.limit() - 8)) {
+                throw new IOException("La instantánea " + archivo + " está dañada (CRC inválido)");
+            }
+            int magico = datos.getInt();
+            int version = datos.getInt();
+            if (magico != MAGICO || version < 1 || version > VERSION) {
+                throw new IOException("La instantánea " + archivo + " no tiene un formato reconocido");
+            }
+            long lsn = datos.getLong();
+            if (version >= 2) {
+                // Las filas cargadas solo pueden subirlos
+                ultimoIdUniversidad = datos.getInt();
+                ultimoIdEstudiante = datos.getInt();
+            }
+            int cantidadUniversidades = datos.getInt();
+            for (int i = 0; i < cantidadUniversidades; i++) {
+                aplicarGuardarUniversidad(leerUniversidad(datos));
+            }
+            int cantidadEstudiantes = datos.getInt();
+            for (int i = 0; i < cantidadEstudiantes; i++) {
+                aplicarGuardarEstudiante(leerEstudiante(datos));
+            }
+            return lsn;
+        }
+    }
+
+    // ==================== FORMATO BINARIO ====================
+
+    private static void escribirUniversidad(DataOutputStream salida, Universidad u) throws IOException {
+        salida.writeInt(u.getId());
+        escribirTexto(salida, u.getNombre());
+        escribirTexto(salida, u.getCiudad());
+        escribirTexto(salida, u.getPais());
+    }
+
+    private static Universidad leerUniversidad(ByteBuffer datos) {
+        return new Universidad(datos.getInt(), leerTexto(datos), leerTexto(datos), leerTexto(datos));
+    }
+
+    private static void escribirEstudiante(DataOutputStream salida, Estudiante e) throws IOException {
+        salida.writeInt(e.getId());
+        escribirTexto(salida, e.getNombre());
+        escribirTexto(salida, e.getApellido());
+        escribirTexto(salida, e.getEmail());
+        salida.writeInt(e.getEdad());
+        salida.writeInt(e.getUniversidadId());
+    }
+
+    private static Estudiante leerEstudiante(ByteBuffer datos) {
+        return new Estudiante(datos.getInt(), leerTexto(datos), leerTexto(datos), leerTexto(datos),
+                datos.getInt(), datos.getInt());
+    }
+
+    /**
+     * Largo en bytes UTF-8 seguido de los bytes; -1 representa null
+     */
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    private static String leerTexto(ByteBuffer datos) {
+        int largo = datos.getInt();
+        if (largo < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[largo];
+        datos.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean registrosPendientesDeInstantanea() {
+        synchronized (cerrojoEscritura) {
+            return registrosDesdeInstantanea > 0;
+        }
+    }
+
+    /**
+     * Los datos ya se cargaron al abrir el almacén
+     */
+    @Override
+    public void precalentar() {
+    }
+
+    @Override
+    public long retrasoReplicacionMs() {
+        return 0;
+    }
+
+    @Override
+    public boolean lecturasFijadasAPrimaria() {
+        return false;
+    }
+
+    @Override
+    public void cerrar() {
+        // El servidor puede detenerse dos veces: desde el hook de apagado y al terminar de atender
+        if (diario == null || !cerrado.compareAndSet(false, true)) {
+            return;
+        }
+        programador.shutdownNow();
+        try {
+            // Deja el diario vacío para que el próximo arranque no tenga nada que reproducir
+            if (registrosPendientesDeInstantanea()) {
+                tomarInstantanea();
+            }
+        } catch (IOException e) {
+            Log.error("✗ Error al guardar la instantánea final: {}", e.getMessage());
+        }
+        try {
+            diario.close();
+            System.out.println("✓ Almacén en memoria cerrado");
+        } catch (IOException e) {
+            System.err.println("✗ Error al cerrar el diario: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte las lecturas entre réplicas y manda las escrituras a la primaria.
+ *
+ * Cada lectura va a la réplica disponible con menos lecturas en curso; los empates se
+ * alternan en ronda. Una réplica deja de estar disponible si su atraso supera el máximo
+ * tolerado o si falla una lectura, y vuelve cuando el sondeo periódico la encuentra al día.
+ * Sin réplicas disponibles se lee de la primaria.
+ *
+ * La sesión (el hilo que atiende al cliente) lee de la primaria mientras tiene una transacción
+ * abierta y durante un rato después de cada escritura, para ver siempre lo que acaba de escribir.
+ *
+ * Las búsquedas por ID van siempre a la primaria: alimentan cachés que se invalidan con cada
+ * escritura, y una fila vieja leída de una réplica quedaría guardada después de su invalidación.
+ */
+public class AlmacenReplicado implements AlmacenDatos {
+    private final AlmacenDatos primaria;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxRetrasoMs;
+    private final long fijarPrimariaMs;
+    private final AtomicInteger turno = new AtomicInteger();
+    private final ScheduledExecutorService sondeo;
+
+    // Momento (nanoTime) hasta el que la sesión del hilo actual lee de la primaria
+    private final ThreadLocal<Long> primariaHasta = new ThreadLocal<>();
+
+    private static final class Replica {
+        final String nombre;
+        final AlmacenDatos almacen;
+        final AtomicInteger enCurso = new AtomicInteger();
+        volatile boolean disponible = true;
+        volatile long retrasoMs;
+
+        Replica(String nombre, AlmacenDatos almacen) {
+            this.nombre = nombre;
+            this.almacen = almacen;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Lectura<T> {
+        T leer(AlmacenDatos almacen) throws SQLException;
+    }
+
+    /**
+     * @param maxRetrasoMs atraso a partir del cual una réplica deja de recibir lecturas
+     * @param fijarPrimariaMs cuánto lee de la primaria una sesión después de escribir
+     * @param sondeoMs cada cuánto se mide el atraso de las réplicas
+     */
+    public AlmacenReplicado(AlmacenDatos primaria, List<AlmacenDatos> replicas,
+                            long maxRetrasoMs, long fijarPrimariaMs, long sondeoMs) {
+        this.primaria = primaria;
+        this.maxRetrasoMs = maxRetrasoMs;
+        this.fijarPrimariaMs = fijarPrimariaMs;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica("db.replica" + i, replicas.get(i));
+            this.replicas.add(replica);
+            Metricas.registrarMedidor(replica.nombre + ".disponible", () -> replica.disponible ? 1 : 0);
+            Metricas.registrarMedidor(replica.nombre + ".retrasoMs", () -> replica.retrasoMs);
+            Metricas.registrarMedidor(replica.nombre + ".enCurso", replica.enCurso::get);
+        }
+
+        this.sondeo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "sondeo-replicas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        sondeo.scheduleWithFixedDelay(this::sondearReplicas, 0, sondeoMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ==================== ENRUTAMIENTO ====================
+
+    private <T> T leer(Lectura<T> lectura) throws SQLException {
+        Replica replica = elegirReplica();
+        if (replica == null) {
+            Metricas.incrementar("db.lecturas.primaria");
+            return lectura.leer(primaria);
+        }
+
+        replica.enCurso.incrementAndGet();
+        try {
+            T resultado = lectura.leer(replica.almacen);
+            Metricas.incrementar("db.lecturas.replica");
+            return resultado;
+        } catch (SQLException e) {
+            // Se aparta hasta el próximo sondeo y la lectura se repite en la primaria
+            replica.disponible = false;
+            Metricas.incrementar(replica.nombre + ".errores");
+            Log.warn("⚠ Réplica {} apartada: {}", replica.nombre, e.getMessage());
+            Metricas.incrementar("db.lecturas.primaria");
+            return lectura.leer(primaria);
+        } finally {
+            replica.enCurso.decrementAndGet();
+        }
+    }
+
+    private Replica elegirReplica() {
+        if (replicas.isEmpty() || primaria.transaccionActual() != null || fijadaAPrimaria()) {
+            return null;
+        }
+        int inicio = Math.floorMod(turno.getAndIncrement(), replicas.size());
+        Replica elegida = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((inicio + i) % replicas.size());
+            if (replica.disponible && (elegida == null || replica.enCurso.get() < elegida.enCurso.get())) {
+                elegida = replica;
+            }
+        }
+        return elegida;
+    }
+
+    private boolean fijadaAPrimaria() {
+        Long hasta = primariaHasta.get();
+        if (hasta == null) {
+            return false;
+        }
+        if (System.nanoTime() - hasta < 0) {
+            return true;
+        }
+        primariaHasta.remove();
+        return false;
+    }
+
+    /**
+     * Se llama después de cada escritura: las próximas lecturas de la sesión van a la primaria
+     */
+    private void escribio() {
+        if (!replicas.isEmpty()) {
+            primariaHasta.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fijarPrimariaMs));
+        }
+    }
+
+    private void sondearReplicas() {
+        for (Replica replica : replicas) {
+            try {
+                long retraso = replica.almacen.retrasoReplicacionMs();
+                replica.retrasoMs = retraso;
+                boolean disponible = retraso <= maxRetrasoMs;
+                if (disponible != replica.disponible) {
+                    Log.info(disponible ? "✓ Réplica {} disponible (atraso {} ms)" : "⚠ Réplica {} atrasada ({} ms)",
+                            replica.nombre, retraso);
+                }
+                replica.disponible = disponible;
+            } catch (SQLException | RuntimeException e) {
+                if (replica.disponible) {
+                    Log.warn("⚠ Réplica {} no responde: {}", replica.nombre, e.getMessage());
+                }
+                replica.disponible = false;
+            }
+        }
+    }
+
+    // ==================== UNIVERSIDADES ====================
+
+    @Override
+    public int insertarUniversidad(String nombre, String ciudad, String pais) throws SQLException {
+        try {
+            return primaria.insertarUniversidad(nombre, ciudad, pais);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public void insertarUniversidadConId(int id, String nombre, String ciudad, String pais) throws SQLException {
+        try {
+            primaria.insertarUniversidadConId(id, nombre, ciudad, pais);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public List<Universidad> listarUniversidades() throws SQLException {
+        return leer(AlmacenDatos::listarUniversidades);
+    }
+
+    @Override
+    public Universidad obtenerUniversidad(int id) throws SQLException {
+        return primaria.obtenerUniversidad(id);
+    }
+
+    @Override
+    public boolean actualizarUniversidad(int id, String nombre, String ciudad, String pais) throws SQLException {
+        try {
+            return primaria.actualizarUniversidad(id, nombre, ciudad, pais);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public boolean eliminarUniversidad(int id) throws SQLException {
+        try {
+            return primaria.eliminarUniversidad(id);
+        } finally {
+            escribio();
+        }
+    }
+
+    // ==================== ESTUDIANTES ====================
+
+    @Override
+    public int insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId)
+            throws SQLException {
+        try {
+            return primaria.insertarEstudiante(nombre, apellido, email, edad, universidadId);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public void insertarEstudianteConId(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        try {
+            primaria.insertarEstudianteConId(id, nombre, apellido, email, edad, universidadId);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public List<Estudiante> listarEstudiantes() throws SQLException {
+        return leer(AlmacenDatos::listarEstudiantes);
+    }
+
+    @Override
+    public Estudiante obtenerEstudiante(int id) throws SQLException {
+        return primaria.obtenerEstudiante(id);
+    }
+
+    @Override
+    public boolean actualizarEstudiante(int id, String nombre, String apellido, String email, int edad,
+                                        int universidadId) throws SQLException {
+        try {
+            return primaria.actualizarEstudiante(id, nombre, apellido, email, edad, universidadId);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public boolean eliminarEstudiante(int id) throws SQLException {
+        try {
+            return primaria.eliminarEstudiante(id);
+        } finally {
+            escribio();
+        }
+    }
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    @Override
+    public int[] insertarLoteUniversidades(List<Universidad> universidades, boolean conId) throws SQLException {
+        try {
+            return primaria.insertarLoteUniversidades(universidades, conId);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public int[] insertarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) throws SQLException {
+        try {
+            return primaria.insertarLoteEstudiantes(estudiantes, conId);
+        } finally {
+            escribio();
+        }
+    }
+
+    @Override
+    public int maximoId(String tabla) throws SQLException {
+        return primaria.maximoId(tabla);
+    }
+
+    @Override
+    public void ajustarSecuencia(String tabla) throws SQLException {
+        primaria.ajustarSecuencia(tabla);
+    }
+
+    @Override
+    public int reservarIdsEstudiantes(int tamano, int minimo) throws SQLException {
+        return primaria.reservarIdsEstudiantes(tamano, minimo);
+    }
+
+    /**
+     * La exportación no se repite en la primaria si falla a mitad: el escritor ya recibió filas
+     */
+    @Override
+    public long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException {
+        Replica replica = elegirReplica();
+        AlmacenDatos origen = replica != null ? replica.almacen : primaria;
+        return origen.exportarTabla(tabla, escritor);
+    }
+
+    // ==================== TRANSACCIONES ====================
+
+    @Override
+    public Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException {
+        return primaria.iniciarTransaccion(duracionMaxMs);
+    }
+
+    @Override
+    public Transaccion transaccionActual() {
+        return primaria.transaccionActual();
+    }
+
+    /**
+     * Lo que la transacción escribió tarda en llegar a las réplicas igual que una escritura suelta
+     */
+    @Override
+    public Transaccion soltarTransaccion() {
+        Transaccion transaccion = primaria.soltarTransaccion();
+        if (transaccion != null) {
+            escribio();
+        }
+        return transaccion;
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    @Override
+    public void precalentar() throws SQLException {
+        primaria.precalentar();
+        for (Replica replica : replicas) {
+            replica.almacen.precalentar();
+        }
+    }
+
+    // ==================== RÉPLICAS ====================
+
+    @Override
+    public long retrasoReplicacionMs() throws SQLException {
+        return primaria.retrasoReplicacionMs();
+    }
+
+    @Override
+    public boolean lecturasFijadasAPrimaria() {
+        return fijadaAPrimaria();
+    }
+
+    @Override
+    public void cerrar() {
+        sondeo.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.almacen.cerrar();
+        }
+        primaria.cerrar();
+    }
+}
@@ -0,0 +1,359 @@
+package servidor;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché acotada de filas por ID para las consultas puntuales, con admisión W-TinyLFU.
+ *
+ * Las entradas nuevas pasan por una ventana LRU pequeña; al salir de ella compiten con la
+ * víctima del segmento principal y entra la que tiene más frecuencia estimada. Así un barrido
+ * de IDs que se piden una sola vez no desplaza a las claves calientes. El segmento principal
+ * es un LRU segmentado: en prueba hasta el segundo acceso, protegido después.
+ *
+ * Las lecturas no bloquean: el mapa es concurrente y el registro del acceso se descarta si
+ * otro hilo tiene el cerrojo. Cada invalidación avanza una generación; una carga que empezó
+ * antes de una escritura no se guarda, para no dejar en caché un valor viejo.
+ */
+public final class CacheFilas<T> {
+    private static final int VENTANA = 0;
+    private static final int PRUEBA = 1;
+    private static final int PROTEGIDA = 2;
+
+    /** Busca la fila en el almacén cuando no está en caché; devuelve null si no existe */
+    @FunctionalInterface
+    public interface Cargador<T> {
+        T cargar(int id) throws SQLException;
+    }
+
+    private final String nombre;
+    private final int capacidad;
+    private final int maxVentana;
+    private final int maxProtegida;
+
+    private final ConcurrentHashMap<Integer, Nodo<T>> mapa = new ConcurrentHashMap<>();
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final AtomicLong generacion = new AtomicLong();
+    private volatile boolean registrarAccesos = true;
+
+    // Protegidos por cerrojo
+    private final Frecuencias frecuencias;
+    private final Lista<T> ventana = new Lista<>();
+    private final Lista<T> prueba = new Lista<>();
+    private final Lista<T> protegida = new Lista<>();
+
+    /**
+     * @param nombre prefijo de las métricas (cache.nombre.aciertos, ...)
+     */
+    public CacheFilas(String nombre, int capacidad) {
+        this.nombre = "cache." + nombre;
+        this.capacidad = Math.max(capacidad, 2);
+        this.maxVentana = Math.max(1, this.capacidad / 100);
+        this.maxProtegida = (this.capacidad - maxVentana) * 8 / 10;
+        this.frecuencias = new Frecuencias(this.capacidad);
+
+        Metricas.registrarMedidor(this.nombre + ".entradas", mapa::size);
+    }
+
+    /**
+     * Devuelve la fila desde la caché o, si no está, desde el cargador (y la guarda)
+     */
+    public T obtener(int id, Cargador<T> cargador) throws SQLException {
+        EventosJfr.Cache evento = EventosJfr.Cache.iniciar();
+        Nodo<T> nodo = mapa.get(id);
+        if (registrarAccesos) {
+            registrarAcceso(id, nodo);
+        }
+        if (nodo != null) {
+            Metricas.incrementar(nombre + ".aciertos");
+            evento.terminar(nombre, id, true);
+            return nodo.valor;
+        }
+        Metricas.incrementar(nombre + ".fallos");
+
+        try {
+            long generacionInicial = generacion.get();
+            T valor = cargador.cargar(id);
+            if (valor != null) {
+                guardar(id, valor, generacionInicial);
+            }
+            return valor;
+        } finally {
+            evento.terminar(nombre, id, false);
+        }
+    }
+
+    public void invalidar(int id) {
+        generacion.incrementAndGet();
+        cerrojo.lock();
+        try {
+            Nodo<T> nodo = mapa.remove(id);
+            if (nodo != null) {
+                lista(nodo.zona).quitar(nodo);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    public void invalidarTodo() {
+        generacion.incrementAndGet();
+        cerrojo.lock();
+        try {
+            mapa.clear();
+            ventana.vaciar();
+            prueba.vaciar();
+            protegida.vaciar();
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Con false las lecturas siguen pasando por la caché pero no suman frecuencia ni promueven
+     * entradas, para que las consultas sintéticas del calentamiento no parezcan claves calientes
+     */
+    public void registrarAccesos(boolean registrar) {
+        registrarAccesos = registrar;
+    }
+
+    public int tamano() {
+        return mapa.size();
+    }
+
+    public int capacidad() {
+        return capacidad;
+    }
+
+    /**
+     * IDs guardados, de los más valiosos a los menos: protegidos, en prueba y en la ventana,
+     * cada segmento del más reciente al más antiguo
+     */
+    public int[] claves() {
+        cerrojo.lock();
+        try {
+            int[] claves = new int[mapa.size()];
+            int n = 0;
+            for (Lista<T> lista : List.of(protegida, prueba, ventana)) {
+                for (Nodo<T> nodo = lista.centinela.siguiente; nodo != lista.centinela && n < claves.length;
+                     nodo = nodo.siguiente) {
+                    claves[n++] = nodo.id;
+                }
+            }
+            return Arrays.copyOf(claves, n);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // ==================== POLÍTICA ====================
+
+    private void registrarAcceso(int id, Nodo<T> nodo) {
+        // Con contención se pierde el registro: la política es aproximada y la lectura no espera
+        if (!cerrojo.tryLock()) {
+            Metricas.incrementar(nombre + ".accesosDescartados");
+            return;
+        }
+        try {
+            frecuencias.incrementar(id);
+            if (nodo != null && mapa.get(id) == nodo) {
+                promover(nodo);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void promover(Nodo<T> nodo) {
+        switch (nodo.zona) {
+            case VENTANA:
+                ventana.alFrente(nodo);
+                break;
+            case PRUEBA:
+                prueba.quitar(nodo);
+                nodo.zona = PROTEGIDA;
+                protegida.agregar(nodo);
+                if (protegida.tamano > maxProtegida) {
+                    Nodo<T> degradado = protegida.ultimo();
+                    protegida.quitar(degradado);
+                    degradado.zona = PRUEBA;
+                    prueba.agregar(degradado);
+                }
+                break;
+            default:
+                protegida.alFrente(nodo);
+        }
+    }
+
+    private void guardar(int id, T valor, long generacionInicial) {
+        cerrojo.lock();
+        try {
+            if (generacion.get() != generacionInicial || mapa.containsKey(id)) {
+                return;
+            }
+            Nodo<T> nodo = new Nodo<>(id, valor);
+            mapa.put(id, nodo);
+            ventana.agregar(nodo);
+            if (ventana.tamano > maxVentana) {
+                Nodo<T> candidato = ventana.ultimo();
+                ventana.quitar(candidato);
+                candidato.zona = PRUEBA;
+                prueba.agregar(candidato);
+                if (mapa.size() > capacidad) {
+                    desalojar(candidato);
+                }
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * El candidato que sale de la ventana compite con la víctima del segmento principal
+     */
+    private void desalojar(Nodo<T> candidato) {
+        Nodo<T> victima = prueba.ultimo();
+        if (victima == candidato) {
+            victima = protegida.ultimo();
+        }
+        Nodo<T> perdedor = candidato;
+        if (victima != null && frecuencias.estimar(candidato.id) > frecuencias.estimar(victima.id)) {
+            perdedor = victima;
+        }
+        lista(perdedor.zona).quitar(perdedor);
+        mapa.remove(perdedor.id);
+        Metricas.incrementar(nombre + ".desalojos");
+    }
+
+    private Lista<T> lista(int zona) {
+        switch (zona) {
+            case VENTANA:
+                return ventana;
+            case PRUEBA:
+                return prueba;
+            default:
+                return protegida;
+        }
+    }
+
+    // ==================== ESTRUCTURAS ====================
+
+    private static final class Nodo<T> {
+        final int id;
+        final T valor;
+        int zona = VENTANA;
+        Nodo<T> anterior;
+        Nodo<T> siguiente;
+
+        Nodo(int id, T valor) {
+            this.id = id;
+            this.valor = valor;
+        }
+    }
+
+    /**
+     * Lista doblemente enlazada con centinela; el frente es el más reciente
+     */
+    private static final class Lista<T> {
+        private final Nodo<T> centinela = new Nodo<>(0, null);
+        int tamano;
+
+        Lista() {
+            centinela.anterior = centinela;
+            centinela.siguiente = centinela;
+        }
+
+        void agregar(Nodo<T> nodo) {
+            nodo.siguiente = centinela.siguiente;
+            nodo.anterior = centinela;
+            centinela.siguiente.anterior = nodo;
+            centinela.siguiente = nodo;
+            tamano++;
+        }
+
+        void quitar(Nodo<T> nodo) {
+            nodo.anterior.siguiente = nodo.siguiente;
+            nodo.siguiente.anterior = nodo.anterior;
+            nodo.anterior = null;
+            nodo.siguiente = null;
+            tamano--;
+        }
+
+        void alFrente(Nodo<T> nodo) {
+            quitar(nodo);
+            agregar(nodo);
+        }
+
+        Nodo<T> ultimo() {
+            return centinela.anterior == centinela ? null : centinela.anterior;
+        }
+
+        void vaciar() {
+            centinela.anterior = centinela;
+            centinela.siguiente = centinela;
+            tamano = 0;
+        }
+    }
+
+    /**
+     * Count-min sketch de 4 filas con contadores saturados en 15. Cuando las muestras llegan
+     * a diez veces la capacidad se reducen todos a la mitad, para que la frecuencia envejezca.
+     */
+    private static final class Frecuencias {
+        private static final int FILAS = 4;
+        private static final int MAXIMO = 15;
+        private static final long[] SEMILLAS = {
+                0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L};
+
+        private final byte[] contadores;
+        private final int mascara;
+        private final int muestrasMaximas;
+        private int muestras;
+
+        Frecuencias(int capacidad) {
+            int ancho = Integer.highestOneBit(Math.max(capacidad, 16) - 1) << 1;
+            this.contadores = new byte[FILAS * ancho];
+            this.mascara = ancho - 1;
+            this.muestrasMaximas = 10 * capacidad;
+        }
+
+        void incrementar(int id) {
+            boolean aumento = false;
+            for (int fila = 0; fila < FILAS; fila++) {
+                int i = indice(id, fila);
+                if (contadores[i] < MAXIMO) {
+                    contadores[i]++;
+                    aumento = true;
+                }
+            }
+            if (aumento && ++muestras >= muestrasMaximas) {
+                envejecer();
+            }
+        }
+
+        int estimar(int id) {
+            int minimo = MAXIMO;
+            for (int fila = 0; fila < FILAS; fila++) {
+                minimo = Math.min(minimo, contadores[indice(id, fila)]);
+            }
+            return minimo;
+        }
+
+        private void envejecer() {
+            for (int i = 0; i < contadores.length; i++) {
+                contadores[i] = (byte) (contadores[i] >>> 1);
+            }
+            muestras /= 2;
+        }
+
+        private int indice(int id, int fila) {
+            long h = (id + 1L) * SEMILLAS[fila];
+            int dispersado = (int) (h ^ (h >>> 32));
+            return fila * (mascara + 1) + (dispersado & mascara);
+        }
+    }
+}
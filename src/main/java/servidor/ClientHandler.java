@@ -1,56 +1,209 @@
 package servidor;
 
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Clase para manejar cada cliente TCP en un hilo separado
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler implements Runnable, RuedaTemporizadores.Temporizador {
+    // Tiempo sin recibir comandos (ni PING) tras el cual se cierra la sesión
+    private static final long INACTIVIDAD_MAX_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong("servidor.inactividadMaxSeg", 300L));
+    // Tiempo máximo de una transacción abierta con BEGIN antes de revertirse sola
+    private static final long TRANSACCION_MAX_MS = Long.getLong("servidor.transaccionMaxMs", 30000L);
+    // Invalidaciones que pueden esperar a un suscriptor lento antes de desconectarlo
+    private static final int COLA_INVALIDACIONES = Integer.getInteger("servidor.invalidaciones.cola", 1000);
+
     private Socket socket;
     private DatabaseManager dbManager;
+    private NotificadorInvalidaciones notificador;
+    private ControlAdmision admision;
+    private RuedaTemporizadores rueda;
+    private LimitadorTasa limitador;
+    private LimitadorTasa.Cubetas limitesConexion;
+    private final long creadoEn = System.nanoTime();
+    private volatile long ultimaActividad = creadoEn;
+    private volatile boolean procesando;
     private BufferedReader entrada;
-    private PrintWriter salida;
+    private volatile PrintWriter salida;
     private String direccionCliente;
+    // Quien envía los comandos: el socket, o el cliente que informa un proxy confiable
+    private InetAddress origen;
+    // Se crean al suscribirse; el hilo escritor vacía la cola para que quien escribe no espere
+    private volatile BlockingQueue<String> invalidaciones;
+    private Thread escritorInvalidaciones;
 
-    public ClientHandler(Socket socket, DatabaseManager dbManager) {
+    public ClientHandler(Socket socket, DatabaseManager dbManager, NotificadorInvalidaciones notificador,
+                         ControlAdmision admision, RuedaTemporizadores rueda, LimitadorTasa limitador) {
         this.socket = socket;
         this.dbManager = dbManager;
-        this.direccionCliente = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        this.notificador = notificador;
+        this.admision = admision;
+        this.rueda = rueda;
+        this.limitador = limitador;
+        this.limitesConexion = limitador.nuevaConexion();
+        this.origen = socket.getInetAddress();
+        this.direccionCliente = origen.getHostAddress() + ":" + socket.getPort();
+    }
+
+    /**
+     * Manejador sin conexión ni límites de tasa, para pasar comandos de calentamiento por el mismo despacho
+     */
+    ClientHandler(DatabaseManager dbManager, NotificadorInvalidaciones notificador, ControlAdmision admision,
+                  RuedaTemporizadores rueda) {
+        this.dbManager = dbManager;
+        this.notificador = notificador;
+        this.admision = admision;
+        this.rueda = rueda;
+        this.origen = InetAddress.getLoopbackAddress();
+        this.direccionCliente = "calentamiento";
     }
 
     @Override
     public void run() {
         try {
-            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            salida = new PrintWriter(socket.getOutputStream(), true);
+            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            // Sin autoflush: cada respuesta se vacía entera en enviarRespuesta, no línea por línea
+            salida = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
 
-            System.out.println("✓ Manejador iniciado para cliente: " + direccionCliente);
+            Metricas.incrementar("tcp.conexiones.abiertas");
+            ultimaActividad = System.nanoTime();
+            rueda.programar(this);
+            Log.info("✓ Manejador iniciado para cliente: {}", direccionCliente);
 
             String mensajeCliente;
+            boolean primeraLinea = true;
 
             while ((mensajeCliente = entrada.readLine()) != null) {
-                System.out.println("📨 [" + direccionCliente + "] Comando recibido: " + mensajeCliente);
+                ultimaActividad = System.nanoTime();
+                if (primeraLinea) {
+                    primeraLinea = false;
+                    if (OrigenProxy.esCabecera(mensajeCliente)) {
+                        aplicarCabeceraProxy(mensajeCliente);
+                        continue;
+                    }
+                }
+                boolean registrar = Log.registrarComando();
+                if (registrar) {
+                    Log.info("📨 [{}] Comando recibido: {}", direccionCliente, mensajeCliente);
+                }
 
                 if (mensajeCliente.equals("SALIR")) {
-                    salida.println("SUCCESS: Conexión cerrada por el servidor. ¡Hasta pronto!");
-                    System.out.println("👋 [" + direccionCliente + "] Cliente solicitó desconexión");
+                    enviarRespuesta("SUCCESS: Conexión cerrada por el servidor. ¡Hasta pronto!");
+                    Log.info("👋 [{}] Cliente solicitó desconexión", direccionCliente);
                     break;
                 }
 
-                String respuesta = procesarComando(mensajeCliente);
-                enviarRespuesta(respuesta);
-                System.out.println("📤 [" + direccionCliente + "] Respuesta enviada\n");
+                long inicio = Traza.iniciar();
+                EventosJfr.Comando evento = EventosJfr.Comando.iniciar();
+                procesando = true;
+                String respuesta;
+                try {
+                    respuesta = procesarConAdmision(mensajeCliente);
+                    long inicioEnvio = Traza.marcar();
+                    enviarRespuesta(respuesta);
+                    Traza.sumar(Traza.Fase.ENVIO, inicioEnvio);
+                } finally {
+                    procesando = false;
+                    ultimaActividad = System.nanoTime();
+                }
+                Metricas.registrarComando("tcp", mensajeCliente, inicio, respuesta);
+                evento.terminar("tcp", direccionCliente, mensajeCliente, respuesta);
+                Traza.terminar("tcp", direccionCliente, mensajeCliente, inicio);
+                Metricas.sumar("tcp.bytes.enviados", respuesta.length());
+                if (registrar) {
+                    Log.info("📤 [{}] Respuesta enviada", direccionCliente);
+                }
             }
 
         } catch (IOException e) {
-            System.err.println("✗ [" + direccionCliente + "] Error en comunicación: " + e.getMessage());
+            if (!socket.isClosed()) {
+                Log.error("✗ [{}] Error en comunicación: {}", direccionCliente, e.getMessage());
+            }
         } finally {
             cerrarConexion();
         }
     }
 
+    /**
+     * La cabecera no lleva respuesta; si no viene de un proxy confiable se descarta
+     */
+    private void aplicarCabeceraProxy(String cabecera) {
+        InetSocketAddress cliente = OrigenProxy.leer(cabecera, socket.getInetAddress());
+        if (cliente == null) {
+            Log.warn("⚠ [{}] Cabecera PROXY descartada: el origen no es un proxy confiable", direccionCliente);
+            return;
+        }
+        String viaProxy = direccionCliente;
+        origen = cliente.getAddress();
+        direccionCliente = origen.getHostAddress() + ":" + cliente.getPort();
+        Log.info("✓ [{}] Cliente reenviado por el proxy {}", direccionCliente, viaProxy);
+    }
+
+    /**
+     * Procesa el comando; si excede el límite de tasa se rechaza en el acto, y si usa la base de
+     * datos primero espera turno en el control de admisión
+     */
+    String procesarConAdmision(String comando) {
+        String rechazo = verificarLimites(comando);
+        if (rechazo != null) {
+            return rechazo;
+        }
+        if (!usaBaseDatos(comando)) {
+            return procesarComando(comando);
+        }
+        long inicioEspera = Traza.marcar();
+        boolean admitido = admision.entrar();
+        Traza.sumar(Traza.Fase.ADMISION, inicioEspera);
+        if (!admitido) {
+            return admision.mensajeOcupado();
+        }
+        try {
+            return procesarComando(comando);
+        } finally {
+            admision.salir();
+        }
+    }
+
+    /**
+     * Primero la cubeta de la conexión y después la de la IP, compartida por todas sus conexiones
+     */
+    private String verificarLimites(String comando) {
+        if (limitador == null) {
+            return null;
+        }
+        LimitadorTasa.Tipo tipo = LimitadorTasa.clasificar(comando);
+        if (tipo == null) {
+            return null;
+        }
+        String rechazo = limitesConexion.verificar(tipo);
+        if (rechazo == null) {
+            rechazo = limitador.verificar(origen.getHostAddress(), tipo);
+        }
+        if (rechazo != null) {
+            Metricas.incrementar("tcp.comandos.limitados");
+        }
+        return rechazo;
+    }
+
+    private static boolean usaBaseDatos(String comando) {
+        String operacion = comando.toUpperCase();
+        return operacion.startsWith("INSERTAR_") || operacion.startsWith("CONSULTAR_") ||
+                operacion.startsWith("ACTUALIZAR_") || operacion.startsWith("ELIMINAR_") ||
+                operacion.startsWith("FILTRAR_") || operacion.startsWith("IMPORTAR") ||
+                operacion.startsWith("EXPORTAR");
+    }
+
     private String procesarComando(String comando) {
+        long inicioAnalisis = Traza.marcar();
         try {
             if (comando == null || comando.trim().isEmpty()) {
                 return "ERROR: Comando vacío";
@@ -63,6 +216,7 @@ public class ClientHandler implements Runnable {
             }
 
             String operacion = partes[0].toUpperCase();
+            Traza.sumar(Traza.Fase.ANALISIS, inicioAnalisis);
 
             switch (operacion) {
                 // ========== OPERACIONES UNIVERSIDADES ==========
@@ -77,8 +231,29 @@ public class ClientHandler implements Runnable {
                     return "ERROR: Formato incorrecto. Use: INSERTAR_UNIVERSIDAD|nombre|ciudad|pais";
 
                 case "CONSULTAR_UNIVERSIDADES":
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarUniversidadesDatos();
+                    }
                     return dbManager.consultarUniversidades();
 
+                case "CONSULTAR_UNIVERSIDAD":
+                    if (partes.length == 3 && partes[2].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarUniversidadDatos(Integer.parseInt(partes[1]));
+                    }
+                    if (partes.length == 2) {
+                        return dbManager.consultarUniversidad(Integer.parseInt(partes[1]));
+                    }
+                    return "ERROR: Formato incorrecto. Use: CONSULTAR_UNIVERSIDAD|id[|DATOS]";
+
+                case "BUSCAR_UNIVERSIDAD":
+                    if (partes.length == 2 || partes.length == 3) {
+                        return dbManager.buscarUniversidades(
+                                partes[1],  // texto
+                                partes.length == 3 ? Integer.parseInt(partes[2]) : 0  // máximo de resultados
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: BUSCAR_UNIVERSIDAD|texto[|maximo]";
+
                 case "ACTUALIZAR_UNIVERSIDAD":
                     if (partes.length == 5) {
                         return dbManager.actualizarUniversidad(
@@ -110,8 +285,39 @@ public class ClientHandler implements Runnable {
                     return "ERROR: Formato incorrecto. Use: INSERTAR_ESTUDIANTE|nombre|apellido|email|edad|universidad_id";
 
                 case "CONSULTAR_ESTUDIANTES":
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarEstudiantesDatos();
+                    }
                     return dbManager.consultarEstudiantes();
 
+                case "CONSULTAR_ESTUDIANTE":
+                    if (partes.length == 3 && partes[2].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarEstudianteDatos(Integer.parseInt(partes[1]));
+                    }
+                    if (partes.length == 2) {
+                        return dbManager.consultarEstudiante(Integer.parseInt(partes[1]));
+                    }
+                    return "ERROR: Formato incorrecto. Use: CONSULTAR_ESTUDIANTE|id[|DATOS]";
+
+                case "FILTRAR_ESTUDIANTES":
+                    if (partes.length >= 2 && partes.length <= 4) {
+                        return dbManager.filtrarEstudiantes(
+                                partes[1],  // condiciones
+                                partes.length > 2 ? partes[2] : null,  // orden
+                                partes.length > 3 ? partes[3] : null   // límite
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: FILTRAR_ESTUDIANTES|condiciones[|orden[|limite]]";
+
+                case "BUSCAR_ESTUDIANTE":
+                    if (partes.length == 2 || partes.length == 3) {
+                        return dbManager.buscarEstudiantes(
+                                partes[1],  // texto
+                                partes.length == 3 ? Integer.parseInt(partes[2]) : 0  // máximo de resultados
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: BUSCAR_ESTUDIANTE|texto[|maximo]";
+
                 case "ACTUALIZAR_ESTUDIANTE":
                     if (partes.length == 7) {
                         return dbManager.actualizarEstudiante(
@@ -131,39 +337,190 @@ public class ClientHandler implements Runnable {
                     }
                     return "ERROR: Formato incorrecto. Use: ELIMINAR_ESTUDIANTE|id";
 
+                // ========== CARGA Y RESPALDO MASIVO ==========
+                case "IMPORTAR":
+                    if (partes.length == 2 || partes.length == 3) {
+                        if (dbManager.enTransaccion()) {
+                            return "ERROR: IMPORTAR no se permite dentro de una transacción";
+                        }
+                        return new TransferenciaCsv(dbManager).importar(partes[1], partes.length == 3 ? partes[2] : null);
+                    }
+                    return "ERROR: Formato incorrecto. Use: IMPORTAR|archivo.csv[|tabla]";
+
+                case "EXPORTAR":
+                    if (partes.length == 3) {
+                        if (dbManager.enTransaccion()) {
+                            return "ERROR: EXPORTAR no se permite dentro de una transacción";
+                        }
+                        return new TransferenciaCsv(dbManager).exportar(partes[1], partes[2]);
+                    }
+                    return "ERROR: Formato incorrecto. Use: EXPORTAR|tabla|archivo.csv";
+
+                // ========== SESIÓN ==========
+                case "PING":
+                    return "PONG";
+
+                // ========== TRANSACCIONES ==========
+                case "BEGIN":
+                    Transaccion transaccion = dbManager.iniciarTransaccion(TRANSACCION_MAX_MS);
+                    rueda.programar(transaccion);
+                    return "✓ Transacción iniciada (máximo " + TRANSACCION_MAX_MS + " ms)";
+
+                case "COMMIT":
+                    return dbManager.confirmarTransaccion();
+
+                case "ROLLBACK":
+                    return dbManager.revertirTransaccion();
+
+                // ========== CACHÉ DEL CLIENTE ==========
+                case "SUSCRIBIR_INVALIDACIONES":
+                    suscribirInvalidaciones();
+                    return "SUCCESS: Suscrito a invalidaciones de caché";
+
+                // ========== ADMINISTRACIÓN ==========
+                case "STATS":
+                    if (!Metricas.consultaPermitida(origen)) {
+                        return "ERROR: STATS solo está permitido desde el equipo local";
+                    }
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("JSON")) {
+                        return Metricas.resumenJson();
+                    }
+                    return Metricas.resumenTexto();
+
                 default:
                     return "ERROR: Comando no reconocido: " + operacion;
             }
 
         } catch (NumberFormatException e) {
             return "ERROR: Formato de número inválido";
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
         } catch (Exception e) {
             return "ERROR: Error al procesar comando - " + e.getMessage();
         }
     }
 
     private void enviarRespuesta(String respuesta) {
-        if (respuesta.contains("\n")) {
-            String[] lineas = respuesta.split("\n");
-            for (String linea : lineas) {
-                salida.println(linea);
+        // Se sincroniza con el escritor de invalidaciones para no intercalar líneas de otros hilos
+        synchronized (salida) {
+            if (respuesta.contains("\n")) {
+                String[] lineas = respuesta.split("\n");
+                for (String linea : lineas) {
+                    salida.println(linea);
+                }
+            } else {
+                salida.println(respuesta);
+            }
+            salida.flush();
+        }
+    }
+
+    private synchronized void suscribirInvalidaciones() {
+        if (invalidaciones == null) {
+            BlockingQueue<String> cola = new ArrayBlockingQueue<>(COLA_INVALIDACIONES);
+            escritorInvalidaciones = new Thread(() -> escribirInvalidaciones(cola),
+                    "invalidaciones-" + direccionCliente);
+            escritorInvalidaciones.setDaemon(true);
+            escritorInvalidaciones.start();
+            invalidaciones = cola;
+        }
+        notificador.suscribir(this);
+    }
+
+    /**
+     * Encola un mensaje de invalidación de caché; puede llamarse desde el hilo de otro cliente y
+     * nunca se bloquea. Si la cola está llena el cliente dejó de leer: se lo desconecta, porque
+     * descartar avisos le dejaría la caché vieja sin saberlo.
+     */
+    public void enviarInvalidacion(String mensaje) {
+        BlockingQueue<String> cola = invalidaciones;
+        if (cola == null || socket.isClosed()) {
+            return;
+        }
+        if (!cola.offer(mensaje)) {
+            notificador.cancelarSuscripcion(this);
+            Metricas.incrementar("tcp.invalidaciones.desbordadas");
+            Log.warn("⚠ [{}] Suscriptor sin leer {} invalidaciones pendientes, se cierra la conexión",
+                    direccionCliente, COLA_INVALIDACIONES);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.warn("✗ [{}] Error al cerrar suscriptor lento: {}", direccionCliente, e.getMessage());
             }
-        } else {
-            salida.println(respuesta);
         }
-        salida.flush();
+    }
+
+    private void escribirInvalidaciones(BlockingQueue<String> cola) {
+        try {
+            while (!socket.isClosed()) {
+                String mensaje = cola.take();
+                synchronized (salida) {
+                    // Las que ya esperan salen en la misma escritura
+                    do {
+                        salida.println(mensaje);
+                    } while ((mensaje = cola.poll()) != null);
+                    salida.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            // cerrarConexion() detiene al escritor
+        }
     }
 
     private void cerrarConexion() {
+        if (dbManager.enTransaccion()) {
+            // El hilo vuelve al pool: no debe quedar atado a la transacción de esta sesión
+            Log.warn("⚠ [{}] Sesión cerrada con transacción abierta: {}", direccionCliente,
+                    dbManager.revertirTransaccion());
+        }
+        notificador.cancelarSuscripcion(this);
+        synchronized (this) {
+            if (escritorInvalidaciones != null) {
+                escritorInvalidaciones.interrupt();
+            }
+        }
+        Metricas.incrementar("tcp.conexiones.cerradas");
         try {
             if (entrada != null) entrada.close();
             if (salida != null) salida.close();
             if (socket != null && !socket.isClosed()) {
                 socket.close();
             }
-            System.out.println("← [" + direccionCliente + "] Cliente desconectado\n");
+            Log.info("← [{}] Cliente desconectado", direccionCliente);
+        } catch (IOException e) {
+            Log.error("✗ [{}] Error al cerrar conexión: {}", direccionCliente, e.getMessage());
+        }
+    }
+
+    // ==================== INACTIVIDAD ====================
+
+    @Override
+    public long vencimiento() {
+        if (procesando) {
+            return System.nanoTime() + INACTIVIDAD_MAX_NANOS;
+        }
+        return ultimaActividad + INACTIVIDAD_MAX_NANOS;
+    }
+
+    @Override
+    public boolean activo() {
+        return !socket.isClosed();
+    }
+
+    /**
+     * La sesión superó el tiempo de inactividad: se cierra el socket para que readLine()
+     * termine y el hilo libere sus recursos en cerrarConexion()
+     */
+    @Override
+    public void vencer() {
+        long inactivoSeg = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - ultimaActividad);
+        long vidaSeg = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - creadoEn);
+        Log.info("🧹 [{}] Sesión inactiva por {} s cerrada (duró {} s)", direccionCliente, inactivoSeg, vidaSeg);
+        Metricas.incrementar("tcp.sesiones.reclamadas");
+        try {
+            socket.close();
         } catch (IOException e) {
-            System.err.println("✗ [" + direccionCliente + "] Error al cerrar conexión: " + e.getMessage());
+            Log.warn("✗ [{}] Error al cerrar sesión inactiva: {}", direccionCliente, e.getMessage());
         }
     }
 
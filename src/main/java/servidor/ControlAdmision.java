@@ -0,0 +1,61 @@
+package servidor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limita las operaciones de base de datos simultáneas. Las que exceden el límite esperan
+ * hasta un plazo; si vence, el cliente recibe de inmediato un error con sugerencia de reintento.
+ */
+public class ControlAdmision {
+    private final int maxOperaciones;
+    private final long esperaMaxMs;
+    private final Semaphore permisos;
+
+    public ControlAdmision(int maxOperaciones, long esperaMaxMs) {
+        this.maxOperaciones = maxOperaciones;
+        this.esperaMaxMs = esperaMaxMs;
+        this.permisos = new Semaphore(maxOperaciones, true);
+
+        Metricas.registrarMedidor("tcp.admision.operacionesEnCurso", this::getOperacionesEnCurso);
+        Metricas.registrarMedidor("tcp.admision.operacionesEnEspera", permisos::getQueueLength);
+    }
+
+    /**
+     * Espera un permiso hasta el plazo configurado. Devuelve false si no se obtuvo.
+     */
+    public boolean entrar() {
+        if (permisos.tryAcquire()) {
+            return true;
+        }
+        long inicio = System.nanoTime();
+        try {
+            boolean obtenido = permisos.tryAcquire(esperaMaxMs, TimeUnit.MILLISECONDS);
+            if (!obtenido) {
+                Metricas.incrementar("tcp.admision.rechazadas");
+            }
+            return obtenido;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            Metricas.registrarTiempo("tcp.admision.esperaBD", inicio);
+        }
+    }
+
+    public void salir() {
+        permisos.release();
+    }
+
+    public String mensajeOcupado() {
+        return mensajeOcupado(esperaMaxMs);
+    }
+
+    public static String mensajeOcupado(long reintentarEnMs) {
+        return "ERROR: servidor ocupado. Reintente en " + reintentarEnMs + " ms";
+    }
+
+    public int getOperacionesEnCurso() {
+        return maxOperaciones - permisos.availablePermits();
+    }
+}
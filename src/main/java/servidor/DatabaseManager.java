@@ -1,70 +1,317 @@
 package servidor;
 
-import java.sql.*;
+import modelos.Estudiante;
+import modelos.FormatoTablas;
+import modelos.Universidad;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Clase para manejar la conexión y operaciones con PostgreSQL
+ * Clase para manejar las operaciones sobre los datos: arma las respuestas, avisa a los oyentes
+ * de cada cambio y registra métricas. Los datos viven en PostgreSQL o, con -Dbd.almacen=memoria,
+ * en un almacén dentro del proceso persistido con diario e instantáneas.
  */
 public class DatabaseManager {
-    private static final String URL = "jdbc:postgresql://192.168.131.22:5432/universidad_db";
-    private static final String USUARIO = "postgres";
-    private static final String PASSWORD = "postgres";
+    private static final String URL = System.getProperty("bd.url", "jdbc:postgresql://192.168.131.22:5432/universidad_db");
+    private static final String USUARIO = System.getProperty("bd.usuario", "postgres");
+    private static final String PASSWORD = System.getProperty("bd.password", "postgres");
+
+    // Fragmentos de estudiantes, separados por comas; si se indican, reemplazan a bd.url y bd.replicas
+    private static final String FRAGMENTOS = System.getProperty("bd.fragmentos", "");
+    // IDs de estudiante que cada servidor reserva de una vez; igual en todos los que comparten fragmentos
+    private static final int BLOQUE_IDS_FRAGMENTOS = Integer.getInteger("bd.fragmentos.bloqueIds", 100);
+
+    // Réplicas de lectura, separadas por comas (mismo usuario y contraseña que la primaria)
+    private static final String REPLICAS = System.getProperty("bd.replicas", "");
+    private static final long MAX_RETRASO_REPLICA_MS = Long.getLong("bd.replicas.maxRetrasoMs", 1000L);
+    private static final long FIJAR_PRIMARIA_MS = Long.getLong("bd.replicas.fijarPrimariaMs", MAX_RETRASO_REPLICA_MS);
+    private static final long SONDEO_REPLICAS_MS = Long.getLong("bd.replicas.sondeoMs", 1000L);
+
+    private static final String ALMACEN = System.getProperty("bd.almacen", "postgres");
+
+    private static final int TAMANO_POOL = Integer.getInteger("bd.pool.tamano", 10);
+    private static final long ESPERA_POOL_MS = Long.getLong("bd.pool.esperaMs", 5000L);
+
+    // Group commit opcional para inserciones y actualizaciones sueltas: -Dbd.agrupar=true
+    private static final boolean AGRUPAR_ESCRITURAS = Boolean.getBoolean("bd.agrupar");
+    private static final long VENTANA_AGRUPACION_US = Long.getLong("bd.agrupar.ventanaUs", 500L);
+    private static final int MAX_LOTE_AGRUPACION = Integer.getInteger("bd.agrupar.maxLote", 64);
+
+    // Almacén en memoria: directorio del diario, durabilidad (fsync|escritura|asincrona) e instantáneas
+    private static final String DIRECTORIO_MEMORIA = System.getProperty("bd.memoria.directorio", "almacen");
+    private static final String DURABILIDAD_MEMORIA = System.getProperty("bd.memoria.durabilidad", "fsync");
+    private static final long INTERVALO_MEMORIA_MS = Long.getLong("bd.memoria.intervaloMs", 10L);
+    private static final long INSTANTANEA_SEG = Long.getLong("bd.memoria.instantaneaSeg", 300L);
+    private static final long INSTANTANEA_REGISTROS = Long.getLong("bd.memoria.instantaneaRegistros", 100000L);
+
+    // Cantidad de resultados de BUSCAR_* cuando el cliente no la indica
+    private static final int MAX_RESULTADOS_BUSQUEDA = Integer.getInteger("servidor.busqueda.maxResultados", 20);
+
+    // Filas por ID que guardan las cachés de CONSULTAR_UNIVERSIDAD y CONSULTAR_ESTUDIANTE
+    private static final int CACHE_UNIVERSIDADES = Integer.getInteger("servidor.cache.universidades", 1000);
+    private static final int CACHE_ESTUDIANTES = Integer.getInteger("servidor.cache.estudiantes", 10000);
+
+    // Restricciones de estudiantes (universidad existente, email único) comprobadas antes de ir a la base
+    private static final boolean VALIDAR_EN_MEMORIA = Boolean.parseBoolean(
+            System.getProperty("servidor.restricciones", "true"));
+    // Cuánto se recuerda que una universidad no existe (0 no lo recuerda)
+    private static final long AUSENTE_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong("servidor.restricciones.ausenteMs", 1000L));
+    // Si nadie más escribe en el almacén, los mapas residentes cargados bastan para rechazar sin
+    // confirmar en la base; por defecto solo con el almacén en memoria, que es de este proceso
+    private static final boolean UNICO_ESCRITOR = Boolean.parseBoolean(System.getProperty(
+            "servidor.restricciones.unicoEscritor", String.valueOf(ALMACEN.equalsIgnoreCase("memoria"))));
+
+    // FILTRAR_ESTUDIANTES sobre los estudiantes residentes del índice de búsqueda en vez de leer la
+    // tabla completa. Como las cachés, solo ve las escrituras de este proceso: con varios procesos
+    // escribiendo en la misma base, -Dservidor.filtro.residente=false vuelve a leer del almacén.
+    private static final boolean FILTRO_RESIDENTE = Boolean.parseBoolean(
+            System.getProperty("servidor.filtro.residente", "true"));
 
-    private Connection conexion;
+    // Listados idénticos pedidos a la vez se resuelven con una sola lectura del almacén
+    private static final boolean UNIR_LECTURAS = Boolean.parseBoolean(
+            System.getProperty("servidor.unirLecturas", "true"));
+
+    private final AlmacenDatos almacen;
+    private final List<OyenteCambios> oyentes = new CopyOnWriteArrayList<>();
+    private final IndiceBusqueda indiceBusqueda = new IndiceBusqueda();
+    private final NombresUniversidades nombresUniversidades = new NombresUniversidades();
+    private final Object cargaNombres = new Object();
+    private final EmailsEstudiantes emailsEstudiantes = new EmailsEstudiantes();
+    private final LecturasCompartidas lecturasCompartidas = new LecturasCompartidas();
+    private final CacheFilas<Universidad> cacheUniversidades = new CacheFilas<>("universidades", CACHE_UNIVERSIDADES);
+    private final CacheFilas<Estudiante> cacheEstudiantes = new CacheFilas<>("estudiantes", CACHE_ESTUDIANTES);
 
     public DatabaseManager() {
-        conectar();
+        this(crearAlmacen());
+    }
+
+    public DatabaseManager(AlmacenDatos almacen) {
+        this.almacen = almacen;
+        oyentes.add(nombresUniversidades);
+        oyentes.add(emailsEstudiantes);
+        oyentes.add(indiceBusqueda);
+        oyentes.add(this::invalidarCaches);
+        oyentes.add(lecturasCompartidas);
+        Metricas.registrarMedidor("db.nombresUniversidades", nombresUniversidades::tamano);
+        Metricas.registrarMedidor("db.restricciones.emails", emailsEstudiantes::tamano);
+        Metricas.registrarMedidor("db.lecturasEnCurso", lecturasCompartidas::enCurso);
+
+        try {
+            asegurarNombresUniversidades();
+        } catch (SQLException e) {
+            // Se reintenta con la primera lectura de estudiantes
+            Log.warn("⚠ No se pudieron cargar los nombres de universidades: {}", e.getMessage());
+        }
+    }
+
+    private static AlmacenDatos crearAlmacen() {
+        if (ALMACEN.equalsIgnoreCase("memoria")) {
+            try {
+                return new AlmacenMemoria(Paths.get(DIRECTORIO_MEMORIA),
+                        DiarioEscritura.Durabilidad.valueOf(DURABILIDAD_MEMORIA.toUpperCase(Locale.ROOT)),
+                        INTERVALO_MEMORIA_MS, INSTANTANEA_SEG, INSTANTANEA_REGISTROS);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo abrir el almacén en " + DIRECTORIO_MEMORIA, e);
+            }
+        }
+        if (!FRAGMENTOS.isBlank()) {
+            return crearAlmacenFragmentado();
+        }
+        PoolConexiones pool = new PoolConexiones(URL, USUARIO, PASSWORD, TAMANO_POOL, ESPERA_POOL_MS);
+        pool.abrirInicial();
+        AgrupadorEscrituras agrupador = AGRUPAR_ESCRITURAS
+                ? new AgrupadorEscrituras(pool, VENTANA_AGRUPACION_US, MAX_LOTE_AGRUPACION)
+                : null;
+        AlmacenJdbc primaria = new AlmacenJdbc(pool, agrupador);
+
+        List<AlmacenDatos> replicas = new ArrayList<>();
+        for (String url : REPLICAS.split(",")) {
+            if (!url.isBlank()) {
+                PoolConexiones poolReplica = new PoolConexiones(url.trim(), USUARIO, PASSWORD, TAMANO_POOL, ESPERA_POOL_MS);
+                poolReplica.abrirInicial();
+                replicas.add(new AlmacenJdbc(poolReplica, null, "db.replica" + replicas.size() + ".pool"));
+            }
+        }
+        if (replicas.isEmpty()) {
+            return primaria;
+        }
+        return new AlmacenReplicado(primaria, replicas, MAX_RETRASO_REPLICA_MS, FIJAR_PRIMARIA_MS, SONDEO_REPLICAS_MS);
     }
 
     /**
-     * Establece la conexión a la base de datos
+     * Cada estudiante vive en el fragmento (ID mod N); para repartir una base existente,
+     * exportarla e importarla con IDs en el servidor ya fragmentado
      */
-    private void conectar() {
+    private static AlmacenDatos crearAlmacenFragmentado() {
+        List<AlmacenDatos> fragmentos = new ArrayList<>();
+        for (String url : FRAGMENTOS.split(",")) {
+            if (!url.isBlank()) {
+                PoolConexiones pool = new PoolConexiones(url.trim(), USUARIO, PASSWORD, TAMANO_POOL, ESPERA_POOL_MS);
+                pool.abrirInicial();
+                AgrupadorEscrituras agrupador = AGRUPAR_ESCRITURAS
+                        ? new AgrupadorEscrituras(pool, VENTANA_AGRUPACION_US, MAX_LOTE_AGRUPACION)
+                        : null;
+                fragmentos.add(new AlmacenJdbc(pool, agrupador, "db.fragmento" + fragmentos.size() + ".pool"));
+            }
+        }
         try {
-            conexion = DriverManager.getConnection(URL, USUARIO, PASSWORD);
-            System.out.println("✓ Conexión a base de datos establecida");
+            return new AlmacenFragmentado(fragmentos, BLOQUE_IDS_FRAGMENTOS);
         } catch (SQLException e) {
-            System.err.println("✗ Error al conectar con la base de datos: " + e.getMessage());
+            throw new IllegalStateException("No se pudieron abrir los fragmentos: " + e.getMessage(), e);
         }
     }
 
+    // ==================== TRANSACCIONES ====================
+
     /**
-     * Obtiene una conexión a la base de datos
+     * Abre una transacción para el hilo actual; las operaciones siguientes usan su conexión
      */
-    private Connection obtenerConexion() throws SQLException {
-        if (conexion == null || conexion.isClosed()) {
-            conectar();
+    public Transaccion iniciarTransaccion(long duracionMaxMs) throws SQLException {
+        return almacen.iniciarTransaccion(duracionMaxMs);
+    }
+
+    /**
+     * Confirma la transacción del hilo actual y avisa a los oyentes de sus cambios
+     */
+    public String confirmarTransaccion() {
+        Transaccion transaccion = almacen.soltarTransaccion();
+        if (transaccion == null) {
+            return "ERROR: No hay una transacción abierta";
+        }
+        try {
+            List<Transaccion.Cambio> cambios = transaccion.confirmar();
+            for (Transaccion.Cambio cambio : cambios) {
+                notificarCambio(cambio.entidad, cambio.operacion, cambio.id, cambio.fila);
+            }
+            return "✓ Transacción confirmada (" + cambios.size() + " cambio(s))";
+        } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
+            return "ERROR: " + e.getMessage();
         }
-        return conexion;
     }
 
-    // ==================== OPERACIONES UNIVERSIDADES ====================
+    /**
+     * Revierte la transacción del hilo actual
+     */
+    public String revertirTransaccion() {
+        Transaccion transaccion = almacen.soltarTransaccion();
+        if (transaccion == null) {
+            return "ERROR: No hay una transacción abierta";
+        }
+        try {
+            if (transaccion.revertir()) {
+                return "✓ Transacción revertida";
+            }
+            return "✓ La transacción ya había sido revertida por superar su tiempo máximo";
+        } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    public boolean enTransaccion() {
+        return almacen.transaccionActual() != null;
+    }
 
     /**
-     * Inserta una nueva universidad
+     * Registra un oyente que será avisado de cada escritura exitosa
      */
-    public String insertarUniversidad(String nombre, String ciudad, String pais) {
-        String sql = "INSERT INTO universidades (nombre, ciudad, pais) VALUES (?, ?, ?)";
+    public void agregarOyente(OyenteCambios oyente) {
+        oyentes.add(oyente);
+    }
 
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+    private void notificarCambio(String entidad, String operacion, int id, Object fila) {
+        Transaccion transaccion = almacen.transaccionActual();
+        if (transaccion != null) {
+            // Se avisa recién al confirmar; si se revierte, el cambio nunca existió
+            transaccion.registrarCambio(entidad, operacion, id, fila);
+            return;
+        }
+        for (OyenteCambios oyente : oyentes) {
+            oyente.cambioRegistrado(entidad, operacion, id, fila);
+        }
+    }
 
-            pstmt.setString(1, nombre);
-            pstmt.setString(2, ciudad);
-            pstmt.setString(3, pais);
+    /**
+     * Avisa las primeras "cantidad" filas insertadas de un lote con una sola llamada por oyente
+     */
+    private void notificarLote(String entidad, int[] ids, Object[] filas, int cantidad) {
+        if (cantidad == 0) {
+            return;
+        }
+        Transaccion transaccion = almacen.transaccionActual();
+        if (transaccion != null) {
+            for (int i = 0; i < cantidad; i++) {
+                transaccion.registrarCambio(entidad, OyenteCambios.INSERTAR, ids[i], filas[i]);
+            }
+            return;
+        }
+        int[] idsLote = Arrays.copyOf(ids, cantidad);
+        Object[] filasLote = Arrays.copyOf(filas, cantidad);
+        for (OyenteCambios oyente : oyentes) {
+            oyente.loteRegistrado(entidad, OyenteCambios.INSERTAR, idsLote, filasLote);
+        }
+    }
 
-            int filasAfectadas = pstmt.executeUpdate();
+    /**
+     * Cada estudiante en caché lleva el nombre de su universidad, así que renombrar o borrar
+     * una universidad invalida todos los estudiantes
+     */
+    private void invalidarCaches(String entidad, String operacion, int id, Object fila) {
+        if (OyenteCambios.UNIVERSIDAD.equals(entidad)) {
+            cacheUniversidades.invalidar(id);
+            if (!OyenteCambios.INSERTAR.equals(operacion)) {
+                cacheEstudiantes.invalidarTodo();
+            }
+        } else {
+            cacheEstudiantes.invalidar(id);
+        }
+    }
 
-            if (filasAfectadas > 0) {
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int id = rs.getInt(1);
-                    return "✓ Universidad insertada exitosamente con ID: " + id;
-                }
+    // ==================== OPERACIONES UNIVERSIDADES ====================
+
+    /**
+     * Inserta una nueva universidad
+     */
+    public String insertarUniversidad(String nombre, String ciudad, String pais) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("insertarUniversidad");
+        try {
+            int id = almacen.insertarUniversidad(nombre, ciudad, pais);
+            evento.completar(1);
+            notificarCambio(OyenteCambios.UNIVERSIDAD, OyenteCambios.INSERTAR, id,
+                    new Universidad(id, nombre, ciudad, pais));
+            if (id > 0) {
+                return "✓ Universidad insertada exitosamente con ID: " + id;
             }
             return "✓ Universidad insertada exitosamente";
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.insertarUniversidad", inicio);
+            evento.terminar();
         }
     }
 
@@ -72,37 +319,93 @@ public class DatabaseManager {
      * Consulta todas las universidades
      */
     public String consultarUniversidades() {
-        String sql = "SELECT * FROM universidades ORDER BY id";
-        StringBuilder resultado = new StringBuilder();
-
-        try (Statement stmt = obtenerConexion().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            int count = 0;
-            resultado.append("═══════════════════════════════════════════════════════════\n");
-            resultado.append("                    LISTA DE UNIVERSIDADES\n");
-            resultado.append("═══════════════════════════════════════════════════════════\n");
+        try {
+            return leerCompartida("consultarUniversidades",
+                    () -> FormatoTablas.universidades(listarUniversidades()));
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            while (rs.next()) {
-                count++;
-                resultado.append(String.format("ID: %-4d | %-30s | %-20s | %s\n",
-                        rs.getInt("id"),
-                        rs.getString("nombre"),
-                        rs.getString("ciudad"),
-                        rs.getString("pais")));
-            }
+    /**
+     * Consulta todas las universidades como líneas de datos, para clientes que las guardan en caché
+     */
+    public String consultarUniversidadesDatos() {
+        try {
+            return leerCompartida("consultarUniversidadesDatos", () -> {
+                List<Universidad> universidades = listarUniversidades();
+                StringBuilder resultado = new StringBuilder();
+                for (Universidad universidad : universidades) {
+                    resultado.append(universidad.aLineaDatos()).append("\n");
+                }
+                resultado.append("Total: ").append(universidades.size());
+                return resultado.toString();
+            });
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            resultado.append("═══════════════════════════════════════════════════════════\n");
-            resultado.append(String.format("Total: %d universidad(es)\n", count));
+    /**
+     * Consulta una universidad como línea de datos, para refrescar un solo registro de una caché.
+     * Si no existe la respuesta es solo "Total: 0".
+     */
+    public String consultarUniversidadDatos(int id) {
+        try {
+            Universidad universidad = almacen.transaccionActual() != null
+                    ? almacen.obtenerUniversidad(id)
+                    : cacheUniversidades.obtener(id, almacen::obtenerUniversidad);
+            return universidad != null ? universidad.aLineaDatos() + "\nTotal: 1" : "Total: 0";
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            if (count == 0) {
-                return "No hay universidades registradas en la base de datos.";
+    /**
+     * Consulta una universidad por ID
+     */
+    public String consultarUniversidad(int id) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("consultarUniversidad");
+        try {
+            Universidad universidad = almacen.transaccionActual() != null
+                    ? almacen.obtenerUniversidad(id)
+                    : cacheUniversidades.obtener(id, almacen::obtenerUniversidad);
+            evento.completar(universidad != null ? 1 : 0);
+            if (universidad == null) {
+                return "No hay ninguna universidad con ID: " + id;
             }
+            return FormatoTablas.universidades(List.of(universidad));
+        } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
+            return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.consultarUniversidad", inicio);
+            evento.terminar();
+        }
+    }
 
-            return resultado.toString();
+    /**
+     * Obtiene todas las universidades ordenadas por ID. La lista es propia de quien la pide,
+     * aunque la lectura se haya compartido.
+     */
+    public List<Universidad> listarUniversidades() throws SQLException {
+        return new ArrayList<>(leerCompartida("listarUniversidades", this::leerUniversidades));
+    }
 
+    private List<Universidad> leerUniversidades() throws SQLException {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("listarUniversidades");
+        try {
+            List<Universidad> universidades = almacen.listarUniversidades();
+            evento.completar(universidades.size());
+            return universidades;
         } catch (SQLException e) {
-            return "ERROR: " + e.getMessage();
+            Metricas.incrementar("db.errores");
+            throw e;
+        } finally {
+            Metricas.registrarTiempo("db.listarUniversidades", inicio);
+            evento.terminar();
         }
     }
 
@@ -110,25 +413,24 @@ public class DatabaseManager {
      * Actualiza una universidad existente
      */
     public String actualizarUniversidad(int id, String nombre, String ciudad, String pais) {
-        String sql = "UPDATE universidades SET nombre = ?, ciudad = ?, pais = ? WHERE id = ?";
-
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql)) {
-
-            pstmt.setString(1, nombre);
-            pstmt.setString(2, ciudad);
-            pstmt.setString(3, pais);
-            pstmt.setInt(4, id);
-
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("actualizarUniversidad");
+        try {
+            boolean actualizada = almacen.actualizarUniversidad(id, nombre, ciudad, pais);
+            evento.completar(actualizada ? 1 : 0);
+            if (actualizada) {
+                notificarCambio(OyenteCambios.UNIVERSIDAD, OyenteCambios.ACTUALIZAR, id,
+                        new Universidad(id, nombre, ciudad, pais));
                 return "✓ Universidad actualizada exitosamente";
             } else {
                 return "⚠ No se encontró ninguna universidad con ID: " + id;
             }
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.actualizarUniversidad", inicio);
+            evento.terminar();
         }
     }
 
@@ -136,21 +438,23 @@ public class DatabaseManager {
      * Elimina una universidad
      */
     public String eliminarUniversidad(int id) {
-        String sql = "DELETE FROM universidades WHERE id = ?";
-
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql)) {
-
-            pstmt.setInt(1, id);
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("eliminarUniversidad");
+        try {
+            boolean eliminada = almacen.eliminarUniversidad(id);
+            evento.completar(eliminada ? 1 : 0);
+            if (eliminada) {
+                notificarCambio(OyenteCambios.UNIVERSIDAD, OyenteCambios.ELIMINAR, id, null);
                 return "✓ Universidad eliminada exitosamente";
             } else {
                 return "⚠ No se encontró ninguna universidad con ID: " + id;
             }
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.eliminarUniversidad", inicio);
+            evento.terminar();
         }
     }
 
@@ -160,29 +464,24 @@ public class DatabaseManager {
      * Inserta un nuevo estudiante
      */
     public String insertarEstudiante(String nombre, String apellido, String email, int edad, int universidadId) {
-        String sql = "INSERT INTO estudiantes (nombre, apellido, email, edad, universidad_id) VALUES (?, ?, ?, ?, ?)";
-
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-
-            pstmt.setString(1, nombre);
-            pstmt.setString(2, apellido);
-            pstmt.setString(3, email);
-            pstmt.setInt(4, edad);
-            pstmt.setInt(5, universidadId);
-
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int id = rs.getInt(1);
-                    return "✓ Estudiante insertado exitosamente con ID: " + id;
-                }
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("insertarEstudiante");
+        try {
+            validarEstudiante(0, email, universidadId, null);
+            int id = almacen.insertarEstudiante(nombre, apellido, email, edad, universidadId);
+            evento.completar(1);
+            notificarCambio(OyenteCambios.ESTUDIANTE, OyenteCambios.INSERTAR, id,
+                    new Estudiante(id, nombre, apellido, email, edad, universidadId));
+            if (id > 0) {
+                return "✓ Estudiante insertado exitosamente con ID: " + id;
             }
             return "✓ Estudiante insertado exitosamente";
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.insertarEstudiante", inicio);
+            evento.terminar();
         }
     }
 
@@ -190,47 +489,123 @@ public class DatabaseManager {
      * Consulta todos los estudiantes con su universidad
      */
     public String consultarEstudiantes() {
-        String sql = "SELECT e.id, e.nombre, e.apellido, e.email, e.edad, e.universidad_id, u.nombre as universidad_nombre " +
-                "FROM estudiantes e " +
-                "LEFT JOIN universidades u ON e.universidad_id = u.id " +
-                "ORDER BY e.id";
-        StringBuilder resultado = new StringBuilder();
-
-        try (Statement stmt = obtenerConexion().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            int count = 0;
-            resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
-            resultado.append("                           LISTA DE ESTUDIANTES\n");
-            resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
-
-            while (rs.next()) {
-                count++;
-                String universidad = rs.getString("universidad_nombre");
-                if (universidad == null) {
-                    universidad = "Sin asignar";
-                }
+        try {
+            return leerCompartida("consultarEstudiantes",
+                    () -> FormatoTablas.estudiantes(listarEstudiantes()));
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-                resultado.append(String.format("ID: %-4d | %-15s %-15s | %-25s | Edad: %-3d | %s\n",
-                        rs.getInt("id"),
-                        rs.getString("nombre"),
-                        rs.getString("apellido"),
-                        rs.getString("email"),
-                        rs.getInt("edad"),
-                        universidad));
+    /**
+     * Consulta un estudiante por ID. Dentro de una transacción se lee del almacén, que ve
+     * los cambios todavía sin confirmar; la caché solo tiene datos confirmados.
+     */
+    public String consultarEstudiante(int id) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("consultarEstudiante");
+        try {
+            Estudiante estudiante = almacen.transaccionActual() != null
+                    ? obtenerEstudianteConUniversidad(id)
+                    : cacheEstudiantes.obtener(id, this::obtenerEstudianteConUniversidad);
+            evento.completar(estudiante != null ? 1 : 0);
+            if (estudiante == null) {
+                return "No hay ningún estudiante con ID: " + id;
             }
+            return FormatoTablas.estudiantes(List.of(estudiante));
+        } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
+            return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.consultarEstudiante", inicio);
+            evento.terminar();
+        }
+    }
+
+    /**
+     * Consulta todos los estudiantes como líneas de datos, para clientes que los guardan en caché
+     */
+    public String consultarEstudiantesDatos() {
+        try {
+            return leerCompartida("consultarEstudiantesDatos", () -> {
+                List<Estudiante> estudiantes = listarEstudiantes();
+                StringBuilder resultado = new StringBuilder();
+                for (Estudiante estudiante : estudiantes) {
+                    resultado.append(estudiante.aLineaDatos()).append("\n");
+                }
+                resultado.append("Total: ").append(estudiantes.size());
+                return resultado.toString();
+            });
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            resultado.append("═══════════════════════════════════════════════════════════════════════════════\n");
-            resultado.append(String.format("Total: %d estudiante(s)\n", count+1));
+    /**
+     * Consulta un estudiante como línea de datos, para refrescar un solo registro de una caché.
+     * Si no existe la respuesta es solo "Total: 0".
+     */
+    public String consultarEstudianteDatos(int id) {
+        try {
+            Estudiante estudiante = almacen.transaccionActual() != null
+                    ? obtenerEstudianteConUniversidad(id)
+                    : cacheEstudiantes.obtener(id, this::obtenerEstudianteConUniversidad);
+            return estudiante != null ? estudiante.aLineaDatos() + "\nTotal: 1" : "Total: 0";
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            if (count == 0) {
-                return "No hay estudiantes registrados en la base de datos.";
+    /**
+     * Filtra y ordena los estudiantes en el servidor (ver FiltroEstudiantes para la gramática)
+     */
+    public String filtrarEstudiantes(String condiciones, String orden, String limite) {
+        FiltroEstudiantes filtro;
+        try {
+            filtro = FiltroEstudiantes.interpretar(condiciones, orden, limite);
+        } catch (IllegalArgumentException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        try {
+            List<Estudiante> encontrados;
+            if (FILTRO_RESIDENTE && almacen.transaccionActual() == null) {
+                asegurarIndiceBusqueda();
+                encontrados = indiceBusqueda.filtrarEstudiantes(filtro);
+            } else {
+                // Dentro de una transacción hay que ver sus cambios sin confirmar
+                encontrados = filtro.aplicar(listarEstudiantes());
+            }
+            if (encontrados.isEmpty()) {
+                return "No hay estudiantes que cumplan el filtro.";
             }
+            return FormatoTablas.estudiantes(encontrados);
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
 
-            return resultado.toString();
+    /**
+     * Obtiene todos los estudiantes ordenados por ID, con el nombre de su universidad. La lista
+     * es propia de quien la pide, aunque la lectura se haya compartido.
+     */
+    public List<Estudiante> listarEstudiantes() throws SQLException {
+        return new ArrayList<>(leerCompartida("listarEstudiantes", this::leerEstudiantes));
+    }
 
+    private List<Estudiante> leerEstudiantes() throws SQLException {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("listarEstudiantes");
+        try {
+            List<Estudiante> estudiantes = almacen.listarEstudiantes();
+            completarUniversidades(estudiantes);
+            evento.completar(estudiantes.size());
+            return estudiantes;
         } catch (SQLException e) {
-            return "ERROR: " + e.getMessage();
+            Metricas.incrementar("db.errores");
+            throw e;
+        } finally {
+            Metricas.registrarTiempo("db.listarEstudiantes", inicio);
+            evento.terminar();
         }
     }
 
@@ -238,27 +613,25 @@ public class DatabaseManager {
      * Actualiza un estudiante existente
      */
     public String actualizarEstudiante(int id, String nombre, String apellido, String email, int edad, int universidadId) {
-        String sql = "UPDATE estudiantes SET nombre = ?, apellido = ?, email = ?, edad = ?, universidad_id = ? WHERE id = ?";
-
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql)) {
-
-            pstmt.setString(1, nombre);
-            pstmt.setString(2, apellido);
-            pstmt.setString(3, email);
-            pstmt.setInt(4, edad);
-            pstmt.setInt(5, universidadId);
-            pstmt.setInt(6, id);
-
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("actualizarEstudiante");
+        try {
+            validarEstudiante(id, email, universidadId, null);
+            boolean actualizado = almacen.actualizarEstudiante(id, nombre, apellido, email, edad, universidadId);
+            evento.completar(actualizado ? 1 : 0);
+            if (actualizado) {
+                notificarCambio(OyenteCambios.ESTUDIANTE, OyenteCambios.ACTUALIZAR, id,
+                        new Estudiante(id, nombre, apellido, email, edad, universidadId));
                 return "✓ Estudiante actualizado exitosamente";
             } else {
                 return "⚠ No se encontró ningún estudiante con ID: " + id;
             }
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.actualizarEstudiante", inicio);
+            evento.terminar();
         }
     }
 
@@ -266,35 +639,469 @@ public class DatabaseManager {
      * Elimina un estudiante
      */
     public String eliminarEstudiante(int id) {
-        String sql = "DELETE FROM estudiantes WHERE id = ?";
-
-        try (PreparedStatement pstmt = obtenerConexion().prepareStatement(sql)) {
-
-            pstmt.setInt(1, id);
-            int filasAfectadas = pstmt.executeUpdate();
-
-            if (filasAfectadas > 0) {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("eliminarEstudiante");
+        try {
+            boolean eliminado = almacen.eliminarEstudiante(id);
+            evento.completar(eliminado ? 1 : 0);
+            if (eliminado) {
+                notificarCambio(OyenteCambios.ESTUDIANTE, OyenteCambios.ELIMINAR, id, null);
                 return "✓ Estudiante eliminado exitosamente";
             } else {
                 return "⚠ No se encontró ningún estudiante con ID: " + id;
             }
-
         } catch (SQLException e) {
+            Metricas.incrementar("db.errores");
             return "ERROR: " + e.getMessage();
+        } finally {
+            Metricas.registrarTiempo("db.eliminarEstudiante", inicio);
+            evento.terminar();
         }
     }
 
+    private Estudiante obtenerEstudianteConUniversidad(int id) throws SQLException {
+        Estudiante estudiante = almacen.obtenerEstudiante(id);
+        if (estudiante != null) {
+            completarUniversidades(List.of(estudiante));
+        }
+        return estudiante;
+    }
+
+    // ==================== NOMBRES DE UNIVERSIDADES ====================
+
     /**
-     * Cierra la conexión a la base de datos
+     * Completa el nombre de la universidad de cada estudiante desde el mapa residente.
+     * Un ID que falta (por ejemplo, una inserción cuyo ID no se conoció) se lee del almacén
+     * una vez y queda en el mapa; dentro de una transacción no se guarda, porque puede revertirse.
      */
-    public void cerrarConexion() {
+    private void completarUniversidades(List<Estudiante> estudiantes) throws SQLException {
+        asegurarNombresUniversidades();
+        boolean enTransaccion = almacen.transaccionActual() != null;
+        for (Estudiante estudiante : estudiantes) {
+            int universidadId = estudiante.getUniversidadId();
+            if (universidadId <= 0) {
+                continue;
+            }
+            String nombre = nombresUniversidades.nombre(universidadId);
+            if (nombre == null) {
+                Metricas.incrementar("db.nombresUniversidades.fallos");
+                Universidad universidad = almacen.obtenerUniversidad(universidadId);
+                if (universidad != null) {
+                    nombre = universidad.getNombre();
+                    if (!enTransaccion) {
+                        nombresUniversidades.recordar(universidadId, nombre);
+                    }
+                }
+            }
+            estudiante.setUniversidadNombre(nombre);
+        }
+    }
+
+    private void asegurarNombresUniversidades() throws SQLException {
+        if (nombresUniversidades.isCargado()) {
+            return;
+        }
+        synchronized (cargaNombres) {
+            if (!nombresUniversidades.isCargado()) {
+                nombresUniversidades.iniciarCarga();
+                try {
+                    nombresUniversidades.cargar(almacen.listarUniversidades());
+                } finally {
+                    nombresUniversidades.cancelarCarga();
+                }
+            }
+        }
+    }
+
+    // ==================== LECTURAS COMPARTIDAS ====================
+
+    /**
+     * Une la lectura con otra idéntica en curso. No se comparte dentro de una transacción, que ve
+     * sus propios cambios sin confirmar, ni cuando la sesión acaba de escribir y lee de la
+     * primaria: la lectura en curso de otro hilo puede venir de una réplica atrasada.
+     */
+    private <T> T leerCompartida(String clave, LecturasCompartidas.Lectura<T> lectura) throws SQLException {
+        if (!UNIR_LECTURAS || almacen.transaccionActual() != null || almacen.lecturasFijadasAPrimaria()) {
+            return lectura.leer();
+        }
+        return lecturasCompartidas.leer(clave, lectura);
+    }
+
+    // ==================== RESTRICCIONES ====================
+
+    /**
+     * Rechaza sin ir a la base una escritura que la base rechazaría: universidad inexistente o
+     * email de otro estudiante. Cada sospecha se confirma leyendo la fila por clave antes de
+     * rechazar, porque otro servidor sobre la misma base pudo cambiarla; lo que no se descarta
+     * aquí lo decide la base. Con un único escritor los mapas residentes bastan, y una
+     * universidad inexistente se recuerda un rato para no volver a leerla.
+     *
+     * @param id el estudiante que se escribe, o 0 si el ID lo asigna la base
+     * @param universidadesVistas existencia de universidades ya comprobada en el mismo lote, o null
+     */
+    private void validarEstudiante(int id, String email, int universidadId,
+                                   Map<Integer, Boolean> universidadesVistas) throws SQLException {
+        if (!VALIDAR_EN_MEMORIA) {
+            return;
+        }
+        long inicio = System.nanoTime();
         try {
-            if (conexion != null && !conexion.isClosed()) {
-                conexion.close();
-                System.out.println("✓ Conexión a base de datos cerrada");
+            if (!existeUniversidad(universidadId, universidadesVistas)) {
+                Metricas.incrementar("db.restricciones.universidad");
+                throw new SQLException("No existe la universidad con ID " + universidadId, "23503");
+            }
+            if (emailDeOtroEstudiante(id, email)) {
+                Metricas.incrementar("db.restricciones.email");
+                throw new SQLException("Ya existe un estudiante con el email " + email, "23505");
+            }
+        } finally {
+            Metricas.registrarTiempo("db.restricciones", inicio);
+        }
+    }
+
+    /**
+     * Dentro de una transacción no se usan ni se guardan las ausencias recordadas: la transacción
+     * puede haber insertado la universidad, y sus avisos llegan recién al confirmar
+     */
+    private boolean existeUniversidad(int universidadId, Map<Integer, Boolean> universidadesVistas)
+            throws SQLException {
+        asegurarNombresUniversidades();
+        if (nombresUniversidades.nombre(universidadId) != null) {
+            return true;
+        }
+        boolean enTransaccion = almacen.transaccionActual() != null;
+        if (!enTransaccion) {
+            if (UNICO_ESCRITOR && nombresUniversidades.isCargado()) {
+                return false;
+            }
+            if (nombresUniversidades.ausente(universidadId)) {
+                Metricas.incrementar("db.restricciones.ausenteRecordado");
+                return false;
+            }
+        }
+        if (universidadesVistas != null && universidadesVistas.containsKey(universidadId)) {
+            return universidadesVistas.get(universidadId);
+        }
+        long version = nombresUniversidades.version();
+        Universidad universidad = almacen.obtenerUniversidad(universidadId);
+        if (!enTransaccion) {
+            if (universidad != null) {
+                nombresUniversidades.recordar(universidadId, universidad.getNombre());
+            } else if (AUSENTE_NANOS > 0) {
+                nombresUniversidades.recordarAusente(universidadId, AUSENTE_NANOS, version);
             }
+        }
+        if (universidadesVistas != null) {
+            universidadesVistas.put(universidadId, universidad != null);
+        }
+        return universidad != null;
+    }
+
+    private boolean emailDeOtroEstudiante(int id, String email) throws SQLException {
+        if (!asegurarEmailsEstudiantes()) {
+            return false;
+        }
+        Integer otro = emailsEstudiantes.idConEmail(email);
+        if (otro == null || otro == id) {
+            return false;
+        }
+        if (UNICO_ESCRITOR && almacen.transaccionActual() == null) {
+            return true;
+        }
+        Estudiante estudiante = almacen.transaccionActual() != null
+                ? almacen.obtenerEstudiante(otro)
+                : cacheEstudiantes.obtener(otro, this::obtenerEstudianteConUniversidad);
+        if (estudiante != null && email.equals(estudiante.getEmail())) {
+            return true;
+        }
+        emailsEstudiantes.olvidar(email, otro);
+        return false;
+    }
+
+    /**
+     * Carga el índice de emails con la primera escritura; si no se puede, la base decide sola
+     */
+    private boolean asegurarEmailsEstudiantes() {
+        if (emailsEstudiantes.isCargado()) {
+            return true;
+        }
+        synchronized (emailsEstudiantes) {
+            if (!emailsEstudiantes.isCargado()) {
+                long inicio = System.nanoTime();
+                try {
+                    emailsEstudiantes.iniciarCarga();
+                    emailsEstudiantes.cargar(almacen.listarEstudiantes());
+                    Metricas.registrarTiempo("db.restricciones.carga", inicio);
+                } catch (SQLException e) {
+                    Log.warn("⚠ No se pudo cargar el índice de emails: {}", e.getMessage());
+                    return false;
+                } finally {
+                    // Si la lectura falló, los avisos no deben seguir acumulando IDs
+                    emailsEstudiantes.cancelarCarga();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deja fuera del lote las filas que se rechazarían, para que una sola no haga fallar el lote
+     * entero y lo obligue a reintentarse fila por fila. También descarta emails repetidos dentro
+     * del mismo lote.
+     */
+    private List<Estudiante> filtrarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) {
+        if (!VALIDAR_EN_MEMORIA) {
+            return estudiantes;
+        }
+        List<Estudiante> validos = new ArrayList<>(estudiantes.size());
+        Map<Integer, Boolean> universidadesVistas = new HashMap<>();
+        Set<String> emailsDelLote = new HashSet<>();
+        for (Estudiante estudiante : estudiantes) {
+            try {
+                if (estudiante.getEmail() != null && !emailsDelLote.add(estudiante.getEmail())) {
+                    Metricas.incrementar("db.restricciones.email");
+                    Metricas.incrementar("db.restricciones.rechazadas");
+                    continue;
+                }
+                validarEstudiante(conId ? estudiante.getId() : 0, estudiante.getEmail(),
+                        estudiante.getUniversidadId(), universidadesVistas);
+                validos.add(estudiante);
+            } catch (SQLException e) {
+                // Cuenta como fila no insertada, igual que si la hubiera rechazado la base
+                Metricas.incrementar("db.restricciones.rechazadas");
+            }
+        }
+        return validos;
+    }
+
+    // ==================== BÚSQUEDA POR NOMBRE ====================
+
+    /**
+     * Busca universidades por nombre o ciudad, sin distinguir tildes ni mayúsculas
+     */
+    public String buscarUniversidades(String texto, int maximo) {
+        try {
+            asegurarIndiceBusqueda();
         } catch (SQLException e) {
-            System.err.println("✗ Error al cerrar conexión: " + e.getMessage());
+            return "ERROR: " + e.getMessage();
+        }
+        List<Universidad> encontradas = indiceBusqueda.buscarUniversidades(texto, limiteBusqueda(maximo));
+        if (encontradas.isEmpty()) {
+            return "No hay universidades que coincidan con \"" + texto + "\".";
+        }
+        return FormatoTablas.universidades(encontradas);
+    }
+
+    /**
+     * Busca estudiantes por nombre o apellido, aunque sea parcial o con errores de tipeo
+     */
+    public String buscarEstudiantes(String texto, int maximo) {
+        try {
+            asegurarIndiceBusqueda();
+        } catch (SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        List<Estudiante> encontrados = indiceBusqueda.buscarEstudiantes(texto, limiteBusqueda(maximo));
+        if (encontrados.isEmpty()) {
+            return "No hay estudiantes que coincidan con \"" + texto + "\".";
+        }
+        return FormatoTablas.estudiantes(encontrados);
+    }
+
+    private static int limiteBusqueda(int maximo) {
+        return maximo > 0 ? maximo : MAX_RESULTADOS_BUSQUEDA;
+    }
+
+    /**
+     * El índice se llena con la primera búsqueda; desde entonces lo mantienen los avisos de cambios
+     */
+    private void asegurarIndiceBusqueda() throws SQLException {
+        if (indiceBusqueda.isCargado()) {
+            return;
+        }
+        synchronized (indiceBusqueda) {
+            if (!indiceBusqueda.isCargado()) {
+                long inicio = System.nanoTime();
+                indiceBusqueda.iniciarCarga();
+                indiceBusqueda.cargar(listarUniversidades(), listarEstudiantes());
+                Metricas.registrarTiempo("busqueda.carga", inicio);
+            }
+        }
+    }
+
+    // ==================== OPERACIONES MASIVAS ====================
+
+    /**
+     * Inserta un lote de universidades en una transacción. Si conId es true se conservan
+     * los IDs recibidos. Devuelve cuántas se insertaron.
+     */
+    public int insertarLoteUniversidades(List<Universidad> universidades, boolean conId) throws SQLException {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("insertarLoteUniversidades");
+        try {
+            int[] ids = almacen.insertarLoteUniversidades(universidades, conId);
+            int[] idsInsertados = new int[ids.length];
+            Object[] filas = new Object[ids.length];
+            int insertadas = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= 0) {
+                    Universidad u = universidades.get(i);
+                    idsInsertados[insertadas] = ids[i];
+                    filas[insertadas] = new Universidad(ids[i], u.getNombre(), u.getCiudad(), u.getPais());
+                    insertadas++;
+                }
+            }
+            notificarLote(OyenteCambios.UNIVERSIDAD, idsInsertados, filas, insertadas);
+            evento.completar(insertadas);
+            return insertadas;
+        } finally {
+            Metricas.registrarTiempo("db.insertarLoteUniversidades", inicio);
+            evento.terminar();
+        }
+    }
+
+    /**
+     * Inserta un lote de estudiantes en una transacción. Si conId es true se conservan
+     * los IDs recibidos. Devuelve cuántos se insertaron.
+     */
+    public int insertarLoteEstudiantes(List<Estudiante> estudiantes, boolean conId) throws SQLException {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("insertarLoteEstudiantes");
+        try {
+            List<Estudiante> validos = filtrarLoteEstudiantes(estudiantes, conId);
+            int[] ids = validos.isEmpty() ? new int[0] : almacen.insertarLoteEstudiantes(validos, conId);
+            int[] idsInsertados = new int[ids.length];
+            Object[] filas = new Object[ids.length];
+            int insertados = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= 0) {
+                    Estudiante e = validos.get(i);
+                    idsInsertados[insertados] = ids[i];
+                    filas[insertados] = new Estudiante(ids[i], e.getNombre(), e.getApellido(), e.getEmail(),
+                            e.getEdad(), e.getUniversidadId());
+                    insertados++;
+                }
+            }
+            notificarLote(OyenteCambios.ESTUDIANTE, idsInsertados, filas, insertados);
+            evento.completar(insertados);
+            return insertados;
+        } finally {
+            Metricas.registrarTiempo("db.insertarLoteEstudiantes", inicio);
+            evento.terminar();
+        }
+    }
+
+    /**
+     * Tras insertar IDs explícitos, mueve la secuencia de la tabla después del ID más alto
+     */
+    public void ajustarSecuencia(String tabla) throws SQLException {
+        almacen.ajustarSecuencia(tabla);
+    }
+
+    /**
+     * Recorre una tabla completa en orden de ID y entrega cada fila al escritor.
+     * Devuelve la cantidad de filas exportadas.
+     */
+    public long exportarTabla(String tabla, TransferenciaCsv.EscritorCsv escritor) throws SQLException, IOException {
+        long inicio = System.nanoTime();
+        EventosJfr.Consulta evento = EventosJfr.Consulta.iniciar("exportarTabla");
+        try {
+            long exportadas = almacen.exportarTabla(tabla, escritor);
+            evento.completar(exportadas);
+            return exportadas;
+        } finally {
+            Metricas.registrarTiempo("db.exportarTabla", inicio);
+            evento.terminar();
+        }
+    }
+
+    /**
+     * Cierra el almacén (conexiones del pool o diario del almacén en memoria)
+     */
+    public void cerrarConexion() {
+        almacen.cerrar();
+    }
+
+    // ==================== CALENTAMIENTO ====================
+
+    /**
+     * Abre las conexiones del almacén, prepara sus sentencias y carga los nombres de universidades
+     */
+    public void precalentar() throws SQLException {
+        almacen.precalentar();
+        asegurarNombresUniversidades();
+    }
+
+    /**
+     * Mientras se pasan comandos sintéticos, las consultas puntuales no cuentan para la admisión
+     * de las cachés de filas; se llama antes de abrir el puerto
+     */
+    public void comandosSinteticos(boolean activos) {
+        cacheUniversidades.registrarAccesos(!activos);
+        cacheEstudiantes.registrarAccesos(!activos);
+    }
+
+    /**
+     * Guarda los IDs que están en las cachés de filas para recargarlos en el próximo arranque.
+     * Solo se guardan IDs: al recargar, las filas se leen del almacén y no pueden quedar viejas.
+     */
+    public void guardarClavesCache(Path archivo) throws IOException {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            escribirClaves(salida, cacheUniversidades.claves());
+            escribirClaves(salida, cacheEstudiantes.claves());
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Vuelve a llenar las cachés de filas con los IDs guardados; devuelve cuántas filas cargó
+     */
+    public int cargarClavesCache(Path archivo) throws IOException, SQLException {
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        int[] universidades;
+        int[] estudiantes;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            universidades = leerClaves(entrada, cacheUniversidades.capacidad());
+            estudiantes = leerClaves(entrada, cacheEstudiantes.capacidad());
+        }
+        // Del menos valioso al más valioso, para que los más valiosos queden como los más recientes
+        int cargadas = 0;
+        for (int i = universidades.length - 1; i >= 0; i--) {
+            if (cacheUniversidades.obtener(universidades[i], almacen::obtenerUniversidad) != null) {
+                cargadas++;
+            }
+        }
+        for (int i = estudiantes.length - 1; i >= 0; i--) {
+            if (cacheEstudiantes.obtener(estudiantes[i], this::obtenerEstudianteConUniversidad) != null) {
+                cargadas++;
+            }
+        }
+        return cargadas;
+    }
+
+    private static void escribirClaves(DataOutputStream salida, int[] claves) throws IOException {
+        salida.writeInt(claves.length);
+        for (int clave : claves) {
+            salida.writeInt(clave);
+        }
+    }
+
+    /**
+     * Una caché nunca guarda más claves que su capacidad: otro largo es un archivo dañado y no se
+     * reserva memoria para él
+     */
+    private static int[] leerClaves(DataInputStream entrada, int maximo) throws IOException {
+        int cantidad = entrada.readInt();
+        if (cantidad < 0 || cantidad > maximo) {
+            throw new IOException("Archivo de claves inválido: " + cantidad + " clave(s), máximo " + maximo);
+        }
+        int[] claves = new int[cantidad];
+        for (int i = 0; i < claves.length; i++) {
+            claves[i] = entrada.readInt();
         }
+        return claves;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,354 @@
+package servidor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Diario de escritura anticipada (write-ahead log) del almacén en memoria.
+ *
+ * Cada registro es [largo int][crc32 int][lsn long][cuerpo]; el CRC cubre lsn y cuerpo, así
+ * que un registro cortado por una caída se detecta y se descarta al recuperar. El diario se
+ * divide en segmentos "diario-<primer lsn>.log" para poder borrar los ya cubiertos por una instantánea.
+ *
+ * Los registros se acumulan en memoria y un único hilo los escribe y sincroniza con el disco:
+ * todos los que llegaron durante un fsync se confirman juntos en el siguiente (group commit).
+ */
+public class DiarioEscritura implements AutoCloseable {
+
+    /**
+     * Cuándo se considera confirmada una escritura
+     */
+    public enum Durabilidad {
+        /** Se espera el fsync del registro; sobrevive a una caída del equipo */
+        FSYNC,
+        /** Se espera que el registro llegue al sistema operativo; sobrevive a una caída del proceso */
+        ESCRITURA,
+        /** No se espera; se escribe y sincroniza cada cierto intervalo */
+        ASINCRONA
+    }
+
+    /**
+     * Registro leído al recuperar
+     */
+    public interface Lector {
+        void aplicar(long lsn, ByteBuffer cuerpo) throws IOException;
+    }
+
+    private static final String PREFIJO = "diario-";
+    private static final String SUFIJO = ".log";
+    private static final int ENCABEZADO = 4 + 4 + 8;
+    private static final int LARGO_MAXIMO = 16 * 1024 * 1024;
+
+    private final Path directorio;
+    private final Durabilidad durabilidad;
+    private final long intervaloMs;
+    private final Thread hilo;
+
+    // Protegidos por this
+    private ByteBuffer pendiente = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer enEscritura = ByteBuffer.allocate(64 * 1024);
+    private FileChannel canal;
+    private long ultimoLsn;
+    private long lsnConfirmado;
+    private boolean escribiendo;
+    private IOException falla;
+    private volatile boolean ejecutando = true;
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Abre un segmento nuevo a continuación de ultimoLsn (el último recuperado)
+     */
+    public DiarioEscritura(Path directorio, Durabilidad durabilidad, long intervaloMs, long ultimoLsn)
+            throws IOException {
+        this.directorio = directorio;
+        this.durabilidad = durabilidad;
+        this.intervaloMs = intervaloMs;
+        this.ultimoLsn = ultimoLsn;
+        this.lsnConfirmado = ultimoLsn;
+        this.canal = abrirSegmento(ultimoLsn + 1);
+
+        this.hilo = new Thread(this::escribirPendientes, "diario-escritor");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Agrega un registro y devuelve su LSN. Quien lo llama debe serializar los agregados en el
+     * mismo orden en que aplica los cambios; la espera de durabilidad se hace después con esperar().
+     */
+    public synchronized long agregar(byte[] cuerpo) throws IOException {
+        if (falla != null) {
+            throw new IOException("El diario quedó inutilizable: " + falla.getMessage(), falla);
+        }
+        long lsn = ++ultimoLsn;
+        int largo = 8 + cuerpo.length;
+        if (pendiente.remaining() < 8 + largo) {
+            pendiente = agrandar(pendiente, 8 + largo);
+        }
+
+        crc.reset();
+        ByteBuffer lsnBytes = ByteBuffer.allocate(8).putLong(0, lsn);
+        crc.update(lsnBytes);
+        crc.update(cuerpo);
+
+        pendiente.putInt(largo).putInt((int) crc.getValue()).putLong(lsn).put(cuerpo);
+        notifyAll();
+        return lsn;
+    }
+
+    /**
+     * Bloquea hasta que el registro cumpla con la durabilidad configurada
+     */
+    public synchronized void esperar(long lsn) throws IOException {
+        if (durabilidad == Durabilidad.ASINCRONA) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        try {
+            while (lsnConfirmado < lsn && falla == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando el diario");
+        } finally {
+            Metricas.registrarTiempo("almacen.diario.espera", inicio);
+        }
+        if (lsnConfirmado < lsn) {
+            throw new IOException("No se pudo escribir el diario: " + falla.getMessage(), falla);
+        }
+    }
+
+    public synchronized long getUltimoLsn() {
+        return ultimoLsn;
+    }
+
+    /**
+     * Cierra el segmento actual y empieza otro. Se llama con los agregados detenidos
+     * (el almacén tiene tomado su cerrojo de escritura), así que el corte cae entre registros.
+     * Devuelve el primer LSN del segmento nuevo.
+     */
+    public synchronized long rotar() throws IOException {
+        try {
+            while ((pendiente.position() > 0 || escribiendo) && falla == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido rotando el diario");
+        }
+        if (falla != null) {
+            throw new IOException("El diario quedó inutilizable: " + falla.getMessage(), falla);
+        }
+        canal.force(true);
+        canal.close();
+        canal = abrirSegmento(ultimoLsn + 1);
+        return ultimoLsn + 1;
+    }
+
+    /**
+     * Borra los segmentos que empiezan antes de desdeLsn (ya cubiertos por una instantánea)
+     */
+    public void borrarSegmentosAnteriores(long desdeLsn) throws IOException {
+        for (Path segmento : listarSegmentos(directorio)) {
+            if (primerLsn(segmento) < desdeLsn) {
+                Files.deleteIfExists(segmento);
+            }
+        }
+    }
+
+    private FileChannel abrirSegmento(long primerLsn) throws IOException {
+        Path archivo = directorio.resolve(String.format("%s%020d%s", PREFIJO, primerLsn, SUFIJO));
+        return FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static ByteBuffer agrandar(ByteBuffer actual, int necesario) {
+        int capacidad = actual.capacity();
+        while (capacidad - actual.position() < necesario) {
+            capacidad *= 2;
+        }
+        ByteBuffer nuevo = ByteBuffer.allocate(capacidad);
+        actual.flip();
+        nuevo.put(actual);
+        return nuevo;
+    }
+
+    // ==================== HILO ESCRITOR ====================
+
+    private void escribirPendientes() {
+        while (true) {
+            ByteBuffer lote;
+            long hastaLsn;
+            FileChannel destino;
+            if (durabilidad == Durabilidad.ASINCRONA && ejecutando) {
+                // Junta lo que llegue durante el intervalo en una sola escritura
+                try {
+                    Thread.sleep(intervaloMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            synchronized (this) {
+                try {
+                    while (pendiente.position() == 0 && ejecutando) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pendiente.position() == 0) {
+                    if (!ejecutando) {
+                        return;
+                    }
+                    continue;
+                }
+                lote = pendiente;
+                pendiente = enEscritura;
+                enEscritura = lote;
+                hastaLsn = ultimoLsn;
+                destino = canal;
+                escribiendo = true;
+            }
+
+            IOException error = null;
+            long inicio = System.nanoTime();
+            try {
+                lote.flip();
+                while (lote.hasRemaining()) {
+                    destino.write(lote);
+                }
+                if (durabilidad != Durabilidad.ESCRITURA) {
+                    destino.force(false);
+                    Metricas.incrementar("almacen.diario.fsyncs");
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                lote.clear();
+                Metricas.registrarTiempo("almacen.diario.escritura", inicio);
+            }
+
+            synchronized (this) {
+                escribiendo = false;
+                if (error != null) {
+                    falla = error;
+                    Log.error("✗ Error al escribir el diario: {}", error.getMessage());
+                } else {
+                    lsnConfirmado = hastaLsn;
+                }
+                notifyAll();
+                if (falla != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Sin interrumpir: un FileChannel interrumpido en medio de write() queda cerrado
+        synchronized (this) {
+            ejecutando = false;
+            notifyAll();
+        }
+        try {
+            hilo.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            canal.force(true);
+            canal.close();
+        }
+    }
+
+    // ==================== RECUPERACIÓN ====================
+
+    /**
+     * Recorre los segmentos en orden y entrega los registros posteriores a desdeLsn.
+     * Se detiene en el primer registro cortado o con CRC inválido y trunca el segmento ahí,
+     * para que lo que se escriba después no quede detrás de basura. Devuelve el último LSN leído.
+     */
+    public static long recuperar(Path directorio, long desdeLsn, Lector lector) throws IOException {
+        long[] ultimo = {desdeLsn};
+        List<Path> segmentos = listarSegmentos(directorio);
+        for (int i = 0; i < segmentos.size(); i++) {
+            Path segmento = segmentos.get(i);
+            long valido = leerSegmento(segmento, desdeLsn, lector, ultimo);
+            long tamano = Files.size(segmento);
+            if (valido < tamano) {
+                Log.warn("⚠ Diario {} cortado en el byte {} de {}; se descarta el resto",
+                        segmento.getFileName(), valido, tamano);
+                try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.WRITE)) {
+                    canal.truncate(valido);
+                }
+                // Los segmentos siguientes no pueden continuar una secuencia rota
+                for (int j = i + 1; j < segmentos.size(); j++) {
+                    Log.warn("⚠ Se descarta el segmento {} posterior al corte", segmentos.get(j).getFileName());
+                    Files.deleteIfExists(segmentos.get(j));
+                }
+                break;
+            }
+        }
+        return ultimo[0];
+    }
+
+    /**
+     * Devuelve hasta qué byte el segmento es válido y deja en ultimo[0] el mayor LSN leído
+     */
+    private static long leerSegmento(Path segmento, long desdeLsn, Lector lector, long[] ultimo) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel canal = FileChannel.open(segmento, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            ByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+            long valido = 0;
+            while (datos.remaining() >= ENCABEZADO) {
+                int largo = datos.getInt();
+                int crcEsperado = datos.getInt();
+                if (largo < 8 || largo > LARGO_MAXIMO || largo > datos.remaining()) {
+                    break;
+                }
+                ByteBuffer registro = datos.slice(datos.position(), largo);
+                crc.reset();
+                crc.update(registro.duplicate());
+                if ((int) crc.getValue() != crcEsperado) {
+                    break;
+                }
+                long lsn = registro.getLong();
+                if (lsn > desdeLsn) {
+                    lector.aplicar(lsn, registro.slice());
+                }
+                ultimo[0] = Math.max(ultimo[0], lsn);
+                datos.position(datos.position() + largo);
+                valido = datos.position();
+            }
+            return valido;
+        }
+    }
+
+    static List<Path> listarSegmentos(Path directorio) throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO + "*" + SUFIJO)) {
+            for (Path archivo : archivos) {
+                segmentos.add(archivo);
+            }
+        }
+        segmentos.sort((a, b) -> Long.compare(primerLsn(a), primerLsn(b)));
+        return segmentos;
+    }
+
+    private static long primerLsn(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - SUFIJO.length()));
+    }
+}
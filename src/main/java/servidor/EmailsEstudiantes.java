@@ -0,0 +1,90 @@
+package servidor;
+
+import modelos.Estudiante;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice residente email → ID de estudiante, para rechazar un email repetido sin ir a la base.
+ *
+ * Es una pista, no la restricción: quien lo consulta confirma el ID encontrado contra el almacén
+ * antes de rechazar, y lo que no está en el índice lo decide la base. Se carga con la primera
+ * escritura y lo mantienen los avisos de cambios; los IDs que cambian mientras dura la carga
+ * conservan el valor del aviso, igual que en NombresUniversidades.
+ */
+public class EmailsEstudiantes implements OyenteCambios {
+    private final ConcurrentHashMap<String, Integer> idPorEmail = new ConcurrentHashMap<>();
+    // Para quitar el email anterior cuando un aviso trae el nuevo, o ninguno si se eliminó
+    private final ConcurrentHashMap<Integer, String> emailPorId = new ConcurrentHashMap<>();
+
+    private volatile boolean cargado;
+    private Set<Integer> cambiadosDuranteCarga;
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    public synchronized void iniciarCarga() {
+        cambiadosDuranteCarga = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Deja de anotar cambios tras una carga que no llegó a cargar(); sin efecto si ya terminó
+     */
+    public synchronized void cancelarCarga() {
+        cambiadosDuranteCarga = null;
+    }
+
+    public synchronized void cargar(List<Estudiante> estudiantes) {
+        for (Estudiante estudiante : estudiantes) {
+            if (!cambiadosDuranteCarga.contains(estudiante.getId())) {
+                asignar(estudiante.getId(), estudiante.getEmail());
+            }
+        }
+        cambiadosDuranteCarga = null;
+        cargado = true;
+    }
+
+    /**
+     * ID del estudiante que tenía el email según el último aviso, o null
+     */
+    public Integer idConEmail(String email) {
+        return email != null ? idPorEmail.get(email) : null;
+    }
+
+    /**
+     * Quita una entrada que el almacén desmintió (cambiada por otro servidor sobre la misma base)
+     */
+    public synchronized void olvidar(String email, int id) {
+        if (idPorEmail.remove(email, id)) {
+            emailPorId.remove(id, email);
+        }
+    }
+
+    public int tamano() {
+        return idPorEmail.size();
+    }
+
+    @Override
+    public synchronized void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        if (!ESTUDIANTE.equals(entidad) || id <= 0) {
+            return;
+        }
+        if (cambiadosDuranteCarga != null) {
+            cambiadosDuranteCarga.add(id);
+        }
+        asignar(id, fila instanceof Estudiante ? ((Estudiante) fila).getEmail() : null);
+    }
+
+    private void asignar(int id, String email) {
+        String anterior = email != null ? emailPorId.put(id, email) : emailPorId.remove(id);
+        if (anterior != null && !anterior.equals(email)) {
+            idPorEmail.remove(anterior, id);
+        }
+        if (email != null) {
+            idPorEmail.put(email, id);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventos propios para JDK Flight Recorder, para ver en Mission Control los comandos, las
+ * operaciones de base de datos, las conexiones del pool y la caché de filas junto a las pausas
+ * de GC, los locks y la E/S del mismo momento.
+ *
+ * Se graban con cualquier grabación que los tenga activos, por ejemplo:
+ *   java -XX:StartFlightRecording=filename=servidor.jfr,settings=profile servidor.ServidorTCP
+ *
+ * Sin grabación en curso cada evento es un objeto que el JIT elimina y un commit() vacío.
+ * Ninguno guarda la pila: se ve el hilo y el momento, que es lo que sirve para cruzarlos.
+ */
+final class EventosJfr {
+    private static final String CATEGORIA = "Universidad";
+
+    private EventosJfr() {
+    }
+
+    @Name("universidad.Comando")
+    @Label("Comando")
+    @Description("Un comando de un cliente, desde que se empieza a procesar hasta que se envía la respuesta")
+    @Category({CATEGORIA, "Servidor"})
+    @StackTrace(false)
+    static final class Comando extends Event {
+        @Label("Transporte")
+        String transporte;
+
+        @Label("Operación")
+        String operacion;
+
+        @Label("Cliente")
+        String cliente;
+
+        @Label("Bytes enviados")
+        @DataAmount
+        long bytes;
+
+        @Label("Error")
+        boolean error;
+
+        static Comando iniciar() {
+            Comando evento = new Comando();
+            evento.begin();
+            return evento;
+        }
+
+        void terminar(String transporte, String cliente, String comando, String respuesta) {
+            end();
+            if (!shouldCommit()) {
+                return;
+            }
+            this.transporte = transporte;
+            this.operacion = Metricas.nombreOperacion(comando);
+            this.cliente = cliente;
+            this.bytes = respuesta != null ? respuesta.length() : 0;
+            this.error = respuesta == null || respuesta.startsWith("ERROR");
+            commit();
+        }
+    }
+
+    @Name("universidad.Consulta")
+    @Label("Operación de base de datos")
+    @Description("Una operación de DatabaseManager contra el almacén, con las filas que devolvió o modificó")
+    @Category({CATEGORIA, "Base de datos"})
+    @StackTrace(false)
+    static final class Consulta extends Event {
+        @Label("Operación")
+        String operacion;
+
+        @Label("Filas")
+        long filas;
+
+        @Label("Error")
+        boolean error;
+
+        // Los campos transient no se graban
+        private transient boolean completada;
+
+        static Consulta iniciar(String operacion) {
+            Consulta evento = new Consulta();
+            evento.operacion = operacion;
+            evento.begin();
+            return evento;
+        }
+
+        /**
+         * Marca la operación como completada; si termina sin pasar por aquí se graba como error
+         */
+        void completar(long filas) {
+            this.filas = filas;
+            this.completada = true;
+        }
+
+        void terminar() {
+            end();
+            if (shouldCommit()) {
+                this.error = !completada;
+                commit();
+            }
+        }
+    }
+
+    @Name("universidad.Conexion")
+    @Label("Conexión del pool")
+    @Description("Apertura, préstamo (con la espera) o descarte de una conexión del pool")
+    @Category({CATEGORIA, "Base de datos"})
+    @StackTrace(false)
+    static final class Conexion extends Event {
+        @Label("Acción")
+        String accion;
+
+        @Label("Conexiones en uso")
+        int enUso;
+
+        @Label("Conexiones abiertas")
+        int abiertas;
+
+        static Conexion iniciar(String accion) {
+            Conexion evento = new Conexion();
+            evento.accion = accion;
+            evento.begin();
+            return evento;
+        }
+
+        void terminar(int enUso, int abiertas) {
+            end();
+            if (shouldCommit()) {
+                this.enUso = enUso;
+                this.abiertas = abiertas;
+                commit();
+            }
+        }
+    }
+
+    @Name("universidad.Cache")
+    @Label("Caché de filas")
+    @Description("Una búsqueda en la caché de filas; en un fallo la duración incluye la carga desde el almacén")
+    @Category({CATEGORIA, "Caché"})
+    @StackTrace(false)
+    static final class Cache extends Event {
+        @Label("Caché")
+        String cache;
+
+        @Label("ID")
+        int id;
+
+        @Label("Acierto")
+        boolean acierto;
+
+        static Cache iniciar() {
+            Cache evento = new Cache();
+            evento.begin();
+            return evento;
+        }
+
+        void terminar(String cache, int id, boolean acierto) {
+            end();
+            if (shouldCommit()) {
+                this.cache = cache;
+                this.id = id;
+                this.acierto = acierto;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package servidor;
+
+import modelos.Estudiante;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Filtro y orden de estudiantes para FILTRAR_ESTUDIANTES.
+ *
+ * Gramática: condiciones separadas por ';' con la forma campo operador valor, donde campo es
+ * id, nombre, apellido, email, edad o universidadId y operador es =, !=, &gt;, &gt;=, &lt;, &lt;= o ~
+ * (contiene). Los textos se comparan sin distinguir mayúsculas. "*" o vacío acepta todo.
+ * El orden es una lista de campos separados por ',' con sufijo opcional :ASC o :DESC.
+ *
+ *     FILTRAR_ESTUDIANTES|universidadId=3;edad>25|apellido:ASC,edad:DESC|50
+ *
+ * Por encima del umbral la lista se parte en tramos que se filtran en paralelo en el
+ * ForkJoinPool común; por debajo, el costo de repartir supera a la ganancia y se filtra en orden.
+ */
+public final class FiltroEstudiantes {
+    private static final int UMBRAL_PARALELO = Integer.getInteger("servidor.filtro.umbralParalelo", 20000);
+    private static final int TAMANO_TRAMO = Integer.getInteger("servidor.filtro.tamanoTramo", 8192);
+
+    private static final Pattern CONDICION = Pattern.compile("\\s*(\\w+)\\s*(>=|<=|!=|=|>|<|~)\\s*(.*?)\\s*");
+
+    private final Predicate<Estudiante> predicado;
+    private final Comparator<Estudiante> orden;
+    private final int limite;
+
+    private FiltroEstudiantes(Predicate<Estudiante> predicado, Comparator<Estudiante> orden, int limite) {
+        this.predicado = predicado;
+        this.orden = orden;
+        this.limite = limite;
+    }
+
+    /**
+     * Interpreta el filtro; lanza IllegalArgumentException con un mensaje para el cliente si no es válido
+     */
+    public static FiltroEstudiantes interpretar(String condiciones, String orden, String limite) {
+        Predicate<Estudiante> predicado = e -> true;
+        if (condiciones != null && !condiciones.isBlank() && !condiciones.trim().equals("*")) {
+            for (String condicion : condiciones.split(";")) {
+                if (!condicion.isBlank()) {
+                    predicado = predicado.and(interpretarCondicion(condicion));
+                }
+            }
+        }
+
+        Comparator<Estudiante> comparador = null;
+        if (orden != null && !orden.isBlank()) {
+            for (String criterio : orden.split(",")) {
+                Comparator<Estudiante> siguiente = interpretarOrden(criterio.trim());
+                comparador = comparador == null ? siguiente : comparador.thenComparing(siguiente);
+            }
+        }
+
+        int maximo = Integer.MAX_VALUE;
+        if (limite != null && !limite.isBlank()) {
+            try {
+                maximo = Integer.parseInt(limite.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Límite inválido: " + limite);
+            }
+            if (maximo <= 0) {
+                throw new IllegalArgumentException("El límite debe ser mayor que cero");
+            }
+        }
+        return new FiltroEstudiantes(predicado, comparador, maximo);
+    }
+
+    private static Predicate<Estudiante> interpretarCondicion(String condicion) {
+        Matcher m = CONDICION.matcher(condicion);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Condición inválida: " + condicion.trim());
+        }
+        String campo = m.group(1);
+        String operador = m.group(2);
+        String valor = m.group(3);
+
+        Function<Estudiante, Integer> numero = campoNumerico(campo);
+        if (numero != null) {
+            if (operador.equals("~")) {
+                throw new IllegalArgumentException("El operador ~ solo se aplica a textos: " + campo);
+            }
+            int referencia;
+            try {
+                referencia = Integer.parseInt(valor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Se esperaba un número para " + campo + ": " + valor);
+            }
+            return e -> cumple(Integer.compare(numero.apply(e), referencia), operador);
+        }
+
+        Function<Estudiante, String> texto = campoTexto(campo);
+        String referencia = valor.toLowerCase(Locale.ROOT);
+        if (operador.equals("~")) {
+            return e -> minusculas(texto.apply(e)).contains(referencia);
+        }
+        return e -> cumple(minusculas(texto.apply(e)).compareTo(referencia), operador);
+    }
+
+    private static boolean cumple(int comparacion, String operador) {
+        switch (operador) {
+            case "=":
+                return comparacion == 0;
+            case "!=":
+                return comparacion != 0;
+            case ">":
+                return comparacion > 0;
+            case ">=":
+                return comparacion >= 0;
+            case "<":
+                return comparacion < 0;
+            default:
+                return comparacion <= 0;
+        }
+    }
+
+    private static Comparator<Estudiante> interpretarOrden(String criterio) {
+        String campo = criterio;
+        boolean descendente = false;
+        int separador = criterio.indexOf(':');
+        if (separador >= 0) {
+            campo = criterio.substring(0, separador).trim();
+            String sentido = criterio.substring(separador + 1).trim().toUpperCase(Locale.ROOT);
+            if (sentido.equals("DESC")) {
+                descendente = true;
+            } else if (!sentido.equals("ASC")) {
+                throw new IllegalArgumentException("Sentido de orden inválido: " + sentido + " (use ASC o DESC)");
+            }
+        }
+
+        Comparator<Estudiante> comparador;
+        Function<Estudiante, Integer> numero = campoNumerico(campo);
+        if (numero != null) {
+            comparador = Comparator.comparing(numero);
+        } else {
+            Function<Estudiante, String> texto = campoTexto(campo);
+            comparador = Comparator.comparing(e -> minusculas(texto.apply(e)));
+        }
+        return descendente ? comparador.reversed() : comparador;
+    }
+
+    private static Function<Estudiante, Integer> campoNumerico(String campo) {
+        switch (campo.toLowerCase(Locale.ROOT)) {
+            case "edad":
+                return Estudiante::getEdad;
+            case "universidadid":
+                return Estudiante::getUniversidadId;
+            case "id":
+                return Estudiante::getId;
+            default:
+                return null;
+        }
+    }
+
+    private static Function<Estudiante, String> campoTexto(String campo) {
+        switch (campo.toLowerCase(Locale.ROOT)) {
+            case "nombre":
+                return Estudiante::getNombre;
+            case "apellido":
+                return Estudiante::getApellido;
+            case "email":
+                return Estudiante::getEmail;
+            default:
+                throw new IllegalArgumentException("Campo desconocido: " + campo
+                        + " (use nombre, apellido, email, edad o universidadId)");
+        }
+    }
+
+    private static String minusculas(String texto) {
+        return texto == null ? "" : texto.toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== EJECUCIÓN ====================
+
+    /**
+     * Aplica el filtro, el orden y el límite; la lista recibida no se modifica
+     */
+    public List<Estudiante> aplicar(List<Estudiante> estudiantes) {
+        return aplicar(estudiantes, true);
+    }
+
+    /**
+     * @param ordenadosPorId false si la lista viene en cualquier orden; sin orden pedido, el
+     *                       resultado se ordena entonces por ID como el listado completo
+     */
+    public List<Estudiante> aplicar(List<Estudiante> estudiantes, boolean ordenadosPorId) {
+        long inicio = System.nanoTime();
+        List<Estudiante> resultado;
+        if (estudiantes.size() < UMBRAL_PARALELO) {
+            resultado = filtrarTramo(estudiantes, 0, estudiantes.size());
+            Metricas.incrementar("filtro.secuencial");
+        } else {
+            resultado = ForkJoinPool.commonPool().invoke(new Tramo(estudiantes, 0, estudiantes.size()));
+            Metricas.incrementar("filtro.paralelo");
+        }
+
+        Comparator<Estudiante> criterio = orden != null || ordenadosPorId
+                ? orden : Comparator.comparingInt(Estudiante::getId);
+        if (criterio != null) {
+            if (resultado.size() < UMBRAL_PARALELO) {
+                resultado.sort(criterio);
+            } else {
+                Estudiante[] arreglo = resultado.toArray(new Estudiante[0]);
+                Arrays.parallelSort(arreglo, criterio);
+                resultado = Arrays.asList(arreglo);
+            }
+        }
+        if (resultado.size() > limite) {
+            resultado = resultado.subList(0, limite);
+        }
+        Metricas.registrarTiempo("filtro.estudiantes", inicio);
+        return resultado;
+    }
+
+    private List<Estudiante> filtrarTramo(List<Estudiante> estudiantes, int desde, int hasta) {
+        List<Estudiante> aceptados = new ArrayList<>();
+        for (int i = desde; i < hasta; i++) {
+            Estudiante estudiante = estudiantes.get(i);
+            if (predicado.test(estudiante)) {
+                aceptados.add(estudiante);
+            }
+        }
+        return aceptados;
+    }
+
+    /**
+     * Parte el rango a la mitad hasta llegar al tamaño de tramo; los resultados se unen en orden
+     */
+    @SuppressWarnings("serial")
+    private final class Tramo extends RecursiveTask<List<Estudiante>> {
+        private final List<Estudiante> estudiantes;
+        private final int desde;
+        private final int hasta;
+
+        Tramo(List<Estudiante> estudiantes, int desde, int hasta) {
+            this.estudiantes = estudiantes;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected List<Estudiante> compute() {
+            if (hasta - desde <= TAMANO_TRAMO) {
+                return filtrarTramo(estudiantes, desde, hasta);
+            }
+            int medio = (desde + hasta) >>> 1;
+            Tramo izquierda = new Tramo(estudiantes, desde, medio);
+            izquierda.fork();
+            List<Estudiante> derecha = new Tramo(estudiantes, medio, hasta).compute();
+            List<Estudiante> resultado = izquierda.join();
+            resultado.addAll(derecha);
+            return resultado;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package servidor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin bloqueos. Agrupa los valores (en nanosegundos) en cubetas
+ * de potencias de 2, lo que basta para estimar percentiles con error menor a 2x.
+ */
+public class Histograma {
+    private static final int CUBETAS = 64;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+    private final LongAdder cantidad = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra un valor en nanosegundos
+     */
+    public void registrar(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        cubetas.incrementAndGet(Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+        cantidad.increment();
+        suma.add(nanos);
+        long actual = maximo.get();
+        while (nanos > actual && !maximo.compareAndSet(actual, nanos)) {
+            actual = maximo.get();
+        }
+    }
+
+    public long getCantidad() {
+        return cantidad.sum();
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    public long getPromedio() {
+        long n = cantidad.sum();
+        return n == 0 ? 0 : suma.sum() / n;
+    }
+
+    /**
+     * Estima el percentil pedido (0-100) como el límite superior de su cubeta
+     */
+    public long percentil(double percentil) {
+        long total = 0;
+        long[] copia = new long[CUBETAS];
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = (long) Math.ceil(total * percentil / 100.0);
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) {
+                long limite = i == 0 ? 0 : (1L << Math.min(i, 62)) - 1;
+                return Math.min(limite, maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+}
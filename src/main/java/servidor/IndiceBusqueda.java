@@ -0,0 +1,391 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de búsqueda por nombre en memoria: estudiantes por nombre y apellido, universidades
+ * por nombre y ciudad. Se mantiene al día como oyente de cambios.
+ *
+ * Cada palabra se normaliza (minúsculas, sin tildes ni diéresis, ñ como n) y se parte en
+ * trigramas con dos espacios delante, así "  g", " ga" y "gar" representan el comienzo de
+ * "garcía". Una búsqueda puntúa cada documento por la fracción de trigramas de la consulta
+ * que contiene: los prefijos coinciden por completo y los errores de tipeo pierden solo
+ * algunos trigramas.
+ */
+public class IndiceBusqueda implements OyenteCambios {
+    // Fracción mínima de trigramas de la consulta que debe tener un resultado
+    private static final double COINCIDENCIA_MINIMA = 0.5;
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Indice<Universidad> universidades =
+            new Indice<>("busqueda.universidades", u -> u.getNombre() + " " + u.getCiudad());
+    private final Indice<Estudiante> estudiantes =
+            new Indice<>("busqueda.estudiantes", e -> e.getNombre() + " " + e.getApellido());
+
+    private volatile boolean cargado;
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    /**
+     * Carga el contenido completo. Los cambios que lleguen mientras se leían las listas
+     * ganan sobre las filas leídas, que pueden ser anteriores a ellos.
+     */
+    public void cargar(List<Universidad> listaUniversidades, List<Estudiante> listaEstudiantes) {
+        universidades.cargar(listaUniversidades, Universidad::getId);
+        estudiantes.cargar(listaEstudiantes, Estudiante::getId);
+        cargado = true;
+    }
+
+    /**
+     * Marca el inicio de una carga: desde aquí se anotan los IDs que cambian
+     */
+    public void iniciarCarga() {
+        universidades.iniciarCarga();
+        estudiantes.iniciarCarga();
+    }
+
+    public List<Universidad> buscarUniversidades(String texto, int maximo) {
+        List<Universidad> resultado = new ArrayList<>();
+        for (Universidad u : universidades.buscar(texto, maximo)) {
+            resultado.add(new Universidad(u.getId(), u.getNombre(), u.getCiudad(), u.getPais()));
+        }
+        return resultado;
+    }
+
+    public List<Estudiante> buscarEstudiantes(String texto, int maximo) {
+        return copiasConUniversidad(estudiantes.buscar(texto, maximo));
+    }
+
+    /**
+     * Aplica el filtro a los estudiantes residentes, sin ir al almacén. Devuelve copias con el
+     * nombre de su universidad, como un listado.
+     */
+    public List<Estudiante> filtrarEstudiantes(FiltroEstudiantes filtro) {
+        return copiasConUniversidad(filtro.aplicar(estudiantes.documentos(), false));
+    }
+
+    private List<Estudiante> copiasConUniversidad(List<Estudiante> encontrados) {
+        List<Estudiante> resultado = new ArrayList<>(encontrados.size());
+        for (Estudiante e : encontrados) {
+            Estudiante copia = new Estudiante(e.getId(), e.getNombre(), e.getApellido(), e.getEmail(),
+                    e.getEdad(), e.getUniversidadId());
+            Universidad universidad = universidades.obtener(e.getUniversidadId());
+            copia.setUniversidadNombre(universidad != null ? universidad.getNombre() : null);
+            resultado.add(copia);
+        }
+        return resultado;
+    }
+
+    @Override
+    public void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        if (id <= 0) {
+            return;
+        }
+        if (entidad.equals(UNIVERSIDAD)) {
+            universidades.guardar(id, operacion.equals(ELIMINAR) ? null : (Universidad) fila);
+        } else if (entidad.equals(ESTUDIANTE)) {
+            estudiantes.guardar(id, operacion.equals(ELIMINAR) ? null : (Estudiante) fila);
+        }
+    }
+
+    // ==================== NORMALIZACIÓN ====================
+
+    static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinMarcas = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARADORES.matcher(sinMarcas.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    static Set<String> trigramas(String textoNormalizado) {
+        Set<String> trigramas = new LinkedHashSet<>();
+        if (textoNormalizado.isEmpty()) {
+            return trigramas;
+        }
+        for (String palabra : textoNormalizado.split(" ")) {
+            String marcada = "  " + palabra;
+            for (int i = 0; i + 3 <= marcada.length(); i++) {
+                trigramas.add(marcada.substring(i, i + 3));
+            }
+        }
+        return trigramas;
+    }
+
+    // ==================== ÍNDICE ====================
+
+    private static final class Indice<T> {
+        private final String metrica;
+        private final Function<T, String> texto;
+        private final ReentrantReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+        // Protegidos por cerrojo
+        private final Map<Integer, T> documentos = new HashMap<>();
+        private final Map<Integer, String> normalizados = new HashMap<>();
+        private final Map<String, ListaIds> publicaciones = new HashMap<>();
+        private Set<Integer> cambiadosDuranteCarga;
+
+        Indice(String metrica, Function<T, String> texto) {
+            this.metrica = metrica;
+            this.texto = texto;
+        }
+
+        void iniciarCarga() {
+            cerrojo.writeLock().lock();
+            try {
+                cambiadosDuranteCarga = new HashSet<>();
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+        }
+
+        void cargar(List<T> filas, Function<T, Integer> id) {
+            cerrojo.writeLock().lock();
+            try {
+                for (T fila : filas) {
+                    int clave = id.apply(fila);
+                    if (cambiadosDuranteCarga == null || !cambiadosDuranteCarga.contains(clave)) {
+                        guardarSinCerrojo(clave, fila);
+                    }
+                }
+                cambiadosDuranteCarga = null;
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Todos los documentos en el momento de la llamada, sin orden
+         */
+        List<T> documentos() {
+            cerrojo.readLock().lock();
+            try {
+                return new ArrayList<>(documentos.values());
+            } finally {
+                cerrojo.readLock().unlock();
+            }
+        }
+
+        T obtener(int id) {
+            cerrojo.readLock().lock();
+            try {
+                return documentos.get(id);
+            } finally {
+                cerrojo.readLock().unlock();
+            }
+        }
+
+        /**
+         * Agrega o reemplaza el documento; null lo elimina
+         */
+        void guardar(int id, T documento) {
+            cerrojo.writeLock().lock();
+            try {
+                if (cambiadosDuranteCarga != null) {
+                    cambiadosDuranteCarga.add(id);
+                }
+                guardarSinCerrojo(id, documento);
+            } finally {
+                cerrojo.writeLock().unlock();
+            }
+        }
+
+        private void guardarSinCerrojo(int id, T documento) {
+            String anterior = normalizados.remove(id);
+            if (anterior != null) {
+                for (String trigrama : trigramas(anterior)) {
+                    ListaIds ids = publicaciones.get(trigrama);
+                    if (ids != null && ids.quitar(id) && ids.tamano == 0) {
+                        publicaciones.remove(trigrama);
+                    }
+                }
+                documentos.remove(id);
+            }
+            if (documento == null) {
+                return;
+            }
+            String normalizado = normalizar(texto.apply(documento));
+            documentos.put(id, documento);
+            normalizados.put(id, normalizado);
+            for (String trigrama : trigramas(normalizado)) {
+                publicaciones.computeIfAbsent(trigrama, k -> new ListaIds()).agregar(id);
+            }
+        }
+
+        /**
+         * Los candidatos salen solo de las listas más cortas: quien tenga el mínimo de trigramas
+         * tiene que aparecer en alguna de las (n - mínimo + 1) más raras. Se recorren en orden de
+         * ID y a igual puntaje gana el ID menor, así que con los resultados completos el mínimo
+         * sube al necesario para superar al peor de ellos y se recorren cada vez menos listas.
+         */
+        List<T> buscar(String consulta, int maximo) {
+            long inicio = System.nanoTime();
+            String normalizada = normalizar(consulta);
+            Set<String> trigramasConsulta = trigramas(normalizada);
+            if (trigramasConsulta.isEmpty() || maximo <= 0) {
+                return Collections.emptyList();
+            }
+            String[] palabras = normalizada.split(" ");
+            int cantidad = trigramasConsulta.size();
+            int minimo = (int) Math.ceil(cantidad * COINCIDENCIA_MINIMA);
+            int perfecto = cantidad * 2 + 1;
+
+            cerrojo.readLock().lock();
+            try {
+                ListaIds[] listas = new ListaIds[cantidad];
+                int i = 0;
+                for (String trigrama : trigramasConsulta) {
+                    ListaIds ids = publicaciones.get(trigrama);
+                    listas[i++] = ids != null ? ids : ListaIds.VACIA;
+                }
+                Arrays.sort(listas, Comparator.comparingInt(l -> l.tamano));
+                int generadoras = cantidad - minimo + 1;
+
+                // Montículo de los mejores: el peor queda arriba para descartarlo rápido
+                Comparator<Candidato> mejorPrimero = Comparator
+                        .comparingInt((Candidato c) -> -c.puntaje)
+                        .thenComparingInt(c -> c.id);
+                PriorityQueue<Candidato> mejores = new PriorityQueue<>(maximo + 1, mejorPrimero.reversed());
+                int perfectos = 0;
+
+                int[] posiciones = new int[generadoras];
+                while (perfectos < maximo) {
+                    // Siguiente ID en orden entre las listas generadoras
+                    int id = Integer.MAX_VALUE;
+                    for (int g = 0; g < generadoras; g++) {
+                        if (posiciones[g] < listas[g].tamano) {
+                            id = Math.min(id, listas[g].datos[posiciones[g]]);
+                        }
+                    }
+                    if (id == Integer.MAX_VALUE) {
+                        break;
+                    }
+                    int coincidencias = 0;
+                    for (int g = 0; g < cantidad; g++) {
+                        if (g < generadoras && posiciones[g] < listas[g].tamano && listas[g].datos[posiciones[g]] == id) {
+                            posiciones[g]++;
+                            coincidencias++;
+                        } else if (g >= generadoras && listas[g].contiene(id)) {
+                            coincidencias++;
+                        }
+                    }
+                    if (coincidencias < minimo) {
+                        continue;
+                    }
+                    // Los prefijos exactos de cada palabra van antes que las coincidencias aproximadas;
+                    // solo puede haberlos si están todos los trigramas
+                    boolean prefijos = coincidencias == cantidad && contienePrefijos(normalizados.get(id), palabras);
+                    int puntaje = coincidencias * 2 + (prefijos ? 1 : 0);
+                    if (mejores.size() == maximo && puntaje <= mejores.peek().puntaje) {
+                        continue;
+                    }
+                    if (puntaje == perfecto) {
+                        perfectos++;
+                    }
+                    mejores.add(new Candidato(id, puntaje));
+                    if (mejores.size() > maximo) {
+                        mejores.poll();
+                    }
+                    if (mejores.size() == maximo) {
+                        int necesario = Math.min(mejores.peek().puntaje / 2 + 1, cantidad);
+                        if (necesario > minimo) {
+                            minimo = necesario;
+                            generadoras = Math.min(generadoras, cantidad - minimo + 1);
+                        }
+                    }
+                }
+
+                List<Candidato> ordenados = new ArrayList<>(mejores);
+                ordenados.sort(mejorPrimero);
+                List<T> resultado = new ArrayList<>(ordenados.size());
+                for (Candidato candidato : ordenados) {
+                    resultado.add(documentos.get(candidato.id));
+                }
+                return resultado;
+            } finally {
+                cerrojo.readLock().unlock();
+                Metricas.registrarTiempo(metrica, inicio);
+            }
+        }
+
+        private static boolean contienePrefijos(String normalizado, String[] palabras) {
+            String conEspacio = " " + normalizado;
+            for (String palabra : palabras) {
+                if (!conEspacio.contains(" " + palabra)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lista ordenada de IDs sin repetidos, sin cajas de Integer
+     */
+    private static final class ListaIds {
+        static final ListaIds VACIA = new ListaIds();
+
+        int[] datos = new int[4];
+        int tamano;
+
+        void agregar(int id) {
+            int posicion = Arrays.binarySearch(datos, 0, tamano, id);
+            if (posicion >= 0) {
+                return;
+            }
+            posicion = -posicion - 1;
+            if (tamano == datos.length) {
+                datos = Arrays.copyOf(datos, tamano * 2);
+            }
+            System.arraycopy(datos, posicion, datos, posicion + 1, tamano - posicion);
+            datos[posicion] = id;
+            tamano++;
+        }
+
+        boolean quitar(int id) {
+            int posicion = Arrays.binarySearch(datos, 0, tamano, id);
+            if (posicion < 0) {
+                return false;
+            }
+            System.arraycopy(datos, posicion + 1, datos, posicion, tamano - posicion - 1);
+            tamano--;
+            return true;
+        }
+
+        boolean contiene(int id) {
+            return Arrays.binarySearch(datos, 0, tamano, id) >= 0;
+        }
+    }
+
+    private static final class Candidato {
+        final int id;
+        final int puntaje;
+
+        Candidato(int id, int puntaje) {
+            this.id = id;
+            this.puntaje = puntaje;
+        }
+    }
+}
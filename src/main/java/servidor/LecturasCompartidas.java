@@ -0,0 +1,77 @@
+package servidor;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Une lecturas idénticas que se piden a la vez: la primera va al almacén y las que llegan
+ * mientras está en curso esperan su resultado, en vez de repetir la misma consulta.
+ *
+ * No es una caché: cuando la lectura termina se olvida, y cada escritura confirmada suelta las
+ * lecturas en curso, así que quien llega después de un cambio empieza una lectura nueva y nunca
+ * recibe datos anteriores a una escritura que ya vio confirmada.
+ */
+public class LecturasCompartidas implements OyenteCambios {
+
+    @FunctionalInterface
+    public interface Lectura<T> {
+        T leer() throws SQLException;
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> enCurso = new ConcurrentHashMap<>();
+
+    /**
+     * Devuelve el resultado de la lectura en curso con la misma clave, o la hace si no hay ninguna.
+     * Un error de la lectura llega a todos los que la esperaban.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T leer(String clave, Lectura<T> lectura) throws SQLException {
+        CompletableFuture<Object> propia = new CompletableFuture<>();
+        CompletableFuture<Object> existente = enCurso.putIfAbsent(clave, propia);
+        if (existente != null) {
+            Metricas.incrementar("db.lecturasUnidas");
+            return (T) esperar(existente);
+        }
+        try {
+            T valor = lectura.leer();
+            propia.complete(valor);
+            return valor;
+        } catch (Throwable e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    private static Object esperar(CompletableFuture<Object> lectura) throws SQLException {
+        try {
+            return lectura.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una lectura en curso", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof SQLException) {
+                SQLException original = (SQLException) causa;
+                throw new SQLException(original.getMessage(), original.getSQLState(), original);
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw (Error) causa;
+        }
+    }
+
+    public int enCurso() {
+        return enCurso.size();
+    }
+
+    @Override
+    public void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        // Las que ya esperan reciben su resultado; las nuevas no se unen a una lectura anterior al cambio
+        enCurso.clear();
+    }
+}
@@ -0,0 +1,220 @@
+package servidor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita la tasa de comandos por origen (IP) y por conexión con cubetas de fichas.
+ * Lecturas y escrituras tienen cubetas y límites separados; un comando que excede el límite
+ * se rechaza en el acto con un ERROR que dice cuándo reintentar.
+ *
+ * Cada cubeta es un solo AtomicLong con el "momento teórico de llegada" (GCRA), que equivale
+ * a una cubeta de fichas y se actualiza con compareAndSet, sin locks. Las cubetas de origen
+ * viven en un ConcurrentHashMap y un barrido periódico quita las que ya se rellenaron del todo.
+ *
+ * Límites (0 desactiva):
+ *   -Dservidor.limite.origen.lecturasPorSeg=500   -Dservidor.limite.origen.rafagaLecturas=1000
+ *   -Dservidor.limite.origen.escriturasPorSeg=100 -Dservidor.limite.origen.rafagaEscrituras=200
+ *   -Dservidor.limite.conexion.lecturasPorSeg=200   -Dservidor.limite.conexion.rafagaLecturas=400
+ *   -Dservidor.limite.conexion.escriturasPorSeg=50  -Dservidor.limite.conexion.rafagaEscrituras=100
+ */
+public class LimitadorTasa {
+    private static final long LIMPIEZA_SEG = Long.getLong("servidor.limite.limpiezaSeg", 30L);
+
+    public enum Tipo {
+        LECTURA("lecturas"), ESCRITURA("escrituras");
+
+        private final String nombre;
+
+        Tipo(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private final Limites porOrigen;
+    private final Limites porConexion;
+    private final ConcurrentHashMap<String, Cubetas> origenes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService limpieza;
+
+    public LimitadorTasa() {
+        this(Limites.leer("servidor.limite.origen", 500, 1000, 100, 200),
+                Limites.leer("servidor.limite.conexion", 200, 400, 50, 100));
+    }
+
+    public LimitadorTasa(Limites porOrigen, Limites porConexion) {
+        this.porOrigen = porOrigen;
+        this.porConexion = porConexion;
+
+        this.limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "limitador-limpieza");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        limpieza.scheduleWithFixedDelay(this::quitarInactivas, LIMPIEZA_SEG, LIMPIEZA_SEG, TimeUnit.SECONDS);
+        Metricas.registrarMedidor("limite.origenes", origenes::size);
+    }
+
+    /**
+     * Lectura, escritura, o null si el comando no se limita (PING, BEGIN, COMMIT, SALIR...)
+     */
+    public static Tipo clasificar(String comando) {
+        String operacion = comando.toUpperCase();
+        if (operacion.startsWith("CONSULTAR_") || operacion.startsWith("FILTRAR_") ||
+                operacion.startsWith("BUSCAR_") || operacion.startsWith("EXPORTAR")) {
+            return Tipo.LECTURA;
+        }
+        if (operacion.startsWith("INSERTAR_") || operacion.startsWith("ACTUALIZAR_") ||
+                operacion.startsWith("ELIMINAR_") || operacion.startsWith("IMPORTAR")) {
+            return Tipo.ESCRITURA;
+        }
+        return null;
+    }
+
+    /**
+     * Cubetas para una conexión; las descarta el manejador al cerrarse
+     */
+    public Cubetas nuevaConexion() {
+        return new Cubetas(porConexion, "limite.conexion");
+    }
+
+    /**
+     * Consume una ficha de la cubeta del origen
+     *
+     * @return null si el comando puede seguir, o el mensaje de ERROR para responder
+     */
+    public String verificar(String origen, Tipo tipo) {
+        if (!porOrigen.limita(tipo)) {
+            return null;
+        }
+        Cubetas cubetas = origenes.computeIfAbsent(origen, o -> new Cubetas(porOrigen, "limite.origen"));
+        return cubetas.verificar(tipo);
+    }
+
+    /**
+     * Una cubeta llena equivale a una recién creada, así que quitarla no cambia lo que se permite.
+     * Si justo se consume mientras se quita, esa ficha se pierde a favor del cliente.
+     */
+    private void quitarInactivas() {
+        long ahora = System.nanoTime();
+        origenes.values().removeIf(cubetas -> cubetas.llenas(ahora));
+    }
+
+    public void cerrar() {
+        limpieza.shutdownNow();
+    }
+
+    /**
+     * Tasa sostenida y ráfaga máxima de lecturas y escrituras
+     */
+    public static final class Limites {
+        private final int lecturasPorSeg;
+        private final int rafagaLecturas;
+        private final int escriturasPorSeg;
+        private final int rafagaEscrituras;
+
+        public Limites(int lecturasPorSeg, int rafagaLecturas, int escriturasPorSeg, int rafagaEscrituras) {
+            this.lecturasPorSeg = lecturasPorSeg;
+            this.rafagaLecturas = Math.max(1, rafagaLecturas);
+            this.escriturasPorSeg = escriturasPorSeg;
+            this.rafagaEscrituras = Math.max(1, rafagaEscrituras);
+        }
+
+        static Limites leer(String prefijo, int lecturasPorSeg, int rafagaLecturas,
+                            int escriturasPorSeg, int rafagaEscrituras) {
+            return new Limites(
+                    Integer.getInteger(prefijo + ".lecturasPorSeg", lecturasPorSeg),
+                    Integer.getInteger(prefijo + ".rafagaLecturas", rafagaLecturas),
+                    Integer.getInteger(prefijo + ".escriturasPorSeg", escriturasPorSeg),
+                    Integer.getInteger(prefijo + ".rafagaEscrituras", rafagaEscrituras));
+        }
+
+        boolean limita(Tipo tipo) {
+            return (tipo == Tipo.LECTURA ? lecturasPorSeg : escriturasPorSeg) > 0;
+        }
+    }
+
+    /**
+     * Cubeta de lecturas y de escrituras de un origen o una conexión
+     */
+    public static final class Cubetas {
+        private final Cubeta lecturas;
+        private final Cubeta escrituras;
+        private final String nombreMetricas;
+
+        Cubetas(Limites limites, String nombreMetricas) {
+            this.lecturas = Cubeta.crear(limites.lecturasPorSeg, limites.rafagaLecturas);
+            this.escrituras = Cubeta.crear(limites.escriturasPorSeg, limites.rafagaEscrituras);
+            this.nombreMetricas = nombreMetricas;
+        }
+
+        /**
+         * @return null si el comando puede seguir, o el mensaje de ERROR para responder
+         */
+        public String verificar(Tipo tipo) {
+            Cubeta cubeta = tipo == Tipo.LECTURA ? lecturas : escrituras;
+            if (cubeta == null) {
+                return null;
+            }
+            long esperaNanos = cubeta.consumir(System.nanoTime());
+            if (esperaNanos == 0) {
+                return null;
+            }
+            Metricas.incrementar(nombreMetricas + "." + tipo.nombre + ".limitadas");
+            long esperaMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(esperaNanos));
+            return "ERROR: demasiadas " + tipo.nombre + ". Reintente en " + esperaMs + " ms";
+        }
+
+        boolean llenas(long ahora) {
+            return (lecturas == null || lecturas.llena(ahora)) && (escrituras == null || escrituras.llena(ahora));
+        }
+    }
+
+    private static final class Cubeta {
+        // Nanos que tarda en reponerse una ficha
+        private final long intervalo;
+        // Nanos de fichas que caben en la cubeta (ráfaga × intervalo)
+        private final long capacidad;
+        // Momento en que la cubeta volvería a estar llena si no se consume más
+        private final AtomicLong llenaEn;
+
+        private Cubeta(long intervalo, long capacidad) {
+            this.intervalo = intervalo;
+            this.capacidad = capacidad;
+            this.llenaEn = new AtomicLong(System.nanoTime());
+        }
+
+        static Cubeta crear(int porSegundo, int rafaga) {
+            if (porSegundo <= 0) {
+                return null;
+            }
+            long intervalo = Math.max(1, TimeUnit.SECONDS.toNanos(1) / porSegundo);
+            return new Cubeta(intervalo, intervalo * rafaga);
+        }
+
+        /**
+         * Toma una ficha si hay
+         *
+         * @return 0 si la tomó, o los nanos que faltan para que haya una
+         */
+        long consumir(long ahora) {
+            while (true) {
+                long actual = llenaEn.get();
+                long nuevo = (actual - ahora > 0 ? actual : ahora) + intervalo;
+                long exceso = nuevo - ahora - capacidad;
+                if (exceso > 0) {
+                    return exceso;
+                }
+                if (llenaEn.compareAndSet(actual, nuevo)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean llena(long ahora) {
+            return llenaEn.get() - ahora <= 0;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package servidor;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro asíncrono para los servidores. Los hilos que atienden peticiones solo dejan el
+ * evento en un búfer circular; un único hilo escritor arma el mensaje y lo imprime en consola.
+ *
+ * Configuración:
+ *   -Dlog.nivel=DEBUG|INFO|WARN|ERROR|NINGUNO   (por defecto INFO)
+ *   -Dlog.comandos=TODOS|MUESTREO|NINGUNO       (registro de cada comando, por defecto TODOS)
+ *   -Dlog.muestreo=N                            (en modo MUESTREO se registra 1 de cada N comandos)
+ *   -Dlog.capacidad=N                           (eventos en el búfer; si se llena se descartan)
+ */
+public final class Log {
+
+    public enum Nivel { DEBUG, INFO, WARN, ERROR, NINGUNO }
+
+    private static final Nivel NIVEL = Nivel.valueOf(System.getProperty("log.nivel", "INFO").toUpperCase());
+    private static final String MODO_COMANDOS = System.getProperty("log.comandos", "TODOS").toUpperCase();
+    private static final int MUESTREO = Math.max(1, Integer.getInteger("log.muestreo", 100));
+    private static final int CAPACIDAD = Integer.highestOneBit(Math.max(64, Integer.getInteger("log.capacidad", 8192)));
+    private static final int MASCARA = CAPACIDAD - 1;
+
+    private static final DateTimeFormatter FORMATO_HORA = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final String[] ETIQUETAS = {" DEBUG ", " INFO  ", " WARN  ", " ERROR ", " "};
+
+    private static final AtomicReferenceArray<Evento> buffer = new AtomicReferenceArray<>(CAPACIDAD);
+    // Próxima posición a reservar por los productores
+    private static final AtomicLong reservado = new AtomicLong();
+    // Próxima posición a leer por el escritor; solo la modifica el hilo escritor
+    private static final AtomicLong consumido = new AtomicLong();
+
+    // Salidas con búfer propio: solo las usa el hilo escritor, que las vacía cuando no hay eventos
+    private static final PrintStream salida = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+    private static final PrintStream salidaError = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 14), false);
+
+    private static final Thread escritor;
+
+    static {
+        escritor = new Thread(Log::escribirEventos, "log-escritor");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::vaciar, "log-vaciado"));
+        Metricas.registrarMedidor("log.pendientes", () -> reservado.get() - consumido.get());
+    }
+
+    private Log() {
+    }
+
+    private static final class Evento {
+        final Nivel nivel;
+        final long momento;
+        final String formato;
+        final Object[] argumentos;
+
+        Evento(Nivel nivel, String formato, Object[] argumentos) {
+            this.nivel = nivel;
+            this.momento = System.currentTimeMillis();
+            this.formato = formato;
+            this.argumentos = argumentos;
+        }
+    }
+
+    // ==================== API ====================
+
+    public static boolean activo(Nivel nivel) {
+        return nivel.ordinal() >= NIVEL.ordinal() && nivel != Nivel.NINGUNO;
+    }
+
+    /**
+     * Decide si el comando actual se registra, según -Dlog.comandos y -Dlog.muestreo
+     */
+    public static boolean registrarComando() {
+        if (!activo(Nivel.INFO)) {
+            return false;
+        }
+        switch (MODO_COMANDOS) {
+            case "NINGUNO":
+                return false;
+            case "MUESTREO":
+                return ThreadLocalRandom.current().nextInt(MUESTREO) == 0;
+            default:
+                return true;
+        }
+    }
+
+    public static void debug(String formato) { registrar(Nivel.DEBUG, formato, null); }
+    public static void debug(String formato, Object a) { if (activo(Nivel.DEBUG)) registrar(Nivel.DEBUG, formato, new Object[]{a}); }
+    public static void debug(String formato, Object a, Object b) { if (activo(Nivel.DEBUG)) registrar(Nivel.DEBUG, formato, new Object[]{a, b}); }
+    public static void debug(String formato, Object... args) { registrar(Nivel.DEBUG, formato, args); }
+
+    public static void info(String formato) { registrar(Nivel.INFO, formato, null); }
+    public static void info(String formato, Object a) { if (activo(Nivel.INFO)) registrar(Nivel.INFO, formato, new Object[]{a}); }
+    public static void info(String formato, Object a, Object b) { if (activo(Nivel.INFO)) registrar(Nivel.INFO, formato, new Object[]{a, b}); }
+    public static void info(String formato, Object... args) { registrar(Nivel.INFO, formato, args); }
+
+    public static void warn(String formato) { registrar(Nivel.WARN, formato, null); }
+    public static void warn(String formato, Object a) { if (activo(Nivel.WARN)) registrar(Nivel.WARN, formato, new Object[]{a}); }
+    public static void warn(String formato, Object a, Object b) { if (activo(Nivel.WARN)) registrar(Nivel.WARN, formato, new Object[]{a, b}); }
+    public static void warn(String formato, Object... args) { registrar(Nivel.WARN, formato, args); }
+
+    public static void error(String formato) { registrar(Nivel.ERROR, formato, null); }
+    public static void error(String formato, Object a) { if (activo(Nivel.ERROR)) registrar(Nivel.ERROR, formato, new Object[]{a}); }
+    public static void error(String formato, Object a, Object b) { if (activo(Nivel.ERROR)) registrar(Nivel.ERROR, formato, new Object[]{a, b}); }
+    public static void error(String formato, Object... args) { registrar(Nivel.ERROR, formato, args); }
+
+    // ==================== BÚFER CIRCULAR ====================
+
+    private static void registrar(Nivel nivel, String formato, Object[] argumentos) {
+        if (!activo(nivel)) {
+            return;
+        }
+        long posicion;
+        do {
+            posicion = reservado.get();
+            if (posicion - consumido.get() >= CAPACIDAD) {
+                // Búfer lleno: se descarta antes que frenar al hilo que atiende la petición
+                Metricas.incrementar("log.descartados");
+                return;
+            }
+        } while (!reservado.compareAndSet(posicion, posicion + 1));
+
+        buffer.set((int) (posicion & MASCARA), new Evento(nivel, formato, argumentos));
+    }
+
+    private static void escribirEventos() {
+        while (true) {
+            if (!escribirSiguiente()) {
+                salida.flush();
+                salidaError.flush();
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    /**
+     * Escribe el siguiente evento disponible; devuelve false si no había ninguno listo
+     */
+    private static synchronized boolean escribirSiguiente() {
+        long posicion = consumido.get();
+        if (posicion >= reservado.get()) {
+            return false;
+        }
+        int indice = (int) (posicion & MASCARA);
+        Evento evento = buffer.get(indice);
+        if (evento == null) {
+            // El productor reservó la posición pero aún no publica el evento
+            return false;
+        }
+        buffer.set(indice, null);
+        consumido.lazySet(posicion + 1);
+
+        PrintStream destino = evento.nivel.ordinal() >= Nivel.WARN.ordinal() ? salidaError : salida;
+        destino.println(encabezado(evento) + armarMensaje(evento));
+        return true;
+    }
+
+    /**
+     * Escribe todo lo pendiente; se usa al apagar el proceso
+     */
+    public static void vaciar() {
+        long limite = System.nanoTime() + 2_000_000_000L;
+        while (consumido.get() < reservado.get() && System.nanoTime() < limite) {
+            if (!escribirSiguiente()) {
+                Thread.onSpinWait();
+            }
+        }
+        salida.flush();
+        salidaError.flush();
+    }
+
+    // Solo los usa el hilo que escribe (dentro de escribirSiguiente)
+    private static long ultimoMomento = -1;
+    private static String ultimaHora = "";
+
+    private static String encabezado(Evento evento) {
+        if (evento.momento != ultimoMomento) {
+            ultimoMomento = evento.momento;
+            ultimaHora = FORMATO_HORA.format(
+                    Instant.ofEpochMilli(evento.momento).atZone(ZoneId.systemDefault()).toLocalTime());
+        }
+        return ultimaHora + ETIQUETAS[evento.nivel.ordinal()];
+    }
+
+    /**
+     * Sustituye cada "{}" del formato por el argumento correspondiente
+     */
+    private static String armarMensaje(Evento evento) {
+        if (evento.argumentos == null || evento.argumentos.length == 0) {
+            return evento.formato;
+        }
+        StringBuilder mensaje = new StringBuilder(evento.formato.length() + 32);
+        int desde = 0;
+        int argumento = 0;
+        int marca;
+        while ((marca = evento.formato.indexOf("{}", desde)) >= 0 && argumento < evento.argumentos.length) {
+            mensaje.append(evento.formato, desde, marca).append(evento.argumentos[argumento++]);
+            desde = marca + 2;
+        }
+        mensaje.append(evento.formato, desde, evento.formato.length());
+        return mensaje.toString();
+    }
+}
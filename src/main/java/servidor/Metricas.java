@@ -0,0 +1,297 @@
+package servidor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro de métricas del proceso: contadores, histogramas de latencia y medidores.
+ * Todas las operaciones de registro son sin bloqueos para poder usarse en el camino de cada petición.
+ */
+public final class Metricas {
+    private static final String ARCHIVO_VOLCADO = System.getProperty("metricas.archivo");
+    private static final long INTERVALO_VOLCADO_SEG = Long.getLong("metricas.intervaloSeg", 60L);
+    private static final boolean VOLCADO_JSON = "json".equalsIgnoreCase(System.getProperty("metricas.formato", "texto"));
+    private static final boolean STATS_REMOTO = Boolean.getBoolean("metricas.statsRemoto");
+
+    // Límite de nombres de comando distintos, para que comandos basura no llenen el registro
+    private static final int MAX_COMANDOS = 64;
+
+    private static final long INICIO = System.nanoTime();
+
+    private static final ConcurrentHashMap<String, LongAdder> contadores = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histograma> histogramas = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongSupplier> medidores = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Boolean> comandos = new ConcurrentHashMap<>();
+    private static final AtomicInteger cantidadComandos = new AtomicInteger();
+
+    private static ScheduledExecutorService volcador;
+
+    private Metricas() {
+    }
+
+    // ==================== REGISTRO ====================
+
+    public static void incrementar(String nombre) {
+        contadores.computeIfAbsent(nombre, k -> new LongAdder()).increment();
+    }
+
+    public static void sumar(String nombre, long valor) {
+        contadores.computeIfAbsent(nombre, k -> new LongAdder()).add(valor);
+    }
+
+    public static long valor(String nombre) {
+        LongAdder contador = contadores.get(nombre);
+        return contador != null ? contador.sum() : 0;
+    }
+
+    public static Histograma histograma(String nombre) {
+        return histogramas.computeIfAbsent(nombre, k -> new Histograma());
+    }
+
+    /**
+     * Registra en el histograma el tiempo transcurrido desde inicioNanos
+     */
+    public static void registrarTiempo(String nombre, long inicioNanos) {
+        histograma(nombre).registrar(System.nanoTime() - inicioNanos);
+    }
+
+    /**
+     * Registra un valor que se lee en el momento de consultar las métricas
+     */
+    public static void registrarMedidor(String nombre, LongSupplier medidor) {
+        medidores.put(nombre, medidor);
+    }
+
+    /**
+     * Registra una petición atendida por un transporte ("tcp" o "udp")
+     */
+    public static void registrarComando(String transporte, String comando, long inicioNanos, String respuesta) {
+        String operacion = nombreOperacion(comando);
+        boolean error = respuesta == null || respuesta.startsWith("ERROR");
+
+        incrementar(transporte + ".peticiones");
+        registrarTiempo(transporte + ".comando." + operacion, inicioNanos);
+        if (error) {
+            incrementar(transporte + ".errores");
+            incrementar(transporte + ".comando." + operacion + ".errores");
+        }
+    }
+
+    static String nombreOperacion(String comando) {
+        if (comando == null) {
+            return "VACIO";
+        }
+        int separador = comando.indexOf('|');
+        String operacion = (separador >= 0 ? comando.substring(0, separador) : comando).trim().toUpperCase();
+        if (operacion.isEmpty()) {
+            return "VACIO";
+        }
+        if (!esNombreComando(operacion)) {
+            return "OTRO";
+        }
+        if (comandos.containsKey(operacion)) {
+            return operacion;
+        }
+        // El cupo se toma dentro de computeIfAbsent: un nombre nuevo entra solo si queda lugar
+        Boolean registrado = comandos.computeIfAbsent(operacion, k ->
+                cantidadComandos.getAndUpdate(n -> n < MAX_COMANDOS ? n + 1 : n) < MAX_COMANDOS ? Boolean.TRUE : null);
+        return registrado != null ? operacion : "OTRO";
+    }
+
+    /**
+     * Letras mayúsculas y guiones bajos, hasta 40 caracteres
+     */
+    private static boolean esNombreComando(String operacion) {
+        if (operacion.length() > 40) {
+            return false;
+        }
+        for (int i = 0; i < operacion.length(); i++) {
+            char c = operacion.charAt(i);
+            if ((c < 'A' || c > 'Z') && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ==================== CONSULTA ====================
+
+    /**
+     * Indica si una dirección puede pedir STATS (solo local, salvo -Dmetricas.statsRemoto=true)
+     */
+    public static boolean consultaPermitida(InetAddress origen) {
+        return STATS_REMOTO || origen.isLoopbackAddress();
+    }
+
+    /**
+     * Resumen legible de todas las métricas; la última línea es "Total: n métrica(s)"
+     */
+    public static String resumenTexto() {
+        double segundos = segundosActivo();
+        StringBuilder resultado = new StringBuilder();
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+        resultado.append("                    MÉTRICAS DEL SERVIDOR\n");
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+        resultado.append(String.format("Tiempo activo: %.1f s\n", segundos));
+
+        int total = 0;
+        for (Map.Entry<String, Long> contador : copiaContadores().entrySet()) {
+            resultado.append(String.format("%-45s %d (%.1f/s)\n",
+                    contador.getKey(), contador.getValue(), contador.getValue() / segundos));
+            total++;
+        }
+        for (Map.Entry<String, Double> proporcion : proporcionesAciertos().entrySet()) {
+            resultado.append(String.format("%-45s %.1f%%\n", proporcion.getKey(), proporcion.getValue() * 100));
+            total++;
+        }
+        for (Map.Entry<String, Long> medidor : copiaMedidores().entrySet()) {
+            resultado.append(String.format("%-45s %d\n", medidor.getKey(), medidor.getValue()));
+            total++;
+        }
+        for (Map.Entry<String, Histograma> entrada : new TreeMap<>(histogramas).entrySet()) {
+            Histograma h = entrada.getValue();
+            resultado.append(String.format("%-45s n=%d prom=%dus p50=%dus p99=%dus max=%dus\n",
+                    entrada.getKey(), h.getCantidad(),
+                    micros(h.getPromedio()), micros(h.percentil(50)),
+                    micros(h.percentil(99)), micros(h.getMaximo())));
+            total++;
+        }
+
+        resultado.append("═══════════════════════════════════════════════════════════\n");
+        resultado.append(String.format("Total: %d métrica(s)\n", total));
+        return resultado.toString();
+    }
+
+    /**
+     * Resumen de todas las métricas en una sola línea JSON
+     */
+    public static String resumenJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"tiempoActivoSeg\":").append(String.format(Locale.ROOT, "%.1f", segundosActivo()));
+
+        json.append(",\"contadores\":{");
+        agregarValores(json, copiaContadores());
+        json.append("},\"medidores\":{");
+        agregarValores(json, copiaMedidores());
+
+        json.append("},\"aciertos\":{");
+        boolean primero = true;
+        for (Map.Entry<String, Double> proporcion : proporcionesAciertos().entrySet()) {
+            if (!primero) json.append(',');
+            json.append('"').append(proporcion.getKey()).append("\":")
+                    .append(String.format(Locale.ROOT, "%.4f", proporcion.getValue()));
+            primero = false;
+        }
+
+        json.append("},\"histogramas\":{");
+        primero = true;
+        for (Map.Entry<String, Histograma> entrada : new TreeMap<>(histogramas).entrySet()) {
+            Histograma h = entrada.getValue();
+            if (!primero) json.append(',');
+            json.append('"').append(entrada.getKey()).append("\":{")
+                    .append("\"n\":").append(h.getCantidad())
+                    .append(",\"promUs\":").append(micros(h.getPromedio()))
+                    .append(",\"p50Us\":").append(micros(h.percentil(50)))
+                    .append(",\"p90Us\":").append(micros(h.percentil(90)))
+                    .append(",\"p99Us\":").append(micros(h.percentil(99)))
+                    .append(",\"maxUs\":").append(micros(h.getMaximo()))
+                    .append('}');
+            primero = false;
+        }
+        json.append("}}");
+        return json.toString();
+    }
+
+    private static void agregarValores(StringBuilder json, Map<String, Long> valores) {
+        boolean primero = true;
+        for (Map.Entry<String, Long> entrada : valores.entrySet()) {
+            if (!primero) json.append(',');
+            json.append('"').append(entrada.getKey()).append("\":").append(entrada.getValue());
+            primero = false;
+        }
+    }
+
+    private static Map<String, Long> copiaContadores() {
+        Map<String, Long> copia = new TreeMap<>();
+        contadores.forEach((nombre, contador) -> copia.put(nombre, contador.sum()));
+        return copia;
+    }
+
+    private static Map<String, Long> copiaMedidores() {
+        Map<String, Long> copia = new TreeMap<>();
+        medidores.forEach((nombre, medidor) -> copia.put(nombre, medidor.getAsLong()));
+        return copia;
+    }
+
+    /**
+     * Calcula la proporción de aciertos de cada par de contadores "x.aciertos" / "x.fallos"
+     */
+    private static Map<String, Double> proporcionesAciertos() {
+        Map<String, Double> proporciones = new TreeMap<>();
+        for (String nombre : contadores.keySet()) {
+            if (nombre.endsWith(".aciertos")) {
+                String base = nombre.substring(0, nombre.length() - ".aciertos".length());
+                long aciertos = valor(nombre);
+                long total = aciertos + valor(base + ".fallos");
+                if (total > 0) {
+                    proporciones.put(base + ".proporcionAciertos", (double) aciertos / total);
+                }
+            }
+        }
+        return proporciones;
+    }
+
+    private static double segundosActivo() {
+        return Math.max(0.001, (System.nanoTime() - INICIO) / 1e9);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    // ==================== VOLCADO PERIÓDICO ====================
+
+    /**
+     * Inicia el volcado periódico a -Dmetricas.archivo (en texto o JSON según -Dmetricas.formato)
+     */
+    public static synchronized void iniciarVolcadoPeriodico() {
+        if (ARCHIVO_VOLCADO == null || volcador != null) {
+            return;
+        }
+        volcador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "metricas-volcado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        volcador.scheduleAtFixedRate(Metricas::volcarArchivo,
+                INTERVALO_VOLCADO_SEG, INTERVALO_VOLCADO_SEG, TimeUnit.SECONDS);
+        System.out.println("✓ Volcado de métricas cada " + INTERVALO_VOLCADO_SEG + " s en " + ARCHIVO_VOLCADO);
+    }
+
+    private static void volcarArchivo() {
+        Path destino = Paths.get(ARCHIVO_VOLCADO);
+        Path temporal = Paths.get(ARCHIVO_VOLCADO + ".tmp");
+        try {
+            String contenido = VOLCADO_JSON ? resumenJson() + "\n" : resumenTexto();
+            Files.write(temporal, contenido.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("✗ Error al volcar métricas: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package servidor;
+
+import modelos.Universidad;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nombre de cada universidad por ID, residente en memoria, para completar los estudiantes
+ * sin unir tablas en cada lectura. Hay pocos cientos de universidades y casi no cambian.
+ *
+ * Se carga al arrancar y la mantienen los avisos de cambios. Los IDs que cambian mientras
+ * dura la carga conservan el valor del aviso, que es más nuevo que el de la lectura.
+ *
+ * También recuerda por un rato los IDs que el almacén confirmó inexistentes, para que las
+ * escrituras que insisten con una universidad que no existe no lean la base cada vez. Un aviso
+ * de cambio de ese ID lo olvida antes de tiempo.
+ */
+public class NombresUniversidades implements OyenteCambios {
+    // Cota de IDs inexistentes recordados; los IDs los elige el cliente
+    private static final int MAX_AUSENTES = 10000;
+
+    private final ConcurrentHashMap<Integer, String> nombres = new ConcurrentHashMap<>();
+    // ID inexistente -> nanoTime en que se olvida
+    private final ConcurrentHashMap<Integer, Long> ausentes = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile boolean cargado;
+    private Set<Integer> cambiadosDuranteCarga;
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    public synchronized void iniciarCarga() {
+        cambiadosDuranteCarga = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Deja de anotar cambios tras una carga que no llegó a cargar(); sin efecto si ya terminó
+     */
+    public synchronized void cancelarCarga() {
+        cambiadosDuranteCarga = null;
+    }
+
+    public synchronized void cargar(List<Universidad> universidades) {
+        for (Universidad universidad : universidades) {
+            if (!cambiadosDuranteCarga.contains(universidad.getId())) {
+                nombres.put(universidad.getId(), universidad.getNombre());
+            }
+        }
+        cambiadosDuranteCarga = null;
+        cargado = true;
+    }
+
+    /**
+     * Devuelve el nombre, o null si el ID no está en el mapa
+     */
+    public String nombre(int id) {
+        return nombres.get(id);
+    }
+
+    /**
+     * Guarda un nombre leído del almacén para un ID que faltaba
+     */
+    public void recordar(int id, String nombre) {
+        nombres.putIfAbsent(id, nombre);
+    }
+
+    /**
+     * Cuenta los avisos de cambios de universidades; se lee antes de consultar el almacén
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Indica si el ID se confirmó inexistente hace poco
+     */
+    public boolean ausente(int id) {
+        Long hasta = ausentes.get(id);
+        if (hasta == null) {
+            return false;
+        }
+        if (System.nanoTime() - hasta < 0) {
+            return true;
+        }
+        ausentes.remove(id, hasta);
+        return false;
+    }
+
+    /**
+     * Recuerda que el ID no existe durante duracionNanos, salvo que haya llegado un aviso de
+     * cambio desde que se leyó versionLeida: la lectura puede ser anterior a una inserción
+     */
+    public void recordarAusente(int id, long duracionNanos, long versionLeida) {
+        if (ausentes.size() >= MAX_AUSENTES) {
+            ausentes.clear();
+        }
+        ausentes.put(id, System.nanoTime() + duracionNanos);
+        if (version.get() != versionLeida) {
+            ausentes.remove(id);
+        }
+    }
+
+    public int tamano() {
+        return nombres.size();
+    }
+
+    @Override
+    public synchronized void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        if (!UNIVERSIDAD.equals(entidad) || id <= 0) {
+            return;
+        }
+        version.incrementAndGet();
+        ausentes.remove(id);
+        if (cambiadosDuranteCarga != null) {
+            cambiadosDuranteCarga.add(id);
+        }
+        if (fila instanceof Universidad) {
+            nombres.put(id, ((Universidad) fila).getNombre());
+        } else {
+            nombres.remove(id);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package servidor;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Envía mensajes de invalidación a los clientes TCP suscritos cuando cambian los datos,
+ * para que sus cachés locales no sirvan información vieja. Cada mensaje solo se encola en el
+ * manejador del suscriptor: quien escribe nunca espera a un cliente que dejó de leer.
+ */
+public class NotificadorInvalidaciones implements OyenteCambios {
+    private final Set<ClientHandler> suscriptores = ConcurrentHashMap.newKeySet();
+
+    public void suscribir(ClientHandler handler) {
+        suscriptores.add(handler);
+    }
+
+    public void cancelarSuscripcion(ClientHandler handler) {
+        suscriptores.remove(handler);
+    }
+
+    @Override
+    public void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+        enviar("INVALIDAR|" + entidad + "|" + id + "|" + operacion);
+    }
+
+    /**
+     * Un lote se avisa con un solo mensaje para toda la tabla ("*" en lugar del ID)
+     */
+    @Override
+    public void loteRegistrado(String entidad, String operacion, int[] ids, Object[] filas) {
+        if (suscriptores.isEmpty()) {
+            return;
+        }
+        enviar("INVALIDAR|" + entidad + "|*|" + operacion);
+    }
+
+    private void enviar(String mensaje) {
+        for (ClientHandler handler : suscriptores) {
+            handler.enviarInvalidacion(mensaje);
+        }
+    }
+
+    public int getCantidadSuscriptores() {
+        return suscriptores.size();
+    }
+}
@@ -0,0 +1,95 @@
+package servidor;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Publica cada escritura confirmada en un grupo multicast, para que los clientes UDP refresquen
+ * solo los registros afectados en lugar de volver a pedir las tablas completas.
+ *
+ * Cada aviso es un datagrama CAMBIO|entidad|id|operacion|version. La versión crece de uno en uno
+ * para cada publicador: un cliente que ve un salto perdió avisos y debe recargar todo.
+ *
+ *   -Dservidor.multicast.grupo     grupo de destino; vacío (por defecto) lo desactiva
+ *   -Dservidor.multicast.puerto    (5002)
+ *   -Dservidor.multicast.interfaz  interfaz de salida, p. ej. lo para probar en loopback
+ *   -Dservidor.multicast.ttl       (1: no sale de la red local)
+ */
+public class NotificadorMulticast implements OyenteCambios {
+    private static final String GRUPO = System.getProperty("servidor.multicast.grupo", "");
+    private static final int PUERTO = Integer.getInteger("servidor.multicast.puerto", 5002);
+    private static final String INTERFAZ = System.getProperty("servidor.multicast.interfaz", "");
+    private static final int TTL = Integer.getInteger("servidor.multicast.ttl", 1);
+
+    private final MulticastSocket socket;
+    private final InetAddress grupo;
+    private long version;
+    private boolean cerrado;
+
+    private NotificadorMulticast(MulticastSocket socket, InetAddress grupo) {
+        this.socket = socket;
+        this.grupo = grupo;
+    }
+
+    /**
+     * Abre el socket de publicación, o devuelve null si no hay grupo configurado o no se pudo abrir
+     */
+    public static NotificadorMulticast crear() {
+        if (GRUPO.isBlank()) {
+            return null;
+        }
+        try {
+            InetAddress grupo = InetAddress.getByName(GRUPO);
+            if (!grupo.isMulticastAddress()) {
+                Log.warn("⚠ {} no es una dirección multicast; avisos de cambios desactivados", GRUPO);
+                return null;
+            }
+            MulticastSocket socket = new MulticastSocket();
+            socket.setTimeToLive(TTL);
+            if (!INTERFAZ.isBlank()) {
+                NetworkInterface interfaz = NetworkInterface.getByName(INTERFAZ);
+                if (interfaz == null) {
+                    socket.close();
+                    Log.warn("⚠ No existe la interfaz {}; avisos de cambios desactivados", INTERFAZ);
+                    return null;
+                }
+                socket.setNetworkInterface(interfaz);
+            }
+            System.out.println("✓ Avisos de cambios en el grupo multicast " + GRUPO + ":" + PUERTO);
+            return new NotificadorMulticast(socket, grupo);
+        } catch (IOException e) {
+            Log.warn("⚠ No se pudo abrir el grupo multicast {}: {}", GRUPO, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Se llama después de confirmar la escritura; sincronizado para que los avisos salgan en el
+     * orden de su versión
+     */
+    @Override
+    public synchronized void cambioRegistrado(String entidad, String operacion, int id, Object fila) {
+        if (cerrado) {
+            return;
+        }
+        version++;
+        byte[] datos = ("CAMBIO|" + entidad + "|" + id + "|" + operacion + "|" + version)
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            socket.send(new DatagramPacket(datos, datos.length, grupo, PUERTO));
+            Metricas.incrementar("udp.multicast.enviados");
+        } catch (IOException e) {
+            // El cliente verá el salto de versión y recargará
+            Metricas.incrementar("udp.multicast.errores");
+        }
+    }
+
+    public synchronized void cerrar() {
+        cerrado = true;
+        socket.close();
+    }
+}
@@ -0,0 +1,96 @@
+package servidor;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Dirección real del cliente cuando llega a través de ProxyBalanceador. Sin ella los nodos solo
+ * ven al proxy: todos sus clientes comparten la cubeta de tasa por IP y, con el proxy en el mismo
+ * equipo, cualquiera podría pedir STATS.
+ *
+ * El proxy antepone una cabecera al estilo del protocolo PROXY de HAProxy: "PROXY ip puerto" como
+ * primera línea de la conexión TCP, o como primera línea de cada datagrama UDP. Solo se cree si
+ * llega desde una dirección de -Dservidor.proxiesConfiables (IPs separadas por comas); de
+ * cualquier otra se descarta la cabecera y se sigue con la dirección de quien envía.
+ */
+final class OrigenProxy {
+    private static final String PREFIJO = "PROXY ";
+    private static final Set<String> CONFIABLES = leerConfiables(System.getProperty("servidor.proxiesConfiables", ""));
+
+    private OrigenProxy() {
+    }
+
+    private static Set<String> leerConfiables(String lista) {
+        Set<String> confiables = new HashSet<>();
+        for (String direccion : lista.split(",")) {
+            if (!direccion.isBlank()) {
+                try {
+                    confiables.add(InetAddress.getByName(direccion.trim()).getHostAddress());
+                } catch (UnknownHostException e) {
+                    Log.warn("⚠ Proxy confiable desconocido, se ignora: {}", direccion.trim());
+                }
+            }
+        }
+        return confiables;
+    }
+
+    static boolean esCabecera(String texto) {
+        return texto.startsWith(PREFIJO);
+    }
+
+    /**
+     * Cabecera que el proxy envía antes de los datos del cliente, sin el fin de línea
+     */
+    static String cabecera(InetAddress cliente, int puerto) {
+        return PREFIJO + cliente.getHostAddress() + " " + puerto;
+    }
+
+    /**
+     * Dirección informada en la cabecera, o null si el remitente no es un proxy confiable o la
+     * cabecera no es válida
+     */
+    static InetSocketAddress leer(String cabecera, InetAddress remitente) {
+        if (!CONFIABLES.contains(remitente.getHostAddress())) {
+            Metricas.incrementar("servidor.origenProxy.noConfiables");
+            return null;
+        }
+        String[] partes = cabecera.trim().split(" ");
+        if (partes.length != 3 || !esIpLiteral(partes[1])) {
+            Metricas.incrementar("servidor.origenProxy.invalidas");
+            return null;
+        }
+        try {
+            int puerto = Integer.parseInt(partes[2]);
+            if (puerto < 0 || puerto > 65535) {
+                Metricas.incrementar("servidor.origenProxy.invalidas");
+                return null;
+            }
+            return new InetSocketAddress(InetAddress.getByName(partes[1]), puerto);
+        } catch (NumberFormatException | UnknownHostException e) {
+            Metricas.incrementar("servidor.origenProxy.invalidas");
+            return null;
+        }
+    }
+
+    /**
+     * IPv4 con dígitos y puntos, o IPv6 con dos puntos, para que getByName no resuelva nombres
+     */
+    private static boolean esIpLiteral(String texto) {
+        if (texto.isEmpty()) {
+            return false;
+        }
+        boolean ipv6 = texto.indexOf(':') >= 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            boolean valido = ipv6 ? Character.digit(c, 16) >= 0 || c == ':' || c == '.'
+                    : Character.isDigit(c) || c == '.';
+            if (!valido) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
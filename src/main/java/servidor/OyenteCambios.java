@@ -0,0 +1,31 @@
+package servidor;
+
+/**
+ * Recibe un aviso cada vez que DatabaseManager completa una escritura
+ */
+public interface OyenteCambios {
+    String UNIVERSIDAD = "UNIVERSIDAD";
+    String ESTUDIANTE = "ESTUDIANTE";
+
+    String INSERTAR = "INSERTAR";
+    String ACTUALIZAR = "ACTUALIZAR";
+    String ELIMINAR = "ELIMINAR";
+
+    /**
+     * Se invoca después de una inserción, actualización o eliminación exitosa.
+     * El ID es 0 si la base de datos no devolvió la clave generada. La fila es la Universidad
+     * o el Estudiante tal como quedó guardado, o null al eliminar.
+     */
+    void cambioRegistrado(String entidad, String operacion, int id, Object fila);
+
+    /**
+     * Se invoca después de insertar un lote, con los IDs y las filas que quedaron guardados.
+     * Por omisión avisa fila por fila; quien solo necesita saber que la tabla cambió puede
+     * responder con un único aviso.
+     */
+    default void loteRegistrado(String entidad, String operacion, int[] ids, Object[] filas) {
+        for (int i = 0; i < ids.length; i++) {
+            cambioRegistrado(entidad, operacion, ids[i], filas[i]);
+        }
+    }
+}
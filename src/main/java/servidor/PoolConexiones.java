@@ -0,0 +1,163 @@
+package servidor;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de conexiones JDBC de tamaño fijo. Las conexiones se abren a demanda hasta el
+ * máximo; cuando están todas prestadas, quien pide una espera hasta un plazo.
+ */
+public class PoolConexiones {
+    private final String url;
+    private final String usuario;
+    private final String password;
+    private final int tamanoMaximo;
+    private final long esperaMaxMs;
+
+    private final LinkedBlockingDeque<Connection> libres = new LinkedBlockingDeque<>();
+    private final AtomicInteger abiertas = new AtomicInteger();
+    private final AtomicInteger enUso = new AtomicInteger();
+    private volatile boolean cerrado;
+
+    public PoolConexiones(String url, String usuario, String password, int tamanoMaximo, long esperaMaxMs) {
+        this.url = url;
+        this.usuario = usuario;
+        this.password = password;
+        this.tamanoMaximo = tamanoMaximo;
+        this.esperaMaxMs = esperaMaxMs;
+    }
+
+    /**
+     * Abre la primera conexión para detectar de inmediato si la base de datos no está disponible
+     */
+    public void abrirInicial() {
+        try {
+            Connection conexion = abrir();
+            if (conexion != null) {
+                libres.offerFirst(conexion);
+                System.out.println("✓ Conexión a base de datos establecida");
+            }
+        } catch (SQLException e) {
+            System.err.println("✗ Error al conectar con la base de datos: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Presta una conexión; hay que devolverla con liberar()
+     */
+    public Connection obtener() throws SQLException {
+        if (cerrado) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        EventosJfr.Conexion evento = EventosJfr.Conexion.iniciar("obtener");
+        Connection conexion = libres.pollFirst();
+        if (conexion == null) {
+            conexion = abrir();
+        }
+        if (conexion == null) {
+            long inicio = System.nanoTime();
+            try {
+                conexion = libres.pollFirst(esperaMaxMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrumpido esperando una conexión");
+            } finally {
+                Metricas.registrarTiempo("db.pool.espera", inicio);
+            }
+            if (conexion == null) {
+                Metricas.incrementar("db.pool.agotado");
+                throw new SQLException("No hay conexiones disponibles (pool de " + tamanoMaximo + " agotado)");
+            }
+        }
+        enUso.incrementAndGet();
+        evento.terminar(enUso.get(), abiertas.get());
+        return conexion;
+    }
+
+    /**
+     * Devuelve una conexión prestada. Las conexiones cerradas o rotas se descartan.
+     */
+    public void liberar(Connection conexion) {
+        if (conexion == null) {
+            return;
+        }
+        enUso.decrementAndGet();
+        try {
+            if (cerrado || conexion.isClosed()) {
+                descartar(conexion);
+                return;
+            }
+            if (!conexion.getAutoCommit()) {
+                conexion.rollback();
+                conexion.setAutoCommit(true);
+            }
+            libres.offerFirst(conexion);
+        } catch (SQLException e) {
+            descartar(conexion);
+        }
+    }
+
+    /**
+     * Abre una conexión nueva si no se llegó al máximo; devuelve null si ya están todas abiertas
+     */
+    private Connection abrir() throws SQLException {
+        int actuales;
+        do {
+            actuales = abiertas.get();
+            if (actuales >= tamanoMaximo) {
+                return null;
+            }
+        } while (!abiertas.compareAndSet(actuales, actuales + 1));
+
+        EventosJfr.Conexion evento = EventosJfr.Conexion.iniciar("abrir");
+        try {
+            return DriverManager.getConnection(url, usuario, password);
+        } catch (SQLException e) {
+            abiertas.decrementAndGet();
+            throw e;
+        } finally {
+            evento.terminar(enUso.get(), abiertas.get());
+        }
+    }
+
+    private void descartar(Connection conexion) {
+        EventosJfr.Conexion evento = EventosJfr.Conexion.iniciar("descartar");
+        abiertas.decrementAndGet();
+        try {
+            conexion.close();
+        } catch (SQLException ignorada) {
+            // La conexión ya estaba rota
+        } finally {
+            evento.terminar(enUso.get(), abiertas.get());
+        }
+    }
+
+    public void cerrar() {
+        cerrado = true;
+        Connection conexion;
+        int cerradas = 0;
+        while ((conexion = libres.pollFirst()) != null) {
+            descartar(conexion);
+            cerradas++;
+        }
+        if (cerradas > 0) {
+            System.out.println("✓ Conexión a base de datos cerrada");
+        }
+    }
+
+    public int getAbiertas() {
+        return abiertas.get();
+    }
+
+    public int getEnUso() {
+        return enUso.get();
+    }
+
+    public int getTamanoMaximo() {
+        return tamanoMaximo;
+    }
+}
@@ -0,0 +1,165 @@
+package servidor;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Etapa de calentamiento que corre antes de abrir el puerto, para que los primeros clientes
+ * no paguen el arranque en frío:
+ *
+ *   1. abre las conexiones del almacén y prepara sus sentencias
+ *   2. recarga las cachés de filas con los IDs guardados al apagar
+ *   3. pasa comandos de solo lectura (y comandos mal formados) por el despacho real hasta
+ *      que el JIT deja de compilar o se agota el plazo. Las lecturas de tablas completas van
+ *      una vez por ronda, y las consultas por ID no cuentan para la admisión de las cachés.
+ *
+ * Desactivable con -Dservidor.calentamiento=false.
+ */
+public final class Precalentamiento {
+    private static final boolean ACTIVO = Boolean.parseBoolean(System.getProperty("servidor.calentamiento", "true"));
+    private static final long MAX_MS = Long.getLong("servidor.calentamiento.maxMs", 5000L);
+    private static final String ARCHIVO = System.getProperty("servidor.calentamiento.archivo");
+
+    private static final int REPETICIONES_POR_RONDA = 100;
+    // Rondas seguidas sin compilaciones nuevas para dar el JIT por estable
+    private static final int RONDAS_ESTABLES = 3;
+    // Sin medición de compilación se hace una cantidad fija de rondas
+    private static final int RONDAS_SIN_MEDICION = 20;
+
+    // Ninguno modifica datos: los de escritura tienen formato incorrecto y se rechazan antes de la base
+    private static final String[] COMANDOS = {
+            "PING",
+            "CONSULTAR_UNIVERSIDAD|1",
+            "CONSULTAR_ESTUDIANTE|1",
+            "BUSCAR_UNIVERSIDAD|universidad|5",
+            "BUSCAR_ESTUDIANTE|garcia|5",
+            "FILTRAR_ESTUDIANTES|edad>",
+            "INSERTAR_ESTUDIANTE|calentamiento",
+            "ACTUALIZAR_UNIVERSIDAD|1",
+            "ELIMINAR_ESTUDIANTE|x",
+            "CALENTAMIENTO"
+    };
+    // Leen la tabla entera: una vez por ronda alcanza para compilar su camino
+    private static final String[] COMANDOS_POR_RONDA = {
+            "CONSULTAR_UNIVERSIDADES"
+    };
+
+    private Precalentamiento() {
+    }
+
+    /**
+     * Ejecuta el calentamiento; los errores se registran pero no impiden arrancar
+     *
+     * @param transporte "tcp" o "udp", para el archivo de claves y las métricas
+     * @param despachador procesa un comando igual que si llegara de un cliente
+     */
+    public static void ejecutar(String transporte, DatabaseManager dbManager, Function<String, String> despachador) {
+        if (!ACTIVO) {
+            return;
+        }
+        long inicio = System.nanoTime();
+
+        try {
+            dbManager.precalentar();
+            Log.info("🔥 Conexiones abiertas y sentencias preparadas en {} ms", milisDesde(inicio));
+        } catch (SQLException | RuntimeException e) {
+            Log.warn("⚠ No se pudo precalentar el almacén: {}", e.getMessage());
+        }
+
+        long inicioCache = System.nanoTime();
+        try {
+            int filas = dbManager.cargarClavesCache(archivo(transporte));
+            if (filas > 0) {
+                Log.info("🔥 {} fila(s) recargadas en caché en {} ms", filas, milisDesde(inicioCache));
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            Log.warn("⚠ No se pudo recargar la caché: {}", e.getMessage());
+        }
+
+        long inicioJit = System.nanoTime();
+        int rondas;
+        dbManager.comandosSinteticos(true);
+        try {
+            rondas = calentarDespacho(despachador, inicioJit + TimeUnit.MILLISECONDS.toNanos(MAX_MS));
+        } finally {
+            dbManager.comandosSinteticos(false);
+        }
+        Log.info("🔥 {} ronda(s) de comandos sintéticos en {} ms", rondas, milisDesde(inicioJit));
+
+        long duracion = milisDesde(inicio);
+        Metricas.registrarMedidor(transporte + ".calentamientoMs", () -> duracion);
+    }
+
+    private static int calentarDespacho(Function<String, String> despachador, long limite) {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean medir = jit != null && jit.isCompilationTimeMonitoringSupported();
+        long compilacionAnterior = medir ? jit.getTotalCompilationTime() : 0;
+        int estables = 0;
+        int rondas = 0;
+
+        while (System.nanoTime() < limite) {
+            for (String comando : COMANDOS_POR_RONDA) {
+                despachador.apply(comando);
+            }
+            for (int i = 0; i < REPETICIONES_POR_RONDA; i++) {
+                for (String comando : COMANDOS) {
+                    despachador.apply(comando);
+                }
+            }
+            rondas++;
+
+            if (!medir) {
+                if (rondas >= RONDAS_SIN_MEDICION) {
+                    break;
+                }
+                continue;
+            }
+            long compilacion = jit.getTotalCompilationTime();
+            estables = compilacion == compilacionAnterior ? estables + 1 : 0;
+            compilacionAnterior = compilacion;
+            if (estables >= RONDAS_ESTABLES) {
+                break;
+            }
+        }
+        return rondas;
+    }
+
+    /**
+     * Guarda los IDs de las cachés para el próximo arranque; se llama al detener el servidor,
+     * a veces dos veces a la par (gancho de apagado y fin del bucle)
+     */
+    public static synchronized void guardar(String transporte, DatabaseManager dbManager) {
+        if (!ACTIVO) {
+            return;
+        }
+        try {
+            dbManager.guardarClavesCache(archivo(transporte));
+        } catch (IOException e) {
+            Log.warn("⚠ No se pudieron guardar las claves de la caché: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Se llama con el puerto ya abierto: devuelve los milisegundos desde que arrancó la JVM
+     * y los deja publicados como métrica
+     */
+    public static long marcarListo(String transporte) {
+        long tiempo = ManagementFactory.getRuntimeMXBean().getUptime();
+        Metricas.registrarMedidor(transporte + ".tiempoHastaListoMs", () -> tiempo);
+        return tiempo;
+    }
+
+    private static Path archivo(String transporte) {
+        return Paths.get(ARCHIVO != null ? ARCHIVO : "cache-claves-" + transporte + ".bin");
+    }
+
+    private static long milisDesde(long inicioNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+    }
+}
@@ -0,0 +1,552 @@
+package servidor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Proxy que reparte conexiones TCP y peticiones UDP entre varias instancias de ServidorTCP
+ * y ServidorUDP. No interpreta los comandos: copia bytes en ambos sentidos.
+ *
+ * Políticas (-Dproxy.politica):
+ *   conexiones  el nodo sano con menos conexiones (o peticiones UDP) en curso
+ *   hash        hash consistente por dirección del cliente, con nodos virtuales; un cliente
+ *               vuelve siempre al mismo nodo mientras esté sano, y si cae solo se mueven sus claves
+ *
+ * Cada nodo se revisa con PING; se aparta tras varios fallos seguidos y vuelve tras varios éxitos.
+ *
+ * A cada nodo se le informa la dirección real del cliente con una cabecera PROXY (ver OrigenProxy),
+ * que los nodos solo aceptan si tienen a este proxy en -Dservidor.proxiesConfiables; así los
+ * límites por IP y el permiso de STATS siguen siendo por cliente. -Dproxy.enviarOrigen=false la omite.
+ *
+ *     java -Dproxy.nodosTcp=localhost:5100,localhost:5200 -Dproxy.nodosUdp=localhost:5101,localhost:5201
+ *          servidor.ProxyBalanceador
+ */
+public class ProxyBalanceador {
+    private static final int PUERTO_TCP = Integer.getInteger("proxy.puertoTcp", 6000);
+    private static final int PUERTO_UDP = Integer.getInteger("proxy.puertoUdp", 6001);
+    private static final String NODOS_TCP = System.getProperty("proxy.nodosTcp", "localhost:5000");
+    private static final String NODOS_UDP = System.getProperty("proxy.nodosUdp", "localhost:5001");
+    private static final String POLITICA = System.getProperty("proxy.politica", "conexiones");
+    private static final int NODOS_VIRTUALES = Integer.getInteger("proxy.nodosVirtuales", 100);
+    private static final boolean ENVIAR_ORIGEN =
+            Boolean.parseBoolean(System.getProperty("proxy.enviarOrigen", "true"));
+
+    private static final long CHEQUEO_MS = Long.getLong("proxy.chequeoMs", 2000L);
+    private static final int ESPERA_CHEQUEO_MS = Integer.getInteger("proxy.esperaChequeoMs", 1000);
+    private static final int FALLOS_PARA_APARTAR = Integer.getInteger("proxy.fallosParaApartar", 2);
+    private static final int EXITOS_PARA_VOLVER = Integer.getInteger("proxy.exitosParaVolver", 2);
+    private static final int ESPERA_CONEXION_MS = Integer.getInteger("proxy.esperaConexionMs", 2000);
+    // Menor que la espera del cliente UDP, para que reciba el error en lugar de agotar su plazo
+    private static final int ESPERA_UDP_MS = Integer.getInteger("proxy.esperaUdpMs", 4000);
+    // Peticiones UDP reenviadas a la vez (y sockets de reenvío) y cuántas pueden esperar turno
+    private static final int HILOS_UDP = Integer.getInteger("proxy.hilosUdp", 16);
+    private static final int COLA_UDP = Integer.getInteger("proxy.colaUdp", 256);
+    private static final int BUFFER_SIZE = 65535;
+
+    private final Grupo grupoTcp;
+    private final Grupo grupoUdp;
+    private final ExecutorService hilos;
+    private final ThreadPoolExecutor hilosUdp;
+    // Cada socket lleva una sola petición a la vez, así la respuesta que recibe es la de esa petición
+    private final BlockingQueue<DatagramSocket> socketsReenvio = new ArrayBlockingQueue<>(HILOS_UDP);
+    private final ScheduledExecutorService chequeos;
+    private ServerSocket serverSocket;
+    private DatagramSocket socketUdp;
+    private volatile boolean ejecutando = true;
+
+    public ProxyBalanceador() {
+        boolean hash = POLITICA.equalsIgnoreCase("hash");
+        grupoTcp = new Grupo("tcp", interpretarNodos(NODOS_TCP), hash);
+        grupoUdp = new Grupo("udp", interpretarNodos(NODOS_UDP), hash);
+
+        AtomicInteger numero = new AtomicInteger();
+        hilos = Executors.newCachedThreadPool(r -> {
+            Thread hilo = new Thread(r, "proxy-" + numero.getAndIncrement());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        AtomicInteger numeroUdp = new AtomicInteger();
+        hilosUdp = new ThreadPoolExecutor(HILOS_UDP, HILOS_UDP, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(COLA_UDP), r -> {
+                    Thread hilo = new Thread(r, "proxy-udp-" + numeroUdp.getAndIncrement());
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+        Metricas.registrarMedidor("proxy.udp.enCola", () -> hilosUdp.getQueue().size());
+        chequeos = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "proxy-chequeos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    private static List<Nodo> interpretarNodos(String lista) {
+        List<Nodo> nodos = new ArrayList<>();
+        for (String nodo : lista.split(",")) {
+            if (nodo.isBlank()) {
+                continue;
+            }
+            int separador = nodo.lastIndexOf(':');
+            if (separador < 0) {
+                throw new IllegalArgumentException("Nodo inválido (use host:puerto): " + nodo);
+            }
+            nodos.add(new Nodo(nodo.substring(0, separador).trim(), Integer.parseInt(nodo.substring(separador + 1).trim())));
+        }
+        return nodos;
+    }
+
+    // ==================== NODOS ====================
+
+    private static final class Nodo {
+        final String nombre;
+        final InetSocketAddress direccion;
+        final AtomicInteger enCurso = new AtomicInteger();
+        volatile boolean sano = true;
+        private int fallosSeguidos;
+        private int exitosSeguidos;
+
+        Nodo(String host, int puerto) {
+            this.nombre = host + ":" + puerto;
+            this.direccion = new InetSocketAddress(host, puerto);
+        }
+
+        synchronized void registrarExito() {
+            fallosSeguidos = 0;
+            if (!sano && ++exitosSeguidos >= EXITOS_PARA_VOLVER) {
+                sano = true;
+                Log.info("✓ Nodo {} de vuelta en el grupo", nombre);
+            }
+        }
+
+        synchronized void registrarFallo(String motivo) {
+            exitosSeguidos = 0;
+            if (sano && ++fallosSeguidos >= FALLOS_PARA_APARTAR) {
+                sano = false;
+                Log.warn("⚠ Nodo {} apartado: {}", nombre, motivo);
+            }
+        }
+    }
+
+    /**
+     * Nodos de un transporte con su política de elección
+     */
+    private static final class Grupo {
+        private final List<Nodo> nodos;
+        private final boolean hash;
+        private final TreeMap<Long, Nodo> anillo = new TreeMap<>();
+        private final AtomicInteger turno = new AtomicInteger();
+
+        Grupo(String transporte, List<Nodo> nodos, boolean hash) {
+            this.nodos = nodos;
+            this.hash = hash;
+            for (Nodo nodo : nodos) {
+                for (int v = 0; v < NODOS_VIRTUALES; v++) {
+                    anillo.put(hashClave(nodo.nombre + "#" + v), nodo);
+                }
+                Metricas.registrarMedidor("proxy." + transporte + "." + nodo.nombre + ".enCurso", nodo.enCurso::get);
+                Metricas.registrarMedidor("proxy." + transporte + "." + nodo.nombre + ".sano", () -> nodo.sano ? 1 : 0);
+            }
+        }
+
+        /**
+         * Elige un nodo sano que no esté en excluidos, o null si no queda ninguno
+         */
+        Nodo elegir(String clave, Set<Nodo> excluidos) {
+            if (hash) {
+                if (anillo.isEmpty()) {
+                    return null;
+                }
+                // Se recorre el anillo desde la clave hasta dar con un nodo utilizable
+                long h = hashClave(clave);
+                for (Map.Entry<Long, Nodo> entrada : anillo.tailMap(h, true).entrySet()) {
+                    if (utilizable(entrada.getValue(), excluidos)) {
+                        return entrada.getValue();
+                    }
+                }
+                for (Map.Entry<Long, Nodo> entrada : anillo.headMap(h, false).entrySet()) {
+                    if (utilizable(entrada.getValue(), excluidos)) {
+                        return entrada.getValue();
+                    }
+                }
+                return null;
+            }
+
+            // Menos en curso; los empates se alternan empezando cada vez por un nodo distinto
+            Nodo elegido = null;
+            int inicio = Math.floorMod(turno.getAndIncrement(), Math.max(1, nodos.size()));
+            for (int i = 0; i < nodos.size(); i++) {
+                Nodo nodo = nodos.get((inicio + i) % nodos.size());
+                if (utilizable(nodo, excluidos) && (elegido == null || nodo.enCurso.get() < elegido.enCurso.get())) {
+                    elegido = nodo;
+                }
+            }
+            return elegido;
+        }
+
+        private static boolean utilizable(Nodo nodo, Set<Nodo> excluidos) {
+            return nodo.sano && !excluidos.contains(nodo);
+        }
+    }
+
+    private static long hashClave(String clave) {
+        try {
+            byte[] resumen = MessageDigest.getInstance("MD5").digest(clave.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (resumen[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ==================== TCP ====================
+
+    private void aceptarTcp() {
+        while (ejecutando) {
+            try {
+                Socket cliente = serverSocket.accept();
+                Metricas.incrementar("proxy.tcp.conexiones");
+                hilos.execute(() -> atenderTcp(cliente));
+            } catch (IOException e) {
+                if (ejecutando) {
+                    Log.error("✗ Error al aceptar conexión: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Conecta al cliente con un nodo y copia en ambos sentidos hasta que uno cierre.
+     * Si el nodo elegido no acepta la conexión se prueba con el siguiente.
+     */
+    private void atenderTcp(Socket cliente) {
+        String clave = cliente.getInetAddress().getHostAddress();
+        Set<Nodo> probados = new HashSet<>();
+        Socket servidor = null;
+        Nodo nodo = null;
+        while (servidor == null) {
+            nodo = grupoTcp.elegir(clave, probados);
+            if (nodo == null) {
+                Metricas.incrementar("proxy.tcp.sinNodos");
+                try (Socket s = cliente) {
+                    new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8).println("ERROR: No hay servidores disponibles");
+                } catch (IOException e) {
+                    Log.warn("✗ Error al rechazar conexión: {}", e.getMessage());
+                }
+                return;
+            }
+            probados.add(nodo);
+            try {
+                Socket s = new Socket();
+                s.connect(nodo.direccion, ESPERA_CONEXION_MS);
+                if (ENVIAR_ORIGEN) {
+                    byte[] cabecera = (OrigenProxy.cabecera(cliente.getInetAddress(), cliente.getPort()) + "\n")
+                            .getBytes(StandardCharsets.UTF_8);
+                    s.getOutputStream().write(cabecera);
+                }
+                servidor = s;
+            } catch (IOException e) {
+                nodo.registrarFallo(e.getMessage());
+                Metricas.incrementar("proxy.tcp.reintentos");
+            }
+        }
+
+        Nodo destino = nodo;
+        Socket conexionServidor = servidor;
+        destino.enCurso.incrementAndGet();
+        Log.info("→ {} ⇄ {}", clave, destino.nombre);
+        try {
+            hilos.execute(() -> copiar(cliente, conexionServidor));
+            copiar(conexionServidor, cliente);
+        } finally {
+            destino.enCurso.decrementAndGet();
+        }
+    }
+
+    /**
+     * Copia de origen a destino; al terminar cierra los dos sockets para cortar también el otro sentido
+     */
+    private static void copiar(Socket origen, Socket destino) {
+        byte[] buffer = new byte[8192];
+        try {
+            InputStream entrada = origen.getInputStream();
+            OutputStream salida = destino.getOutputStream();
+            int leidos;
+            while ((leidos = entrada.read(buffer)) != -1) {
+                salida.write(buffer, 0, leidos);
+                salida.flush();
+            }
+        } catch (IOException e) {
+            // El otro sentido cerró los sockets
+        } finally {
+            cerrar(origen);
+            cerrar(destino);
+        }
+    }
+
+    private static void cerrar(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ya estaba cerrado
+        }
+    }
+
+    // ==================== UDP ====================
+
+    private void recibirUdp() {
+        while (ejecutando) {
+            try {
+                DatagramPacket paquete = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+                socketUdp.receive(paquete);
+                Metricas.incrementar("proxy.udp.peticiones");
+                try {
+                    hilosUdp.execute(() -> reenviarUdp(paquete));
+                } catch (RejectedExecutionException e) {
+                    Metricas.incrementar("proxy.udp.rechazadas");
+                    responderUdp(ControlAdmision.mensajeOcupado(100).getBytes(StandardCharsets.UTF_8), paquete);
+                }
+            } catch (IOException e) {
+                if (ejecutando) {
+                    Log.error("✗ Error al recibir petición UDP: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reenvía la petición por uno de los sockets de reenvío. Mientras el hilo lo tiene nadie más
+     * envía por él, y solo se acepta lo que llega desde el nodo elegido.
+     */
+    private void reenviarUdp(DatagramPacket peticion) {
+        String clave = peticion.getAddress().getHostAddress() + ":" + peticion.getPort();
+        byte[] respuesta;
+        Nodo nodo = grupoUdp.elegir(clave, Set.of());
+        if (nodo == null) {
+            Metricas.incrementar("proxy.udp.sinNodos");
+            respuesta = "ERROR: No hay servidores disponibles".getBytes(StandardCharsets.UTF_8);
+        } else {
+            DatagramSocket socket = socketsReenvio.poll();
+            if (socket == null) {
+                // Solo pasa si no se pudo reponer un socket descartado
+                Metricas.incrementar("proxy.udp.rechazadas");
+                respuesta = ControlAdmision.mensajeOcupado(100).getBytes(StandardCharsets.UTF_8);
+            } else {
+                boolean reutilizable = false;
+                nodo.enCurso.incrementAndGet();
+                try {
+                    respuesta = intercambiar(socket, datosConOrigen(peticion), nodo);
+                    reutilizable = true;
+                } catch (SocketTimeoutException e) {
+                    Metricas.incrementar("proxy.udp.sinRespuesta");
+                    nodo.registrarFallo("sin respuesta a una petición");
+                    respuesta = ("ERROR: El servidor " + nodo.nombre + " no respondió").getBytes(StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    nodo.registrarFallo(e.getMessage());
+                    respuesta = ("ERROR: No se pudo reenviar la petición - " + e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                } finally {
+                    nodo.enCurso.decrementAndGet();
+                    devolverSocket(socket, reutilizable);
+                }
+            }
+        }
+        responderUdp(respuesta, peticion);
+    }
+
+    /**
+     * Envía y espera la respuesta del nodo hasta ESPERA_UDP_MS en total, descartando lo que
+     * llegue desde otra dirección
+     */
+    private static byte[] intercambiar(DatagramSocket socket, byte[] datos, Nodo nodo) throws IOException {
+        socket.send(new DatagramPacket(datos, datos.length, nodo.direccion));
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_UDP_MS);
+        DatagramPacket paquete = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+        while (true) {
+            long restanteMs = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+            if (restanteMs <= 0) {
+                throw new SocketTimeoutException("Sin respuesta de " + nodo.nombre);
+            }
+            socket.setSoTimeout((int) restanteMs);
+            paquete.setLength(BUFFER_SIZE);
+            socket.receive(paquete);
+            if (nodo.direccion.equals(paquete.getSocketAddress())) {
+                return Arrays.copyOf(paquete.getData(), paquete.getLength());
+            }
+            Metricas.incrementar("proxy.udp.respuestasAjenas");
+        }
+    }
+
+    /**
+     * Tras un error el socket se cambia por uno nuevo: una respuesta tardía llegaría a la
+     * petición siguiente
+     */
+    private void devolverSocket(DatagramSocket socket, boolean reutilizable) {
+        if (!reutilizable) {
+            try {
+                DatagramSocket nuevo = new DatagramSocket();
+                socket.close();
+                socket = nuevo;
+            } catch (SocketException e) {
+                Log.warn("⚠ No se pudo reponer un socket de reenvío UDP: {}", e.getMessage());
+                socket.close();
+                return;
+            }
+        }
+        if (!ejecutando) {
+            socket.close();
+            return;
+        }
+        socketsReenvio.offer(socket);
+    }
+
+    private void responderUdp(byte[] respuesta, DatagramPacket peticion) {
+        try {
+            socketUdp.send(new DatagramPacket(respuesta, respuesta.length, peticion.getSocketAddress()));
+        } catch (IOException e) {
+            Log.error("✗ Error al responder al cliente UDP: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * La petición del cliente, precedida por la línea con su dirección si se informa el origen
+     */
+    private static byte[] datosConOrigen(DatagramPacket peticion) {
+        if (!ENVIAR_ORIGEN) {
+            return Arrays.copyOf(peticion.getData(), peticion.getLength());
+        }
+        byte[] cabecera = (OrigenProxy.cabecera(peticion.getAddress(), peticion.getPort()) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] datos = Arrays.copyOf(cabecera, cabecera.length + peticion.getLength());
+        System.arraycopy(peticion.getData(), 0, datos, cabecera.length, peticion.getLength());
+        return datos;
+    }
+
+    // ==================== CHEQUEOS ====================
+
+    private void chequearNodos() {
+        for (Nodo nodo : grupoTcp.nodos) {
+            try (Socket socket = new Socket()) {
+                socket.connect(nodo.direccion, ESPERA_CHEQUEO_MS);
+                socket.setSoTimeout(ESPERA_CHEQUEO_MS);
+                PrintWriter salida = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                BufferedReader entrada = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                salida.println("PING");
+                String respuesta = entrada.readLine();
+                salida.println("SALIR");
+                registrarChequeo(nodo, respuesta);
+            } catch (IOException e) {
+                nodo.registrarFallo(e.getMessage());
+            }
+        }
+        for (Nodo nodo : grupoUdp.nodos) {
+            try (DatagramSocket socket = new DatagramSocket()) {
+                socket.setSoTimeout(ESPERA_CHEQUEO_MS);
+                byte[] ping = "PING".getBytes(StandardCharsets.UTF_8);
+                socket.send(new DatagramPacket(ping, ping.length, nodo.direccion));
+                DatagramPacket paquete = new DatagramPacket(new byte[64], 64);
+                socket.receive(paquete);
+                registrarChequeo(nodo, new String(paquete.getData(), 0, paquete.getLength(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                nodo.registrarFallo(e.getMessage());
+            }
+        }
+    }
+
+    private static void registrarChequeo(Nodo nodo, String respuesta) {
+        if ("PONG".equals(respuesta)) {
+            nodo.registrarExito();
+        } else {
+            nodo.registrarFallo("respuesta inesperada a PING: " + respuesta);
+        }
+    }
+
+    // ==================== CICLO DE VIDA ====================
+
+    public void iniciar() throws IOException {
+        serverSocket = new ServerSocket(PUERTO_TCP);
+        socketUdp = new DatagramSocket(PUERTO_UDP);
+        for (int i = 0; i < HILOS_UDP; i++) {
+            socketsReenvio.add(new DatagramSocket());
+        }
+
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║   PROXY BALANCEADOR INICIADO           ║");
+        System.out.println("║   TCP: " + PUERTO_TCP + "  UDP: " + PUERTO_UDP + "                 ║");
+        System.out.println("╚════════════════════════════════════════╝");
+        System.out.println("Política: " + POLITICA);
+        System.out.println("Nodos TCP: " + NODOS_TCP);
+        System.out.println("Nodos UDP: " + NODOS_UDP + "\n");
+
+        Metricas.iniciarVolcadoPeriodico();
+        chequeos.scheduleWithFixedDelay(this::chequearNodos, 0, CHEQUEO_MS, TimeUnit.MILLISECONDS);
+        hilos.execute(this::recibirUdp);
+        aceptarTcp();
+    }
+
+    public void detener() {
+        ejecutando = false;
+        chequeos.shutdownNow();
+        hilos.shutdownNow();
+        hilosUdp.shutdownNow();
+        for (DatagramSocket socket : socketsReenvio) {
+            socket.close();
+        }
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Error al cerrar proxy: " + e.getMessage());
+        }
+        if (socketUdp != null) {
+            socketUdp.close();
+        }
+        System.out.println("\n✓ Proxy detenido");
+    }
+
+    public static void main(String[] args) {
+        ProxyBalanceador proxy = new ProxyBalanceador();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\n⚠ Cerrando proxy...");
+            proxy.detener();
+        }));
+        try {
+            proxy.iniciar();
+        } catch (IOException e) {
+            System.err.println("✗ Error al iniciar proxy: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package servidor;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Rueda de temporizadores (hashed timing wheel). Cada vuelta del hilo de la rueda revisa solo
+ * la casilla del tick actual, así que el costo por tick no depende de cuántas sesiones existen.
+ *
+ * Los temporizadores no se reprograman en cada actividad: al llegar a su casilla se consulta
+ * el vencimiento real y, si todavía no venció, se vuelven a colocar más adelante.
+ */
+public class RuedaTemporizadores {
+
+    /**
+     * Elemento que la rueda vigila
+     */
+    public interface Temporizador {
+        /** Momento de vencimiento actual, en System.nanoTime() */
+        long vencimiento();
+
+        /** false si ya no hace falta vigilarlo (por ejemplo, sesión cerrada) */
+        boolean activo();
+
+        /** Se invoca en el hilo de la rueda cuando venció */
+        void vencer();
+    }
+
+    private static final class Entrada {
+        final Temporizador temporizador;
+        long rondas;
+
+        Entrada(Temporizador temporizador) {
+            this.temporizador = temporizador;
+        }
+    }
+
+    private final long tickNanos;
+    private final ArrayDeque<Entrada>[] casillas;
+    private final ConcurrentLinkedQueue<Temporizador> nuevos = new ConcurrentLinkedQueue<>();
+    private final String nombre;
+    private LongConsumer alTerminarTick = vencidos -> { };
+
+    private volatile boolean ejecutando;
+    private Thread hilo;
+    private long tickActual;
+    private long inicio;
+
+    public RuedaTemporizadores(String nombre, int cantidadCasillas, long tickMs) {
+        this.nombre = nombre;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.casillas = crearCasillas(cantidadCasillas);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<Entrada>[] crearCasillas(int cantidad) {
+        ArrayDeque<Entrada>[] casillas = (ArrayDeque<Entrada>[]) new ArrayDeque<?>[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            casillas[i] = new ArrayDeque<>();
+        }
+        return casillas;
+    }
+
+    /**
+     * Acción a ejecutar al final de cada tick con la cantidad de temporizadores vencidos en él
+     */
+    public void setAlTerminarTick(LongConsumer alTerminarTick) {
+        this.alTerminarTick = alTerminarTick;
+    }
+
+    /**
+     * Agrega un temporizador; se puede llamar desde cualquier hilo
+     */
+    public void programar(Temporizador temporizador) {
+        nuevos.add(temporizador);
+    }
+
+    public synchronized void iniciar() {
+        if (ejecutando) {
+            return;
+        }
+        ejecutando = true;
+        inicio = System.nanoTime();
+        hilo = new Thread(this::girar, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    public synchronized void detener() {
+        ejecutando = false;
+        if (hilo != null) {
+            hilo.interrupt();
+        }
+    }
+
+    private void girar() {
+        while (ejecutando) {
+            long proximoTick = inicio + (tickActual + 1) * tickNanos;
+            long espera = proximoTick - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tickActual++;
+
+            Temporizador nuevo;
+            while ((nuevo = nuevos.poll()) != null) {
+                colocar(new Entrada(nuevo), System.nanoTime());
+            }
+
+            long vencidos = procesarCasilla();
+            try {
+                alTerminarTick.accept(vencidos);
+            } catch (RuntimeException e) {
+                Log.error("✗ Error en rueda {}: {}", nombre, e.getMessage());
+            }
+        }
+    }
+
+    private long procesarCasilla() {
+        ArrayDeque<Entrada> casilla = casillas[(int) (tickActual % casillas.length)];
+        long ahora = System.nanoTime();
+        long vencidos = 0;
+        int revisar = casilla.size();
+
+        Iterator<Entrada> it = casilla.iterator();
+        ArrayDeque<Entrada> reprogramar = new ArrayDeque<>();
+        while (it.hasNext() && revisar-- > 0) {
+            Entrada entrada = it.next();
+            if (entrada.rondas > 0) {
+                entrada.rondas--;
+                continue;
+            }
+            it.remove();
+            Temporizador t = entrada.temporizador;
+            if (!t.activo()) {
+                continue;
+            }
+            if (t.vencimiento() - ahora <= 0) {
+                vencidos++;
+                try {
+                    t.vencer();
+                } catch (RuntimeException e) {
+                    Log.error("✗ Error al vencer temporizador en {}: {}", nombre, e.getMessage());
+                }
+            } else {
+                reprogramar.add(entrada);
+            }
+        }
+        for (Entrada entrada : reprogramar) {
+            colocar(entrada, ahora);
+        }
+        return vencidos;
+    }
+
+    private void colocar(Entrada entrada, long ahora) {
+        long ticks = Math.max(1, (entrada.temporizador.vencimiento() - ahora + tickNanos - 1) / tickNanos);
+        entrada.rondas = (ticks - 1) / casillas.length;
+        casillas[(int) ((tickActual + ticks) % casillas.length)].add(entrada);
+    }
+}
@@ -2,19 +2,87 @@ package servidor;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * Servidor TCP para manejar conexiones de clientes
  */
 public class ServidorTCP {
-    private static final int PUERTO = 5000;
+    private static final int PUERTO = Integer.getInteger("servidor.puertoTcp", 5000);
+
+    // Control de admisión
+    private static final int MAX_CONEXIONES = Integer.getInteger("servidor.maxConexiones", 200);
+    private static final int COLA_CONEXIONES = Integer.getInteger("servidor.colaConexiones", 100);
+    private static final int MAX_OPERACIONES_BD = Integer.getInteger("servidor.maxOperacionesBD", 32);
+    private static final long ESPERA_MAX_MS = Long.getLong("servidor.esperaMaxMs", 2000L);
+
+    // Revisión de sesiones inactivas: una casilla por tick de la rueda
+    private static final long TICK_INACTIVIDAD_MS = Long.getLong("servidor.tickInactividadMs", 1000L);
+    private static final int CASILLAS_INACTIVIDAD = 512;
+
     private ServerSocket serverSocket;
     private DatabaseManager dbManager;
-    private boolean ejecutando;
+    private NotificadorInvalidaciones notificador;
+    private ControlAdmision admision;
+    private ThreadPoolExecutor hilosClientes;
+    // Rechaza a tiempo las conexiones que siguen en la cola al vencer su plazo
+    private final ScheduledThreadPoolExecutor plazosCola;
+    private RuedaTemporizadores ruedaInactividad;
+    private final LimitadorTasa limitador;
+    private volatile boolean ejecutando;
+    // Con la base compartida, el calentamiento y el cierre de la base los hace ServidorUnificado
+    private final boolean baseCompartida;
 
     public ServidorTCP() {
-        dbManager = new DatabaseManager();
+        this(new DatabaseManager(), new LimitadorTasa(), MAX_CONEXIONES, false);
+    }
+
+    /**
+     * @param limitador límites de tasa por IP, que pueden compartirse con otro transporte
+     * @param maxConexiones hilos para atender clientes; cada conexión ocupa uno mientras dura
+     * @param baseCompartida si la base la comparte con otro transporte y la cierra quien la creó
+     */
+    ServidorTCP(DatabaseManager dbManager, LimitadorTasa limitador, int maxConexiones, boolean baseCompartida) {
+        this.dbManager = dbManager;
+        this.limitador = limitador;
+        this.baseCompartida = baseCompartida;
+        notificador = new NotificadorInvalidaciones();
+        dbManager.agregarOyente(notificador);
+        admision = new ControlAdmision(MAX_OPERACIONES_BD, ESPERA_MAX_MS);
         ejecutando = true;
+
+        // Un hilo por cliente hasta maxConexiones; las demás conexiones esperan en una cola acotada
+        hilosClientes = new ThreadPoolExecutor(maxConexiones, maxConexiones, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(COLA_CONEXIONES));
+        hilosClientes.allowCoreThreadTimeOut(true);
+        plazosCola = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread hilo = new Thread(r, "tcp-plazos-cola");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        plazosCola.setRemoveOnCancelPolicy(true);
+
+        ruedaInactividad = new RuedaTemporizadores("rueda-inactividad", CASILLAS_INACTIVIDAD, TICK_INACTIVIDAD_MS);
+        ruedaInactividad.setAlTerminarTick(reclamadas -> {
+            if (reclamadas > 0) {
+                Log.info("🧹 {} sesión(es) inactiva(s) reclamada(s); conexiones activas: {}",
+                        reclamadas, hilosClientes.getActiveCount());
+            }
+        });
+
+        Metricas.registrarMedidor("tcp.conexiones.activas",
+                () -> Metricas.valor("tcp.conexiones.abiertas") - Metricas.valor("tcp.conexiones.cerradas"));
+        Metricas.registrarMedidor("tcp.suscriptores.invalidacion", notificador::getCantidadSuscriptores);
+        Metricas.registrarMedidor("tcp.hilos.activos", hilosClientes::getActiveCount);
+        Metricas.registrarMedidor("tcp.conexiones.enCola", () -> hilosClientes.getQueue().size());
     }
 
     /**
@@ -22,30 +90,10 @@ public class ServidorTCP {
      */
     public void iniciar() {
         try {
-            serverSocket = new ServerSocket(PUERTO);
-            System.out.println("╔════════════════════════════════════════╗");
-            System.out.println("║   SERVIDOR TCP INICIADO                ║");
-            System.out.println("║   Puerto: " + PUERTO + "                        ║");
-            System.out.println("║   Esperando conexiones...              ║");
-            System.out.println("╚════════════════════════════════════════╝\n");
-
-            while (ejecutando) {
-                try {
-                    Socket clienteSocket = serverSocket.accept();
-                    System.out.println("→ Cliente conectado desde: " +
-                            clienteSocket.getInetAddress().getHostAddress());
-
-                    // Crear un hilo para manejar cada cliente
-                    Thread hiloCliente = new Thread(new ClientHandler(clienteSocket, dbManager));
-                    hiloCliente.start();
-
-                } catch (IOException e) {
-                    if (ejecutando) {
-                        System.err.println("✗ Error al aceptar conexión: " + e.getMessage());
-                    }
-                }
-            }
-
+            Precalentamiento.ejecutar("tcp", dbManager, despachador());
+            abrir();
+            System.out.println("✓ Listo en " + Precalentamiento.marcarListo("tcp") + " ms desde el arranque");
+            atender();
         } catch (IOException e) {
             System.err.println("✗ Error al iniciar servidor TCP: " + e.getMessage());
             e.printStackTrace();
@@ -54,16 +102,133 @@ public class ServidorTCP {
         }
     }
 
+    /**
+     * Procesa comandos como lo haría un cliente, para el calentamiento
+     */
+    Function<String, String> despachador() {
+        return new ClientHandler(dbManager, notificador, admision, ruedaInactividad)::procesarConAdmision;
+    }
+
+    /**
+     * Abre el puerto sin empezar a aceptar conexiones
+     */
+    void abrir() throws IOException {
+        serverSocket = new ServerSocket(PUERTO);
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║   SERVIDOR TCP INICIADO                ║");
+        System.out.println("║   Puerto: " + PUERTO + "                        ║");
+        System.out.println("║   Esperando conexiones...              ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+    }
+
+    /**
+     * Acepta conexiones hasta que se detiene el servidor
+     */
+    void atender() {
+        Metricas.iniciarVolcadoPeriodico();
+        ruedaInactividad.iniciar();
+
+        while (ejecutando) {
+            try {
+                Socket clienteSocket = serverSocket.accept();
+                Metricas.incrementar("tcp.conexiones.aceptadas");
+                Log.info("→ Cliente conectado desde: {}", clienteSocket.getInetAddress().getHostAddress());
+
+                ClientHandler handler = new ClientHandler(clienteSocket, dbManager, notificador, admision,
+                        ruedaInactividad, limitador);
+                ConexionEnCola conexion = new ConexionEnCola(clienteSocket, handler);
+                try {
+                    hilosClientes.execute(conexion);
+                    conexion.programarPlazo();
+                } catch (RejectedExecutionException e) {
+                    Metricas.incrementar("tcp.admision.conexionesRechazadas");
+                    rechazarConexion(clienteSocket);
+                }
+
+            } catch (IOException e) {
+                if (ejecutando) {
+                    Log.error("✗ Error al aceptar conexión: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Conexión aceptada que espera un hilo libre. Si al vencer el plazo sigue en la cola, se
+     * quita de ella y se rechaza en ese momento, aunque todos los hilos sigan ocupados.
+     */
+    private class ConexionEnCola implements Runnable {
+        private final Socket socket;
+        private final ClientHandler handler;
+        private final long encoladaEn = System.nanoTime();
+        // La toma quien llegue primero: un hilo libre o el vencimiento del plazo
+        private final AtomicBoolean tomada = new AtomicBoolean();
+        private volatile ScheduledFuture<?> plazo;
+
+        ConexionEnCola(Socket socket, ClientHandler handler) {
+            this.socket = socket;
+            this.handler = handler;
+        }
+
+        void programarPlazo() {
+            if (!tomada.get()) {
+                plazo = plazosCola.schedule(this::vencer, ESPERA_MAX_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void vencer() {
+            if (!tomada.compareAndSet(false, true)) {
+                return;
+            }
+            hilosClientes.remove(this);
+            Metricas.incrementar("tcp.admision.conexionesVencidas");
+            rechazarConexion(socket);
+        }
+
+        @Override
+        public void run() {
+            if (!tomada.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> pendiente = plazo;
+            if (pendiente != null) {
+                pendiente.cancel(false);
+            }
+            Metricas.histograma("tcp.admision.esperaConexion").registrar(System.nanoTime() - encoladaEn);
+            handler.run();
+        }
+    }
+
+    /**
+     * Responde "servidor ocupado" y cierra la conexión sin atenderla
+     */
+    private void rechazarConexion(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(1000);
+            PrintWriter salida = new PrintWriter(s.getOutputStream(), true, StandardCharsets.UTF_8);
+            salida.println(ControlAdmision.mensajeOcupado(ESPERA_MAX_MS));
+        } catch (IOException e) {
+            Log.warn("✗ Error al rechazar conexión: {}", e.getMessage());
+        }
+    }
+
     /**
      * Detiene el servidor
      */
     public void detener() {
         ejecutando = false;
+        hilosClientes.shutdown();
+        plazosCola.shutdownNow();
+        ruedaInactividad.detener();
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-            dbManager.cerrarConexion();
+            if (!baseCompartida) {
+                limitador.cerrar();
+                Precalentamiento.guardar("tcp", dbManager);
+                dbManager.cerrarConexion();
+            }
             System.out.println("\n✓ Servidor TCP detenido");
         } catch (IOException e) {
             System.err.println("✗ Error al cerrar servidor: " + e.getMessage());
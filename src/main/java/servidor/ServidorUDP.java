@@ -2,79 +2,221 @@ package servidor;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * Servidor UDP para manejar peticiones de clientes
  */
 public class ServidorUDP {
-    private static final int PUERTO = 5001;
+    private static final int PUERTO = Integer.getInteger("servidor.puertoUdp", 5001);
     private static final int BUFFER_SIZE = 65535;
+
+    // Hilos que procesan peticiones; con 1 se atienden en el mismo hilo que recibe
+    private static final int HILOS = Integer.getInteger("servidor.hilosUdp", 1);
+    private static final int COLA_PETICIONES = Integer.getInteger("servidor.colaUdp", 256);
+
     private DatagramSocket socket;
     private DatabaseManager dbManager;
-    private boolean ejecutando;
+    private volatile boolean ejecutando;
+    private final ThreadPoolExecutor hilosPeticiones;
+    private final LimitadorTasa limitador;
+    // Avisos de cambios por multicast; null si no hay grupo configurado
+    private NotificadorMulticast avisos;
+    // Con la base compartida, el calentamiento y el cierre de la base los hace ServidorUnificado
+    private final boolean baseCompartida;
 
     public ServidorUDP() {
-        dbManager = new DatabaseManager();
+        this(new DatabaseManager(), new LimitadorTasa(), HILOS, false);
+    }
+
+    /**
+     * @param limitador límites de tasa por IP, que pueden compartirse con otro transporte
+     * @param hilos hilos que procesan peticiones en paralelo
+     * @param baseCompartida si la base la comparte con otro transporte y la cierra quien la creó
+     */
+    ServidorUDP(DatabaseManager dbManager, LimitadorTasa limitador, int hilos, boolean baseCompartida) {
+        this.dbManager = dbManager;
+        this.limitador = limitador;
+        this.baseCompartida = baseCompartida;
         ejecutando = true;
+
+        if (hilos > 1) {
+            hilosPeticiones = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(COLA_PETICIONES), r -> {
+                        Thread hilo = new Thread(r, "udp-peticiones");
+                        hilo.setDaemon(true);
+                        return hilo;
+                    });
+            hilosPeticiones.allowCoreThreadTimeOut(true);
+            Metricas.registrarMedidor("udp.hilos.activos", hilosPeticiones::getActiveCount);
+            Metricas.registrarMedidor("udp.peticiones.enCola", () -> hilosPeticiones.getQueue().size());
+        } else {
+            hilosPeticiones = null;
+        }
     }
 
     public void iniciar() {
         try {
-            socket = new DatagramSocket(PUERTO);
-            System.out.println("╔════════════════════════════════════════╗");
-            System.out.println("║   SERVIDOR UDP INICIADO                ║");
-            System.out.println("║   Puerto: " + PUERTO + "                        ║");
-            System.out.println("║   Esperando peticiones...              ║");
-            System.out.println("╚════════════════════════════════════════╝\n");
-
-            byte[] buffer = new byte[BUFFER_SIZE];
+            Precalentamiento.ejecutar("udp", dbManager, despachador());
+            abrir();
+            System.out.println("✓ Listo en " + Precalentamiento.marcarListo("udp") + " ms desde el arranque");
+            atender();
+        } catch (SocketException e) {
+            System.err.println("✗ Error al crear socket UDP: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            detener();
+        }
+    }
 
-            while (ejecutando) {
-                try {
-                    DatagramPacket paqueteRecibido = new DatagramPacket(buffer, buffer.length);
-                    socket.receive(paqueteRecibido);
+    /**
+     * Procesa comandos como lo haría una petición local, para el calentamiento
+     */
+    Function<String, String> despachador() {
+        return comando -> procesarComando(comando, InetAddress.getLoopbackAddress());
+    }
 
-                    String comando = new String(paqueteRecibido.getData(), 0,
-                            paqueteRecibido.getLength());
+    /**
+     * Abre el puerto sin empezar a recibir peticiones
+     */
+    void abrir() throws SocketException {
+        socket = new DatagramSocket(PUERTO);
+        // Después del calentamiento, para no anunciar sus escrituras
+        avisos = NotificadorMulticast.crear();
+        if (avisos != null) {
+            dbManager.agregarOyente(avisos);
+        }
+        System.out.println("╔════════════════════════════════════════╗");
+        System.out.println("║   SERVIDOR UDP INICIADO                ║");
+        System.out.println("║   Puerto: " + PUERTO + "                        ║");
+        System.out.println("║   Esperando peticiones...              ║");
+        System.out.println("╚════════════════════════════════════════╝\n");
+    }
 
-                    InetAddress direccionCliente = paqueteRecibido.getAddress();
-                    int puertoCliente = paqueteRecibido.getPort();
+    /**
+     * Recibe peticiones hasta que se detiene el servidor
+     */
+    void atender() {
+        Metricas.iniciarVolcadoPeriodico();
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        while (ejecutando) {
+            try {
+                DatagramPacket paqueteRecibido = new DatagramPacket(buffer, buffer.length);
+                socket.receive(paqueteRecibido);
+                long recibido = System.nanoTime();
+
+                if (hilosPeticiones == null) {
+                    responder(paqueteRecibido, recibido);
+                } else {
+                    try {
+                        hilosPeticiones.execute(() -> responder(paqueteRecibido, recibido));
+                    } catch (RejectedExecutionException e) {
+                        Metricas.incrementar("udp.admision.peticionesRechazadas");
+                        enviar(ControlAdmision.mensajeOcupado(100), paqueteRecibido);
+                    }
+                }
 
-                    System.out.println("→ Petición UDP recibida desde: " +
-                            direccionCliente.getHostAddress() + ":" + puertoCliente);
-                    System.out.println("📨 Comando: " + comando);
+                // El paquete recibido puede seguir en uso en otro hilo
+                buffer = new byte[BUFFER_SIZE];
 
-                    String respuesta = procesarComando(comando);
+            } catch (IOException e) {
+                if (ejecutando) {
+                    Log.error("✗ Error al procesar petición: {}", e.getMessage());
+                }
+            }
+        }
+    }
 
-                    byte[] datosRespuesta = respuesta.getBytes();
-                    DatagramPacket paqueteRespuesta = new DatagramPacket(
-                            datosRespuesta,
-                            datosRespuesta.length,
-                            direccionCliente,
-                            puertoCliente
-                    );
+    private void responder(DatagramPacket paqueteRecibido, long recibido) {
+        String comando = new String(paqueteRecibido.getData(), 0,
+                paqueteRecibido.getLength(), StandardCharsets.UTF_8);
+
+        InetAddress direccionCliente = paqueteRecibido.getAddress();
+        int puertoCliente = paqueteRecibido.getPort();
+        if (OrigenProxy.esCabecera(comando)) {
+            // La respuesta vuelve al proxy; la dirección informada vale para límites, STATS y registros
+            int finCabecera = comando.indexOf('\n');
+            InetSocketAddress reenviado = OrigenProxy.leer(
+                    finCabecera < 0 ? comando : comando.substring(0, finCabecera), direccionCliente);
+            comando = finCabecera < 0 ? "" : comando.substring(finCabecera + 1);
+            if (reenviado != null) {
+                direccionCliente = reenviado.getAddress();
+                puertoCliente = reenviado.getPort();
+            }
+        }
 
-                    socket.send(paqueteRespuesta);
-                    System.out.println("📤 Respuesta enviada al cliente\n");
+        boolean registrar = Log.registrarComando();
+        if (registrar) {
+            Log.info("→ Petición UDP recibida desde: {}:{}", direccionCliente.getHostAddress(), puertoCliente);
+            Log.info("📨 Comando: {}", comando);
+        }
 
-                    buffer = new byte[BUFFER_SIZE];
+        long inicio = Traza.iniciar();
+        Traza.sumar(Traza.Fase.RECEPCION, recibido);
+        EventosJfr.Comando evento = EventosJfr.Comando.iniciar();
+        String respuesta = verificarLimite(comando, direccionCliente);
+        if (respuesta == null) {
+            respuesta = procesarComando(comando, direccionCliente);
+        }
 
-                } catch (IOException e) {
-                    if (ejecutando) {
-                        System.err.println("✗ Error al procesar petición: " + e.getMessage());
-                    }
-                }
+        try {
+            long inicioEnvio = Traza.marcar();
+            int enviados = enviar(respuesta, paqueteRecibido);
+            Traza.sumar(Traza.Fase.ENVIO, inicioEnvio);
+            Metricas.registrarComando("udp", comando, inicio, respuesta);
+            Metricas.sumar("udp.bytes.enviados", enviados);
+            if (registrar) {
+                Log.info("📤 Respuesta enviada al cliente");
+            }
+        } catch (IOException e) {
+            if (ejecutando) {
+                Log.error("✗ Error al procesar petición: {}", e.getMessage());
             }
+        }
+        String cliente = direccionCliente.getHostAddress() + ":" + puertoCliente;
+        evento.terminar("udp", cliente, comando, respuesta);
+        Traza.terminar("udp", cliente, comando, recibido);
+    }
 
-        } catch (SocketException e) {
-            System.err.println("✗ Error al crear socket UDP: " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            detener();
+    /**
+     * UDP no tiene conexiones: el límite es solo por IP
+     *
+     * @return null si la petición puede seguir, o el ERROR para responder
+     */
+    private String verificarLimite(String comando, InetAddress origen) {
+        LimitadorTasa.Tipo tipo = LimitadorTasa.clasificar(comando);
+        if (tipo == null) {
+            return null;
         }
+        String rechazo = limitador.verificar(origen.getHostAddress(), tipo);
+        if (rechazo != null) {
+            Metricas.incrementar("udp.comandos.limitados");
+        }
+        return rechazo;
+    }
+
+    private int enviar(String respuesta, DatagramPacket paqueteRecibido) throws IOException {
+        byte[] datosRespuesta = respuesta.getBytes(StandardCharsets.UTF_8);
+        DatagramPacket paqueteRespuesta = new DatagramPacket(
+                datosRespuesta,
+                datosRespuesta.length,
+                paqueteRecibido.getAddress(),
+                paqueteRecibido.getPort()
+        );
+
+        socket.send(paqueteRespuesta);
+        return datosRespuesta.length;
     }
 
-    private String procesarComando(String comando) {
+    private String procesarComando(String comando, InetAddress origen) {
+        long inicioAnalisis = Traza.marcar();
         try {
             if (comando == null || comando.trim().isEmpty()) {
                 return "ERROR: Comando vacío";
@@ -87,6 +229,7 @@ public class ServidorUDP {
             }
 
             String operacion = partes[0].toUpperCase();
+            Traza.sumar(Traza.Fase.ANALISIS, inicioAnalisis);
 
             switch (operacion) {
                 // ========== OPERACIONES UNIVERSIDADES ==========
@@ -101,8 +244,29 @@ public class ServidorUDP {
                     return "ERROR: Formato incorrecto. Use: INSERTAR_UNIVERSIDAD|nombre|ciudad|pais";
 
                 case "CONSULTAR_UNIVERSIDADES":
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarUniversidadesDatos();
+                    }
                     return dbManager.consultarUniversidades();
 
+                case "CONSULTAR_UNIVERSIDAD":
+                    if (partes.length == 3 && partes[2].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarUniversidadDatos(Integer.parseInt(partes[1]));
+                    }
+                    if (partes.length == 2) {
+                        return dbManager.consultarUniversidad(Integer.parseInt(partes[1]));
+                    }
+                    return "ERROR: Formato incorrecto. Use: CONSULTAR_UNIVERSIDAD|id[|DATOS]";
+
+                case "BUSCAR_UNIVERSIDAD":
+                    if (partes.length == 2 || partes.length == 3) {
+                        return dbManager.buscarUniversidades(
+                                partes[1],  // texto
+                                partes.length == 3 ? Integer.parseInt(partes[2]) : 0  // máximo de resultados
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: BUSCAR_UNIVERSIDAD|texto[|maximo]";
+
                 case "ACTUALIZAR_UNIVERSIDAD":
                     if (partes.length == 5) {
                         return dbManager.actualizarUniversidad(
@@ -134,8 +298,39 @@ public class ServidorUDP {
                     return "ERROR: Formato incorrecto. Use: INSERTAR_ESTUDIANTE|nombre|apellido|email|edad|universidad_id";
 
                 case "CONSULTAR_ESTUDIANTES":
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarEstudiantesDatos();
+                    }
                     return dbManager.consultarEstudiantes();
 
+                case "CONSULTAR_ESTUDIANTE":
+                    if (partes.length == 3 && partes[2].equalsIgnoreCase("DATOS")) {
+                        return dbManager.consultarEstudianteDatos(Integer.parseInt(partes[1]));
+                    }
+                    if (partes.length == 2) {
+                        return dbManager.consultarEstudiante(Integer.parseInt(partes[1]));
+                    }
+                    return "ERROR: Formato incorrecto. Use: CONSULTAR_ESTUDIANTE|id[|DATOS]";
+
+                case "FILTRAR_ESTUDIANTES":
+                    if (partes.length >= 2 && partes.length <= 4) {
+                        return dbManager.filtrarEstudiantes(
+                                partes[1],  // condiciones
+                                partes.length > 2 ? partes[2] : null,  // orden
+                                partes.length > 3 ? partes[3] : null   // límite
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: FILTRAR_ESTUDIANTES|condiciones[|orden[|limite]]";
+
+                case "BUSCAR_ESTUDIANTE":
+                    if (partes.length == 2 || partes.length == 3) {
+                        return dbManager.buscarEstudiantes(
+                                partes[1],  // texto
+                                partes.length == 3 ? Integer.parseInt(partes[2]) : 0  // máximo de resultados
+                        );
+                    }
+                    return "ERROR: Formato incorrecto. Use: BUSCAR_ESTUDIANTE|texto[|maximo]";
+
                 case "ACTUALIZAR_ESTUDIANTE":
                     if (partes.length == 7) {
                         return dbManager.actualizarEstudiante(
@@ -158,6 +353,19 @@ public class ServidorUDP {
                 case "SALIR":
                     return "✓ Conexión cerrada";
 
+                case "PING":
+                    return "PONG";
+
+                // ========== ADMINISTRACIÓN ==========
+                case "STATS":
+                    if (!Metricas.consultaPermitida(origen)) {
+                        return "ERROR: STATS solo está permitido desde el equipo local";
+                    }
+                    if (partes.length == 2 && partes[1].equalsIgnoreCase("JSON")) {
+                        return Metricas.resumenJson();
+                    }
+                    return Metricas.resumenTexto();
+
                 default:
                     return "ERROR: Comando no reconocido: " + operacion;
             }
@@ -171,10 +379,20 @@ public class ServidorUDP {
 
     public void detener() {
         ejecutando = false;
+        if (hilosPeticiones != null) {
+            hilosPeticiones.shutdown();
+        }
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
-        dbManager.cerrarConexion();
+        if (avisos != null) {
+            avisos.cerrar();
+        }
+        if (!baseCompartida) {
+            limitador.cerrar();
+            Precalentamiento.guardar("udp", dbManager);
+            dbManager.cerrarConexion();
+        }
         System.out.println("\n✓ Servidor UDP detenido");
     }
 
@@ -0,0 +1,81 @@
+package servidor;
+
+import java.io.IOException;
+
+/**
+ * Atiende TCP y UDP en una sola JVM sobre la misma capa de datos: un DatabaseManager, un pool
+ * de conexiones, unas cachés y un registro de métricas para los dos transportes.
+ *
+ * Cada transporte tiene sus propios hilos:
+ *   -Dservidor.unificado.hilosTcp   (por defecto servidor.maxConexiones, 200)
+ *   -Dservidor.unificado.hilosUdp   (por defecto 8)
+ *
+ * Las sesiones con la base se ajustan en un solo lugar, el pool del DatabaseManager, y las
+ * operaciones TCP en curso siguen limitadas por servidor.maxOperacionesBD.
+ */
+public class ServidorUnificado {
+    private static final int HILOS_TCP = Integer.getInteger("servidor.unificado.hilosTcp",
+            Integer.getInteger("servidor.maxConexiones", 200));
+    private static final int HILOS_UDP = Integer.getInteger("servidor.unificado.hilosUdp", 8);
+
+    private final DatabaseManager dbManager;
+    private final ServidorTCP servidorTcp;
+    private final ServidorUDP servidorUdp;
+    private final LimitadorTasa limitador;
+    private boolean detenido;
+
+    public ServidorUnificado() {
+        dbManager = new DatabaseManager();
+        // Una IP tiene el mismo presupuesto de comandos por TCP y por UDP
+        limitador = new LimitadorTasa();
+        servidorTcp = new ServidorTCP(dbManager, limitador, HILOS_TCP, true);
+        servidorUdp = new ServidorUDP(dbManager, limitador, HILOS_UDP, true);
+    }
+
+    public void iniciar() {
+        try {
+            // Un solo calentamiento de la base; el despacho de cada transporte se compila aparte
+            Precalentamiento.ejecutar("servidor", dbManager, comando -> {
+                servidorTcp.despachador().apply(comando);
+                return servidorUdp.despachador().apply(comando);
+            });
+            servidorTcp.abrir();
+            servidorUdp.abrir();
+            System.out.println("✓ TCP (" + HILOS_TCP + " hilos) y UDP (" + HILOS_UDP + " hilos) listos en "
+                    + Precalentamiento.marcarListo("servidor") + " ms desde el arranque");
+
+            Thread hiloUdp = new Thread(servidorUdp::atender, "servidor-udp");
+            hiloUdp.start();
+            servidorTcp.atender();
+        } catch (IOException e) {
+            System.err.println("✗ Error al iniciar servidor: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            detener();
+        }
+    }
+
+    public synchronized void detener() {
+        if (detenido) {
+            return;
+        }
+        detenido = true;
+        servidorTcp.detener();
+        servidorUdp.detener();
+        limitador.cerrar();
+        Precalentamiento.guardar("servidor", dbManager);
+        dbManager.cerrarConexion();
+        System.out.println("\n✓ Servidor detenido");
+    }
+
+    public static void main(String[] args) {
+        ServidorUnificado servidor = new ServidorUnificado();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\n⚠ Cerrando servidor...");
+            servidor.detener();
+        }));
+
+        servidor.iniciar();
+    }
+}
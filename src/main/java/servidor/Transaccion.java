@@ -0,0 +1,176 @@
+package servidor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transacción abierta por un cliente con BEGIN. Retiene una conexión del pool hasta COMMIT,
+ * ROLLBACK o hasta que vence su tiempo máximo, en cuyo caso se revierte sola.
+ *
+ * Los avisos de cambios se guardan y solo se entregan a los oyentes si la transacción se confirma.
+ */
+public class Transaccion implements RuedaTemporizadores.Temporizador {
+    private final Connection conexion;
+    private final PoolConexiones pool;
+    private final long inicio = System.nanoTime();
+    private final long vence;
+
+    // Evita que el vencimiento revierta mientras el hilo del cliente usa la conexión
+    private final ReentrantLock cerrojo = new ReentrantLock();
+    private final List<Cambio> cambiosPendientes = new ArrayList<>();
+    private volatile boolean terminada;
+    private volatile boolean vencida;
+
+    Transaccion(Connection conexion, PoolConexiones pool, long duracionMaxMs) throws SQLException {
+        this.conexion = conexion;
+        this.pool = pool;
+        this.vence = inicio + TimeUnit.MILLISECONDS.toNanos(duracionMaxMs);
+        conexion.setAutoCommit(false);
+    }
+
+    /**
+     * Toma la conexión para ejecutar una sentencia; hay que llamar a dejarDeUsar() al terminar
+     */
+    Connection usar() throws SQLException {
+        cerrojo.lock();
+        if (terminada) {
+            cerrojo.unlock();
+            throw new SQLException("La transacción expiró y fue revertida; envíe ROLLBACK");
+        }
+        return conexion;
+    }
+
+    void dejarDeUsar() {
+        try {
+            if (vencida && !terminada) {
+                revertirPorVencimiento();
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Cambio hecho dentro de la transacción que se avisará a los oyentes al confirmar
+     */
+    static final class Cambio {
+        final String entidad;
+        final String operacion;
+        final int id;
+        final Object fila;
+
+        Cambio(String entidad, String operacion, int id, Object fila) {
+            this.entidad = entidad;
+            this.operacion = operacion;
+            this.id = id;
+            this.fila = fila;
+        }
+    }
+
+    void registrarCambio(String entidad, String operacion, int id, Object fila) {
+        cambiosPendientes.add(new Cambio(entidad, operacion, id, fila));
+    }
+
+    /**
+     * Confirma la transacción y devuelve los cambios que quedaron pendientes de avisar
+     */
+    List<Cambio> confirmar() throws SQLException {
+        cerrojo.lock();
+        try {
+            if (terminada) {
+                throw new SQLException("La transacción expiró y fue revertida");
+            }
+            List<Cambio> cambios = new ArrayList<>(cambiosPendientes);
+            try {
+                conexion.commit();
+            } catch (SQLException e) {
+                conexion.rollback();
+                throw e;
+            } finally {
+                terminar();
+            }
+            Metricas.registrarTiempo("db.transaccion.duracion", inicio);
+            Metricas.incrementar("db.transaccion.confirmadas");
+            return cambios;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Revierte la transacción; devuelve false si ya había sido revertida por vencimiento
+     */
+    boolean revertir() throws SQLException {
+        cerrojo.lock();
+        try {
+            if (terminada) {
+                return false;
+            }
+            try {
+                conexion.rollback();
+            } finally {
+                terminar();
+            }
+            Metricas.incrementar("db.transaccion.revertidas");
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private void terminar() {
+        terminada = true;
+        cambiosPendientes.clear();
+        pool.liberar(conexion);
+    }
+
+    private void revertirPorVencimiento() {
+        try {
+            conexion.rollback();
+        } catch (SQLException e) {
+            Log.warn("✗ Error al revertir transacción vencida: {}", e.getMessage());
+        } finally {
+            terminar();
+        }
+        Metricas.incrementar("db.transaccion.vencidas");
+        Log.warn("⚠ Transacción revertida por superar su tiempo máximo ({} ms)",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+    }
+
+    public boolean isTerminada() {
+        return terminada;
+    }
+
+    // ==================== VENCIMIENTO ====================
+
+    @Override
+    public long vencimiento() {
+        return vence;
+    }
+
+    @Override
+    public boolean activo() {
+        return !terminada;
+    }
+
+    /**
+     * Si el cliente está ejecutando una sentencia, la reversión queda a cargo de dejarDeUsar()
+     */
+    @Override
+    public void vencer() {
+        vencida = true;
+        if (cerrojo.tryLock()) {
+            try {
+                if (!terminada) {
+                    revertirPorVencimiento();
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+}
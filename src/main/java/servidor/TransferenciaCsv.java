@@ -0,0 +1,464 @@
+package servidor;
+
+import modelos.Estudiante;
+import modelos.Universidad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importación y exportación masiva de universidades y estudiantes en archivos CSV del servidor.
+ *
+ * La importación lee el archivo con FileChannel.map en bloques alineados a fin de línea,
+ * los interpreta en paralelo y los inserta en lotes a medida que van estando listos.
+ * La exportación recorre la tabla con un cursor y escribe directo a un FileChannel con búfer.
+ *
+ * Los archivos se buscan dentro de -Dservidor.directorioDatos (por defecto "datos").
+ * Cada registro debe ocupar una sola línea.
+ */
+public class TransferenciaCsv {
+    private static final Path DIRECTORIO = Paths.get(System.getProperty("servidor.directorioDatos", "datos"))
+            .toAbsolutePath().normalize();
+    private static final int TAMANO_BLOQUE = 8 * 1024 * 1024;
+    private static final int TAMANO_LOTE = 1000;
+    private static final long INTERVALO_PROGRESO_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final int HILOS = Runtime.getRuntime().availableProcessors();
+
+    private final DatabaseManager dbManager;
+
+    public TransferenciaCsv(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // ==================== IMPORTACIÓN ====================
+
+    /**
+     * Importa un CSV. La tabla se deduce del encabezado si no se indica.
+     */
+    public String importar(String nombreArchivo, String tabla) {
+        long inicio = System.nanoTime();
+        Path archivo;
+        try {
+            archivo = resolver(nombreArchivo);
+        } catch (IOException e) {
+            return "ERROR: " + e.getMessage();
+        }
+        if (!Files.isRegularFile(archivo)) {
+            return "ERROR: No existe el archivo " + nombreArchivo;
+        }
+
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS, r -> {
+            Thread hilo = new Thread(r, "importacion-csv");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamano = canal.size();
+            long finEncabezado = buscarFinDeLinea(canal, 0);
+            if (finEncabezado < 0) {
+                return "ERROR: El archivo está vacío o no tiene encabezado";
+            }
+            String[] encabezado = leerEncabezado(canal, finEncabezado);
+            Formato formato = Formato.desdeEncabezado(encabezado, tabla);
+
+            // Bloques alineados a fin de línea; cada uno se mapea y se interpreta en un hilo
+            List<long[]> bloques = new ArrayList<>();
+            long desde = finEncabezado + 1;
+            while (desde < tamano) {
+                long hasta = Math.min(tamano, desde + TAMANO_BLOQUE);
+                if (hasta < tamano) {
+                    long finLinea = buscarFinDeLinea(canal, hasta);
+                    hasta = finLinea < 0 ? tamano : finLinea + 1;
+                }
+                bloques.add(new long[]{desde, hasta});
+                desde = hasta;
+            }
+
+            long filasLeidas = 0;
+            long insertadas = 0;
+            long invalidas = 0;
+            long ultimoProgreso = System.nanoTime();
+            long bytesProcesados = finEncabezado + 1;
+
+            // Se interpretan hasta 2 bloques por hilo por adelantado mientras se inserta el actual
+            ArrayDeque<Future<BloqueInterpretado>> pendientes = new ArrayDeque<>();
+            int siguiente = 0;
+            while (siguiente < bloques.size() || !pendientes.isEmpty()) {
+                while (siguiente < bloques.size() && pendientes.size() < HILOS * 2) {
+                    long[] bloque = bloques.get(siguiente++);
+                    pendientes.add(hilos.submit(() -> interpretarBloque(canal, bloque[0], bloque[1], formato)));
+                }
+                BloqueInterpretado bloque = pendientes.poll().get();
+                filasLeidas += bloque.filas;
+                invalidas += bloque.invalidas;
+                insertadas += insertarEnLotes(formato, bloque.registros);
+                bytesProcesados += bloque.bytes;
+
+                if (System.nanoTime() - ultimoProgreso > INTERVALO_PROGRESO_NANOS) {
+                    ultimoProgreso = System.nanoTime();
+                    Log.info("📥 Importando {}: {}% ({} filas, {} filas/s)", nombreArchivo,
+                            tamano == 0 ? 100 : bytesProcesados * 100 / tamano, filasLeidas,
+                            filasPorSegundo(filasLeidas, inicio));
+                }
+            }
+
+            if (formato.conId) {
+                dbManager.ajustarSecuencia(formato.tabla);
+            }
+
+            Metricas.sumar("csv.filasImportadas", insertadas);
+            String resumen = String.format(Locale.ROOT,
+                    "✓ Importadas %d de %d fila(s) en %s en %.2f s (%d filas/s); %d inválida(s), %d rechazada(s) por la base de datos",
+                    insertadas, filasLeidas, formato.tabla, segundos(inicio), filasPorSegundo(filasLeidas, inicio),
+                    invalidas, filasLeidas - invalidas - insertadas);
+            Log.info("📥 {}", resumen);
+            return resumen;
+
+        } catch (IllegalArgumentException e) {
+            return "ERROR: " + e.getMessage();
+        } catch (ExecutionException e) {
+            return "ERROR: Error al leer el archivo - " + e.getCause().getMessage();
+        } catch (IOException | SQLException e) {
+            return "ERROR: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR: Importación interrumpida";
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    private long insertarEnLotes(Formato formato, List<Object> registros) throws SQLException {
+        long insertadas = 0;
+        for (int i = 0; i < registros.size(); i += TAMANO_LOTE) {
+            List<Object> lote = registros.subList(i, Math.min(registros.size(), i + TAMANO_LOTE));
+            if (formato.esEstudiante) {
+                List<Estudiante> estudiantes = new ArrayList<>(lote.size());
+                lote.forEach(r -> estudiantes.add((Estudiante) r));
+                insertadas += dbManager.insertarLoteEstudiantes(estudiantes, formato.conId);
+            } else {
+                List<Universidad> universidades = new ArrayList<>(lote.size());
+                lote.forEach(r -> universidades.add((Universidad) r));
+                insertadas += dbManager.insertarLoteUniversidades(universidades, formato.conId);
+            }
+        }
+        return insertadas;
+    }
+
+    private static final class BloqueInterpretado {
+        final List<Object> registros = new ArrayList<>();
+        long filas;
+        long invalidas;
+        long bytes;
+    }
+
+    private static BloqueInterpretado interpretarBloque(FileChannel canal, long desde, long hasta, Formato formato)
+            throws IOException {
+        BloqueInterpretado resultado = new BloqueInterpretado();
+        resultado.bytes = hasta - desde;
+        MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, desde, hasta - desde);
+
+        byte[] linea = new byte[256];
+        while (mapa.hasRemaining()) {
+            int largo = 0;
+            while (mapa.hasRemaining()) {
+                byte b = mapa.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (largo == linea.length) {
+                    linea = Arrays.copyOf(linea, largo * 2);
+                }
+                linea[largo++] = b;
+            }
+            if (largo > 0 && linea[largo - 1] == '\r') {
+                largo--;
+            }
+            if (largo == 0) {
+                continue;
+            }
+            resultado.filas++;
+            try {
+                resultado.registros.add(formato.convertir(
+                        separarCampos(new String(linea, 0, largo, StandardCharsets.UTF_8))));
+            } catch (IllegalArgumentException e) {
+                resultado.invalidas++;
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Columnas esperadas de cada tabla y cómo convertir una fila del CSV en un objeto de modelos
+     */
+    private static final class Formato {
+        final String tabla;
+        final boolean esEstudiante;
+        final boolean conId;
+        final int[] posiciones;
+
+        private Formato(String tabla, boolean esEstudiante, boolean conId, int[] posiciones) {
+            this.tabla = tabla;
+            this.esEstudiante = esEstudiante;
+            this.conId = conId;
+            this.posiciones = posiciones;
+        }
+
+        static Formato desdeEncabezado(String[] encabezado, String tabla) {
+            List<String> columnas = new ArrayList<>();
+            for (String columna : encabezado) {
+                columnas.add(columna.trim().toLowerCase());
+            }
+            boolean esEstudiante = tabla != null
+                    ? tabla.equalsIgnoreCase("estudiantes")
+                    : columnas.contains("apellido");
+            if (tabla != null && !esEstudiante && !tabla.equalsIgnoreCase("universidades")) {
+                throw new IllegalArgumentException("Tabla desconocida: " + tabla);
+            }
+
+            String[] requeridas = esEstudiante
+                    ? new String[]{"id", "nombre", "apellido", "email", "edad", "universidad_id"}
+                    : new String[]{"id", "nombre", "ciudad", "pais"};
+            int[] posiciones = new int[requeridas.length];
+            for (int i = 0; i < requeridas.length; i++) {
+                posiciones[i] = columnas.indexOf(requeridas[i]);
+                if (posiciones[i] < 0 && i > 0) {
+                    throw new IllegalArgumentException("Falta la columna '" + requeridas[i] + "' en el encabezado");
+                }
+            }
+            return new Formato(esEstudiante ? "estudiantes" : "universidades", esEstudiante,
+                    posiciones[0] >= 0, posiciones);
+        }
+
+        Object convertir(String[] campos) {
+            int id = conId ? Integer.parseInt(campo(campos, 0)) : 0;
+            if (esEstudiante) {
+                return new Estudiante(id, campo(campos, 1), campo(campos, 2), campo(campos, 3),
+                        Integer.parseInt(campo(campos, 4)), Integer.parseInt(campo(campos, 5)));
+            }
+            return new Universidad(id, campo(campos, 1), campo(campos, 2), campo(campos, 3));
+        }
+
+        private String campo(String[] campos, int columna) {
+            int posicion = posiciones[columna];
+            if (posicion >= campos.length) {
+                throw new IllegalArgumentException("Faltan campos");
+            }
+            return campos[posicion].trim();
+        }
+    }
+
+    /**
+     * Separa una línea CSV respetando comillas dobles ("a, b" y "" como comilla escapada)
+     */
+    static String[] separarCampos(String linea) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"') {
+                    if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                        campo.append('"');
+                        i++;
+                    } else {
+                        entreComillas = false;
+                    }
+                } else {
+                    campo.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos.toArray(new String[0]);
+    }
+
+    private static String[] leerEncabezado(FileChannel canal, long finEncabezado) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) finEncabezado);
+        canal.read(buffer, 0);
+        String linea = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        if (linea.startsWith("\uFEFF")) {
+            linea = linea.substring(1);
+        }
+        return separarCampos(linea.endsWith("\r") ? linea.substring(0, linea.length() - 1) : linea);
+    }
+
+    /**
+     * Posición del próximo '\n' a partir de desde, o -1 si no hay más
+     */
+    private static long buscarFinDeLinea(FileChannel canal, long desde) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long posicion = desde;
+        while (true) {
+            buffer.clear();
+            int leidos = canal.read(buffer, posicion);
+            if (leidos <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < leidos; i++) {
+                if (buffer.get(i) == '\n') {
+                    return posicion + i;
+                }
+            }
+            posicion += leidos;
+        }
+    }
+
+    // ==================== EXPORTACIÓN ====================
+
+    /**
+     * Exporta una tabla completa a un CSV; se escribe en un archivo temporal y se renombra al final
+     */
+    public String exportar(String tabla, String nombreArchivo) {
+        long inicio = System.nanoTime();
+        tabla = tabla.toLowerCase();
+        if (!tabla.equals("universidades") && !tabla.equals("estudiantes")) {
+            return "ERROR: Tabla desconocida: " + tabla + ". Use universidades o estudiantes";
+        }
+
+        try {
+            Path archivo = resolver(nombreArchivo);
+            Files.createDirectories(archivo.getParent());
+            Path temporal = archivo.resolveSibling(archivo.getFileName() + ".parcial");
+
+            long filas;
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 EscritorCsv escritor = new EscritorCsv(canal, nombreArchivo, inicio)) {
+                filas = dbManager.exportarTabla(tabla, escritor);
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Metricas.sumar("csv.filasExportadas", filas);
+            String resumen = String.format(Locale.ROOT, "✓ Exportadas %d fila(s) de %s a %s en %.2f s (%d filas/s)",
+                    filas, tabla, nombreArchivo, segundos(inicio), filasPorSegundo(filas, inicio));
+            Log.info("📤 {}", resumen);
+            return resumen;
+
+        } catch (IOException | SQLException e) {
+            return "ERROR: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Escribe filas CSV en un ByteBuffer directo y lo vuelca al canal cuando se llena
+     */
+    public static class EscritorCsv implements AutoCloseable {
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        private final StringBuilder linea = new StringBuilder(256);
+        private final String nombre;
+        private final long inicio;
+        private long filas;
+        private long ultimoProgreso = System.nanoTime();
+
+        EscritorCsv(FileChannel canal, String nombre, long inicio) {
+            this.canal = canal;
+            this.nombre = nombre;
+            this.inicio = inicio;
+        }
+
+        public void escribirFila(String[] valores) throws IOException {
+            linea.setLength(0);
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    linea.append(',');
+                }
+                agregarCampo(valores[i]);
+            }
+            linea.append('\n');
+
+            byte[] bytes = linea.toString().getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                vaciar();
+            }
+            if (bytes.length > buffer.capacity()) {
+                ByteBuffer grande = ByteBuffer.wrap(bytes);
+                while (grande.hasRemaining()) {
+                    canal.write(grande);
+                }
+            } else {
+                buffer.put(bytes);
+            }
+
+            if (++filas % 10000 == 0 && System.nanoTime() - ultimoProgreso > INTERVALO_PROGRESO_NANOS) {
+                ultimoProgreso = System.nanoTime();
+                Log.info("📤 Exportando {}: {} filas ({} filas/s)", nombre, filas, filasPorSegundo(filas, inicio));
+            }
+        }
+
+        private void agregarCampo(String valor) {
+            if (valor == null) {
+                return;
+            }
+            if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0) {
+                linea.append(valor);
+                return;
+            }
+            linea.append('"').append(valor.replace("\"", "\"\"")).append('"');
+        }
+
+        private void vaciar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            vaciar();
+            canal.force(false);
+        }
+    }
+
+    // ==================== UTILIDADES ====================
+
+    /**
+     * Resuelve el nombre dentro del directorio de datos, sin permitir salir de él
+     */
+    private static Path resolver(String nombreArchivo) throws IOException {
+        Path archivo = DIRECTORIO.resolve(nombreArchivo).normalize();
+        if (!archivo.startsWith(DIRECTORIO) || archivo.equals(DIRECTORIO)) {
+            throw new IOException("Ruta no permitida: " + nombreArchivo);
+        }
+        return archivo;
+    }
+
+    private static double segundos(long inicio) {
+        return (System.nanoTime() - inicio) / 1e9;
+    }
+
+    private static long filasPorSegundo(long filas, long inicio) {
+        return (long) (filas / Math.max(0.001, segundos(inicio)));
+    }
+}
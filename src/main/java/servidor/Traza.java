@@ -0,0 +1,128 @@
+package servidor;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tiempo por fase de cada petición, medido con nanoTime en el hilo que la atiende.
+ *
+ * Todas las peticiones suman el tiempo de cada fase en un arreglo del hilo, que se reutiliza de
+ * una petición a la siguiente; el costo es un nanoTime y una lectura de ThreadLocal por punto
+ * de medición. Solo una de cada N (-Dservidor.traza.muestreo=N, 16 por defecto; 1 = todas,
+ * 0 = ninguna) se registra en los histogramas traza.<transporte>.<fase>.
+ *
+ * Toda petición que tarda más de -Dservidor.traza.lentoMs (1000) va al registro de lentas con
+ * su desglose por fase, esté o no en la muestra.
+ *
+ * La fase "respuesta" es lo que queda del total: lógica del servidor, cachés y formato.
+ */
+public final class Traza {
+    private static final int MUESTREO = Integer.getInteger("servidor.traza.muestreo", 16);
+    private static final long LENTO_NANOS = Long.getLong("servidor.traza.lentoMs", 1000L) * 1_000_000L;
+    private static final int MAX_COMANDO_REGISTRO = 100;
+
+    private static final ThreadLocal<Traza> ACTUAL = ThreadLocal.withInitial(Traza::new);
+
+    public enum Fase {
+        // Desde que llega el datagrama hasta que un hilo lo empieza a procesar (solo UDP)
+        RECEPCION("recepcion"),
+        ADMISION("admision"),
+        ANALISIS("analisis"),
+        CONEXION("conexion"),
+        SQL("sql"),
+        RESPUESTA("respuesta"),
+        ENVIO("envio");
+
+        private final String nombre;
+
+        Fase(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    private final long[] nanos = new long[Fase.values().length];
+    // Si la petición en curso se registra en los histogramas
+    private boolean muestreada;
+
+    private Traza() {
+    }
+
+    /**
+     * Empieza una petición en el hilo actual y decide si entra en la muestra de los histogramas
+     *
+     * @return el inicio de la petición, para pasarlo a terminar()
+     */
+    public static long iniciar() {
+        Traza traza = ACTUAL.get();
+        Arrays.fill(traza.nanos, 0);
+        traza.muestreada = MUESTREO > 0 && (MUESTREO == 1 || ThreadLocalRandom.current().nextInt(MUESTREO) == 0);
+        return System.nanoTime();
+    }
+
+    /**
+     * Inicio de una fase
+     */
+    public static long marcar() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Suma a la fase el tiempo desde la marca
+     */
+    public static void sumar(Fase fase, long desde) {
+        ACTUAL.get().nanos[fase.ordinal()] += System.nanoTime() - desde;
+    }
+
+    /**
+     * Cierra la petición: registra las fases si está en la muestra y la anota si fue lenta
+     */
+    public static void terminar(String transporte, String cliente, String comando, long inicio) {
+        long total = System.nanoTime() - inicio;
+        Traza traza = ACTUAL.get();
+
+        long medido = 0;
+        for (Fase fase : Fase.values()) {
+            if (fase != Fase.RESPUESTA) {
+                medido += traza.nanos[fase.ordinal()];
+            }
+        }
+        traza.nanos[Fase.RESPUESTA.ordinal()] = Math.max(0, total - medido);
+        if (traza.muestreada) {
+            for (Fase fase : Fase.values()) {
+                Metricas.histograma("traza." + transporte + "." + fase.nombre).registrar(traza.nanos[fase.ordinal()]);
+            }
+        }
+
+        if (total > LENTO_NANOS) {
+            Metricas.incrementar("traza." + transporte + ".lentas");
+            Log.warn("🐢 Petición lenta [{} {}] {} ms: {} | {}", transporte, cliente, milis(total),
+                    recortar(comando), traza.desglose());
+        }
+    }
+
+    private String desglose() {
+        StringBuilder sb = new StringBuilder();
+        for (Fase fase : Fase.values()) {
+            long valor = nanos[fase.ordinal()];
+            if (valor == 0 && fase == Fase.RECEPCION) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(fase.nombre).append(' ').append(milis(valor)).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    private static String milis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String recortar(String comando) {
+        if (comando == null) {
+            return "";
+        }
+        return comando.length() <= MAX_COMANDO_REGISTRO ? comando : comando.substring(0, MAX_COMANDO_REGISTRO) + "…";
+    }
+}
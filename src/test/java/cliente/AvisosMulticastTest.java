@@ -0,0 +1,192 @@
+package cliente;
+
+import modelos.Estudiante;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import servidor.Metricas;
+import servidor.ServidorUDP;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Avisos de cambios por multicast entre ServidorUDP y ClienteUDP sobre la interfaz de loopback:
+ * el cliente refresca solo los registros avisados y recarga la tabla si pierde avisos.
+ */
+class AvisosMulticastTest {
+    private static final String GRUPO = "239.255.77.1";
+    private static final String INTERFAZ = "lo";
+    private static final long ESPERA_MS = 5000;
+
+    @TempDir
+    static Path directorio;
+
+    private static ServidorUDP servidor;
+    private static ClienteUDP cliente;
+    private static int puertoUdp;
+    private static int puertoMulticast;
+    private static DatagramSocket otroCliente;
+
+    @BeforeAll
+    static void iniciar() throws Exception {
+        assumeTrue(multicastEnLoopback(), "La interfaz de loopback no admite multicast");
+
+        puertoUdp = puertoLibre();
+        puertoMulticast = puertoLibre();
+        System.setProperty("servidor.puertoUdp", String.valueOf(puertoUdp));
+        System.setProperty("servidor.multicast.grupo", GRUPO);
+        System.setProperty("servidor.multicast.puerto", String.valueOf(puertoMulticast));
+        System.setProperty("servidor.multicast.interfaz", INTERFAZ);
+        System.setProperty("cliente.puerto", String.valueOf(puertoUdp));
+        System.setProperty("cliente.multicast.grupo", GRUPO);
+        System.setProperty("cliente.multicast.puerto", String.valueOf(puertoMulticast));
+        System.setProperty("cliente.multicast.interfaz", INTERFAZ);
+        System.setProperty("bd.almacen", "memoria");
+        System.setProperty("bd.memoria.directorio", directorio.resolve("almacen").toString());
+        System.setProperty("servidor.calentamiento", "false");
+        System.setProperty("log.nivel", "WARN");
+        System.setProperty("log.comandos", "NINGUNO");
+
+        servidor = new ServidorUDP();
+        Thread hilo = new Thread(servidor::iniciar, "servidor-prueba");
+        hilo.setDaemon(true);
+        hilo.start();
+
+        otroCliente = new DatagramSocket();
+        otroCliente.setSoTimeout(1000);
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        while (!"PONG".equals(enviar("PING"))) {
+            assertTrue(System.currentTimeMillis() < limite, "El servidor UDP no respondió");
+        }
+
+        cliente = new ClienteUDP();
+        assertTrue(cliente.conectar());
+        String universidad = cliente.enviarComando("INSERTAR_UNIVERSIDAD|Universidad Multicast|Quito|Ecuador");
+        int universidadId = Integer.parseInt(universidad.replaceAll("\\D+", ""));
+        for (int i = 0; i < 3; i++) {
+            cliente.enviarComando("INSERTAR_ESTUDIANTE|Est" + i + "|Prueba|est" + i + "@multicast.test|20|" + universidadId);
+        }
+    }
+
+    @AfterAll
+    static void detener() {
+        if (cliente != null) {
+            cliente.desconectar();
+        }
+        if (servidor != null) {
+            servidor.detener();
+        }
+        if (otroCliente != null) {
+            otroCliente.close();
+        }
+    }
+
+    @Test
+    void refrescaSoloLosRegistrosAvisados() throws Exception {
+        List<Estudiante> estudiantes = cliente.obtenerEstudiantes();
+        Estudiante cambiado = estudiantes.get(0);
+        Estudiante eliminado = estudiantes.get(1);
+        long cargasCompletas = consultas("CONSULTAR_ESTUDIANTES");
+        long refrescos = consultas("CONSULTAR_ESTUDIANTE");
+
+        // Escrituras de otro cliente: este solo se entera por los avisos
+        enviar("ACTUALIZAR_ESTUDIANTE|" + cambiado.getId() + "|Cambiado|Prueba|cambiado@multicast.test|21|"
+                + cambiado.getUniversidadId());
+        enviar("ELIMINAR_ESTUDIANTE|" + eliminado.getId());
+
+        List<Estudiante> actuales = esperarEstudiantes(lista ->
+                lista.stream().anyMatch(e -> e.getEmail().equals("cambiado@multicast.test"))
+                        && lista.stream().noneMatch(e -> e.getId() == eliminado.getId()));
+
+        assertEquals(estudiantes.size() - 1, actuales.size());
+        assertEquals(cargasCompletas, consultas("CONSULTAR_ESTUDIANTES"), "Recargó la tabla completa");
+        assertTrue(consultas("CONSULTAR_ESTUDIANTE") >= refrescos + 2, "No pidió los registros avisados");
+    }
+
+    @Test
+    void unSaltoDeVersionRecargaLaTablaCompleta() throws Exception {
+        cliente.obtenerEstudiantes();
+        long cargasCompletas = consultas("CONSULTAR_ESTUDIANTES");
+
+        // Un publicador que el cliente no había oído, a mitad de su secuencia
+        try (MulticastSocket publicador = new MulticastSocket()) {
+            publicador.setNetworkInterface(NetworkInterface.getByName(INTERFAZ));
+            byte[] aviso = "CAMBIO|ESTUDIANTE|1|ACTUALIZAR|42".getBytes(StandardCharsets.UTF_8);
+            publicador.send(new DatagramPacket(aviso, aviso.length, InetAddress.getByName(GRUPO), puertoMulticast));
+        }
+
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        while (consultas("CONSULTAR_ESTUDIANTES") == cargasCompletas) {
+            assertTrue(System.currentTimeMillis() < limite, "No recargó la tabla tras perder avisos");
+            Thread.sleep(20);
+            cliente.obtenerEstudiantes();
+        }
+    }
+
+    private static List<Estudiante> esperarEstudiantes(Predicate<List<Estudiante>> condicion) throws Exception {
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        List<Estudiante> estudiantes = cliente.obtenerEstudiantes();
+        while (!condicion.test(estudiantes)) {
+            assertTrue(System.currentTimeMillis() < limite, "La caché no recibió los avisos: " + estudiantes);
+            Thread.sleep(20);
+            estudiantes = cliente.obtenerEstudiantes();
+        }
+        return estudiantes;
+    }
+
+    /**
+     * Peticiones atendidas de una operación. El servidor las cuenta después de responder; como
+     * atiende en un solo hilo, la respuesta a un PING asegura que ya contó las anteriores.
+     */
+    private static long consultas(String operacion) throws IOException {
+        enviar("PING");
+        return Metricas.histograma("udp.comando." + operacion).getCantidad();
+    }
+
+    private static String enviar(String comando) throws IOException {
+        byte[] datos = comando.getBytes(StandardCharsets.UTF_8);
+        otroCliente.send(new DatagramPacket(datos, datos.length, InetAddress.getLoopbackAddress(), puertoUdp));
+        byte[] buffer = new byte[65535];
+        DatagramPacket respuesta = new DatagramPacket(buffer, buffer.length);
+        try {
+            otroCliente.receive(respuesta);
+        } catch (IOException e) {
+            return null;
+        }
+        return new String(respuesta.getData(), 0, respuesta.getLength(), StandardCharsets.UTF_8);
+    }
+
+    private static boolean multicastEnLoopback() {
+        try (MulticastSocket socket = new MulticastSocket(0)) {
+            NetworkInterface interfaz = NetworkInterface.getByName(INTERFAZ);
+            if (interfaz == null) {
+                return false;
+            }
+            socket.joinGroup(new InetSocketAddress(InetAddress.getByName(GRUPO), 0), interfaz);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package servidor;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Pruebas de estrés de TCP y UDP a la vez, con cientos de clientes concurrentes sobre el
+ * almacén en memoria (ServidorUnificado en la misma JVM, puertos libres y directorio temporal).
+ *
+ * La prueba de rendimiento mide las operaciones por segundo y solo las exige si se indica una
+ * línea base con -Dprueba.rendimiento.base=archivo: falla si quedan más de
+ * -Dprueba.rendimiento.tolerancia por ciento (30) por debajo. Las cifras dependen del equipo,
+ * por eso el repositorio no trae ninguna línea base y un build normal solo informa la medición:
+ * quien quiera usarla como control la registra en el mismo equipo donde compara. Con
+ * -Dprueba.rendimiento.registrar=true, o si el archivo indicado no existe, la medición se guarda
+ * como nueva línea base (sin archivo indicado, en build/rendimiento-base.properties).
+ */
+class EstresServidoresTest {
+    private static final int CLIENTES_TCP = 100;
+    private static final int CLIENTES_UDP = 100;
+    private static final int ESPERA_RESPUESTA_MS = 15000;
+    private static final int RONDAS_RENDIMIENTO = 5;
+    private static final Pattern ID_INSERTADO = Pattern.compile("con ID: (\\d+)");
+
+    private static final String RUTA_BASE = System.getProperty("prueba.rendimiento.base");
+    private static final double TOLERANCIA = Double.parseDouble(System.getProperty("prueba.rendimiento.tolerancia", "30"));
+    private static final boolean REGISTRAR = Boolean.getBoolean("prueba.rendimiento.registrar");
+
+    @TempDir
+    static Path directorio;
+
+    private static ServidorUnificado servidor;
+    private static int puertoTcp;
+    private static int puertoUdp;
+    private static int universidadId;
+
+    @BeforeAll
+    static void iniciarServidor() throws Exception {
+        puertoTcp = puertoLibre();
+        puertoUdp = puertoLibre();
+        System.setProperty("servidor.puertoTcp", String.valueOf(puertoTcp));
+        System.setProperty("servidor.puertoUdp", String.valueOf(puertoUdp));
+        System.setProperty("bd.almacen", "memoria");
+        System.setProperty("bd.memoria.directorio", directorio.resolve("almacen").toString());
+        System.setProperty("bd.memoria.durabilidad", "ASINCRONA");
+        System.setProperty("servidor.calentamiento", "false");
+        System.setProperty("servidor.esperaMaxMs", "30000");
+        System.setProperty("servidor.unificado.hilosUdp", "16");
+        System.setProperty("log.nivel", "WARN");
+        System.setProperty("log.comandos", "NINGUNO");
+        for (String alcance : new String[]{"origen", "conexion"}) {
+            System.setProperty("servidor.limite." + alcance + ".lecturasPorSeg", "0");
+            System.setProperty("servidor.limite." + alcance + ".escriturasPorSeg", "0");
+        }
+
+        servidor = new ServidorUnificado();
+        Thread hilo = new Thread(servidor::iniciar, "servidor-prueba");
+        hilo.setDaemon(true);
+        hilo.start();
+        esperarServidor();
+
+        try (ConexionTcp conexion = new ConexionTcp()) {
+            universidadId = idInsertado(conexion.enviar("INSERTAR_UNIVERSIDAD|Universidad de Prueba|Lima|Perú"));
+        }
+    }
+
+    @AfterAll
+    static void detenerServidor() {
+        if (servidor != null) {
+            servidor.detener();
+        }
+    }
+
+    // ==================== INVARIANTES ====================
+
+    @Test
+    void insercionesConcurrentesNoSePierdenNiRepitenId() throws Exception {
+        int porCliente = 20;
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        AtomicLong repetidos = new AtomicLong();
+
+        ejecutarClientes(CLIENTES_TCP, CLIENTES_UDP, (cliente, enviar) -> {
+            for (int i = 0; i < porCliente; i++) {
+                String respuesta = enviar.apply(insertarEstudiante("ins", cliente, i, "Nombre"));
+                if (!ids.add(idInsertado(respuesta))) {
+                    repetidos.incrementAndGet();
+                }
+            }
+        });
+
+        int esperados = (CLIENTES_TCP + CLIENTES_UDP) * porCliente;
+        assertEquals(0, repetidos.get(), "IDs repetidos entre inserciones concurrentes");
+        assertEquals(esperados, ids.size());
+
+        Map<Integer, String> guardados = estudiantesGuardados();
+        for (int id : ids) {
+            assertTrue(guardados.containsKey(id), "Inserción perdida: estudiante " + id);
+        }
+        long conPrefijo = guardados.values().stream().filter(email -> email.startsWith("ins-")).count();
+        assertEquals(esperados, conPrefijo, "El listado no coincide con lo insertado");
+    }
+
+    @Test
+    void crudMixtoMantieneConteosConsistentes() throws Exception {
+        int porCliente = 10;
+        Map<Integer, String> vivos = new ConcurrentHashMap<>();
+        Set<Integer> eliminados = ConcurrentHashMap.newKeySet();
+
+        ejecutarClientes(CLIENTES_TCP, CLIENTES_UDP, (cliente, enviar) -> {
+            for (int i = 0; i < porCliente; i++) {
+                int id = idInsertado(enviar.apply(insertarEstudiante("crud", cliente, i, "Original")));
+
+                String email = "crud-" + cliente + "-" + i + "@prueba.edu";
+                String actualizado = enviar.apply("ACTUALIZAR_ESTUDIANTE|" + id + "|Cambiado|Prueba|" + email
+                        + "|21|" + universidadId);
+                esperarExito(actualizado);
+
+                String consultado = enviar.apply("CONSULTAR_ESTUDIANTE|" + id);
+                if (!consultado.contains("Cambiado")) {
+                    throw new AssertionError("Lectura sin la actualización propia de " + id + ": " + consultado);
+                }
+
+                if (i % 2 == 0) {
+                    esperarExito(enviar.apply("ELIMINAR_ESTUDIANTE|" + id));
+                    eliminados.add(id);
+                } else {
+                    vivos.put(id, email);
+                }
+            }
+        });
+
+        int total = (CLIENTES_TCP + CLIENTES_UDP) * porCliente;
+        assertEquals(total / 2, vivos.size());
+        assertEquals(total / 2, eliminados.size());
+
+        Map<Integer, String> guardados = estudiantesGuardados();
+        for (Map.Entry<Integer, String> vivo : vivos.entrySet()) {
+            assertEquals(vivo.getValue(), guardados.get(vivo.getKey()), "Estudiante " + vivo.getKey());
+        }
+        for (int id : eliminados) {
+            assertFalse(guardados.containsKey(id), "Estudiante eliminado sigue listado: " + id);
+        }
+        long conPrefijo = guardados.values().stream().filter(email -> email.startsWith("crud-")).count();
+        assertEquals(vivos.size(), conPrefijo);
+
+        try (ConexionTcp conexion = new ConexionTcp()) {
+            int eliminado = eliminados.iterator().next();
+            assertTrue(conexion.enviar("CONSULTAR_ESTUDIANTE|" + eliminado).startsWith("No hay"),
+                    "La caché devolvió un estudiante eliminado");
+        }
+    }
+
+    // ==================== RENDIMIENTO ====================
+
+    @Test
+    void rendimientoNoRetrocedeRespectoDeLaLineaBase() throws Exception {
+        // Pocos clientes: aquí se mide el costo por operación, no cómo reparte el planificador cientos de hilos
+        int clientes = 8;
+        int operaciones = 500;
+
+        List<Integer> ids = new ArrayList<>();
+        try (ConexionTcp conexion = new ConexionTcp()) {
+            for (int i = 0; i < 200; i++) {
+                ids.add(idInsertado(conexion.enviar(insertarEstudiante("rend", 0, i, "Base"))));
+            }
+        }
+
+        // La primera ronda calienta el JIT y no cuenta; de las demás se toma la mejor, para que
+        // una pausa aislada no haga fallar el build
+        double mejor = 0;
+        for (int ronda = 0; ronda <= RONDAS_RENDIMIENTO; ronda++) {
+            long inicio = System.nanoTime();
+            ejecutarClientes(clientes, clientes, (cliente, enviar) -> {
+                ThreadLocalRandom azar = ThreadLocalRandom.current();
+                for (int i = 0; i < operaciones; i++) {
+                    int indice = azar.nextInt(ids.size());
+                    int id = ids.get(indice);
+                    if (azar.nextInt(100) < 80) {
+                        enviar.apply("CONSULTAR_ESTUDIANTE|" + id);
+                    } else {
+                        esperarExito(enviar.apply("ACTUALIZAR_ESTUDIANTE|" + id + "|Base|Prueba|rend-0-" + indice
+                                + "@prueba.edu|" + (18 + azar.nextInt(10)) + "|" + universidadId));
+                    }
+                }
+            });
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            if (ronda > 0) {
+                mejor = Math.max(mejor, 2.0 * clientes * operaciones / segundos);
+            }
+        }
+
+        if (RUTA_BASE == null && !REGISTRAR) {
+            System.out.printf("Rendimiento: %.0f op/s (sin línea base indicada, no se compara)%n", mejor);
+            return;
+        }
+        Path archivo = Paths.get(RUTA_BASE != null ? RUTA_BASE : "build/rendimiento-base.properties");
+        if (REGISTRAR || !Files.exists(archivo)) {
+            Properties base = new Properties();
+            base.setProperty("operacionesPorSegundo", String.valueOf(Math.round(mejor)));
+            Files.createDirectories(archivo.toAbsolutePath().getParent());
+            try (Writer salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+                base.store(salida, "Línea base de EstresServidoresTest (mejor de " + RONDAS_RENDIMIENTO + " rondas, 80% lecturas)");
+            }
+            System.out.printf("Línea base registrada: %.0f op/s en %s%n", mejor, archivo);
+            return;
+        }
+
+        Properties base = new Properties();
+        try (Reader entrada = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            base.load(entrada);
+        }
+        double esperado = Double.parseDouble(base.getProperty("operacionesPorSegundo"));
+        double minimo = esperado * (1 - TOLERANCIA / 100);
+        System.out.printf("Rendimiento: %.0f op/s (línea base %.0f, mínimo %.0f)%n", mejor, esperado, minimo);
+        assertTrue(mejor >= minimo, String.format(
+                "Rendimiento %.0f op/s, más de %.0f%% por debajo de la línea base de %.0f op/s",
+                mejor, TOLERANCIA, esperado));
+    }
+
+    // ==================== CLIENTES ====================
+
+    @FunctionalInterface
+    private interface Envio {
+        String apply(String comando) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface TrabajoCliente {
+        void ejecutar(int cliente, Envio enviar) throws Exception;
+    }
+
+    /**
+     * Lanza los clientes a la vez (barrera de inicio) y propaga el primer fallo
+     */
+    private static void ejecutarClientes(int clientesTcp, int clientesUdp, TrabajoCliente trabajo) throws Exception {
+        int total = clientesTcp + clientesUdp;
+        ExecutorService hilos = Executors.newFixedThreadPool(total);
+        CountDownLatch largada = new CountDownLatch(1);
+        List<Future<?>> resultados = new ArrayList<>();
+        try {
+            for (int c = 0; c < total; c++) {
+                int cliente = c;
+                boolean tcp = c < clientesTcp;
+                resultados.add(hilos.submit(() -> {
+                    largada.await();
+                    if (tcp) {
+                        try (ConexionTcp conexion = new ConexionTcp()) {
+                            trabajo.ejecutar(cliente, conexion::enviar);
+                        }
+                    } else {
+                        try (ClienteUdp udp = new ClienteUdp()) {
+                            trabajo.ejecutar(cliente, udp::enviar);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            largada.countDown();
+            for (Future<?> resultado : resultados) {
+                resultado.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+    }
+
+    private static final class ConexionTcp implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader entrada;
+        private final PrintWriter salida;
+
+        ConexionTcp() throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), puertoTcp);
+            socket.setSoTimeout(ESPERA_RESPUESTA_MS);
+            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            salida = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Las respuestas de varias líneas terminan en "Total:"; igual que ClienteTCP
+         */
+        String enviar(String comando) throws IOException {
+            salida.println(comando);
+            String linea = leerLinea();
+            if (!comando.startsWith("CONSULTAR") && !comando.startsWith("FILTRAR") && !comando.startsWith("BUSCAR")) {
+                return linea;
+            }
+            StringBuilder respuesta = new StringBuilder(linea);
+            while (!linea.startsWith("Total:") && !linea.startsWith("ERROR:") && !linea.contains("No hay")) {
+                linea = leerLinea();
+                respuesta.append('\n').append(linea);
+            }
+            return respuesta.toString();
+        }
+
+        private String leerLinea() throws IOException {
+            String linea = entrada.readLine();
+            if (linea == null) {
+                throw new IOException("El servidor cerró la conexión");
+            }
+            return linea;
+        }
+
+        @Override
+        public void close() throws IOException {
+            salida.println("SALIR");
+            socket.close();
+        }
+    }
+
+    private static final class ClienteUdp implements AutoCloseable {
+        private final DatagramSocket socket;
+        private final byte[] buffer = new byte[65535];
+
+        ClienteUdp() throws IOException {
+            socket = new DatagramSocket();
+            socket.setSoTimeout(ESPERA_RESPUESTA_MS);
+        }
+
+        String enviar(String comando) throws IOException {
+            byte[] datos = comando.getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(datos, datos.length, InetAddress.getLoopbackAddress(), puertoUdp));
+            DatagramPacket respuesta = new DatagramPacket(buffer, buffer.length);
+            socket.receive(respuesta);
+            return new String(respuesta.getData(), 0, respuesta.getLength(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+
+    // ==================== AUXILIARES ====================
+
+    private static String insertarEstudiante(String prefijo, int cliente, int i, String nombre) {
+        return "INSERTAR_ESTUDIANTE|" + nombre + "|Prueba|" + prefijo + "-" + cliente + "-" + i + "@prueba.edu|20|"
+                + universidadId;
+    }
+
+    private static int idInsertado(String respuesta) {
+        Matcher matcher = ID_INSERTADO.matcher(respuesta);
+        if (!matcher.find()) {
+            throw new AssertionError("Inserción fallida: " + respuesta);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private static void esperarExito(String respuesta) {
+        if (!respuesta.startsWith("✓")) {
+            throw new AssertionError("Operación fallida: " + respuesta);
+        }
+    }
+
+    /**
+     * ID → email de todos los estudiantes, leído por TCP con CONSULTAR_ESTUDIANTES|DATOS
+     */
+    private static Map<Integer, String> estudiantesGuardados() throws IOException {
+        Map<Integer, String> guardados = new HashMap<>();
+        try (ConexionTcp conexion = new ConexionTcp()) {
+            String respuesta = conexion.enviar("CONSULTAR_ESTUDIANTES|DATOS");
+            int listados = 0;
+            for (String linea : respuesta.split("\n")) {
+                if (linea.startsWith("ESTUDIANTE|")) {
+                    String[] campos = linea.split("\\|");
+                    guardados.put(Integer.parseInt(campos[1]), campos[4]);
+                    listados++;
+                } else if (linea.startsWith("Total: ")) {
+                    assertEquals(Integer.parseInt(linea.substring(7).trim()), listados, "Total del listado");
+                }
+            }
+            assertEquals(listados, guardados.size(), "IDs repetidos en el listado");
+        }
+        return guardados;
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void esperarServidor() throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < limite) {
+            try (ConexionTcp tcp = new ConexionTcp(); ClienteUdp udp = new ClienteUdp()) {
+                if (tcp.enviar("PING").equals("PONG") && udp.enviar("PING").equals("PONG")) {
+                    return;
+                }
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        fail("El servidor no respondió a PING en 30 s");
+    }
+}
@@ -0,0 +1,133 @@
+package servidor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lecturas idénticas concurrentes: una sola va al almacén, y un cambio confirmado impide que
+ * las siguientes se unan a una lectura anterior.
+ */
+class LecturasCompartidasTest {
+    private static final int LECTORES = 200;
+
+    private final LecturasCompartidas lecturas = new LecturasCompartidas();
+    private final ExecutorService hilos = Executors.newFixedThreadPool(LECTORES);
+
+    @AfterEach
+    void cerrar() {
+        hilos.shutdownNow();
+    }
+
+    @Test
+    void unaEstampidaHaceUnaSolaLectura() throws Exception {
+        AtomicInteger consultas = new AtomicInteger();
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        String resultado = "tabla";
+
+        List<Future<String>> pedidos = new ArrayList<>();
+        pedidos.add(hilos.submit(() -> lecturas.leer("consultarEstudiantes", () -> {
+            consultas.incrementAndGet();
+            iniciada.countDown();
+            esperar(liberar);
+            return resultado;
+        })));
+        assertTrue(iniciada.await(5, TimeUnit.SECONDS));
+        long unidos = Metricas.valor("db.lecturasUnidas");
+        for (int i = 1; i < LECTORES; i++) {
+            pedidos.add(hilos.submit(() -> lecturas.leer("consultarEstudiantes", () -> {
+                consultas.incrementAndGet();
+                return "otra";
+            })));
+        }
+        esperarUnidos(unidos + LECTORES - 1);
+        liberar.countDown();
+
+        for (Future<String> pedido : pedidos) {
+            assertSame(resultado, pedido.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, consultas.get());
+        assertEquals(0, lecturas.enCurso());
+    }
+
+    @Test
+    void despuesDeUnCambioNoSeUneALaLecturaAnterior() throws Exception {
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> anterior = hilos.submit(() -> lecturas.leer("consultarEstudiantes", () -> {
+            iniciada.countDown();
+            esperar(liberar);
+            return "antes";
+        }));
+        assertTrue(iniciada.await(5, TimeUnit.SECONDS));
+
+        lecturas.cambioRegistrado(OyenteCambios.ESTUDIANTE, OyenteCambios.INSERTAR, 1, null);
+        String nueva = lecturas.leer("consultarEstudiantes", () -> "despues");
+
+        liberar.countDown();
+        assertEquals("despues", nueva);
+        assertEquals("antes", anterior.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void elErrorLlegaATodosLosQueEsperaban() throws Exception {
+        CountDownLatch iniciada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Future<String> primera = hilos.submit(() -> lecturas.leer("listarEstudiantes", () -> {
+            iniciada.countDown();
+            esperar(liberar);
+            throw new SQLException("sin conexión", "08006");
+        }));
+        assertTrue(iniciada.await(5, TimeUnit.SECONDS));
+        long unidos = Metricas.valor("db.lecturasUnidas");
+        Future<String> unida = hilos.submit(() -> lecturas.leer("listarEstudiantes", () -> "no debería leer"));
+        esperarUnidos(unidos + 1);
+        liberar.countDown();
+
+        for (Future<String> pedido : List.of(primera, unida)) {
+            Exception e = assertThrows(Exception.class, () -> pedido.get(5, TimeUnit.SECONDS));
+            SQLException causa = (SQLException) e.getCause();
+            assertEquals("sin conexión", causa.getMessage());
+            assertEquals("08006", causa.getSQLState());
+        }
+    }
+
+    /**
+     * Bloquea la lectura hasta que la prueba la libere
+     */
+    private static void esperar(CountDownLatch liberar) throws SQLException {
+        try {
+            if (!liberar.await(5, TimeUnit.SECONDS)) {
+                throw new SQLException("La prueba no liberó la lectura");
+            }
+        } catch (InterruptedException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Espera a que los pedidos lanzados se hayan unido a la lectura en curso
+     */
+    private void esperarUnidos(long objetivo) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (Metricas.valor("db.lecturasUnidas") < objetivo) {
+            assertTrue(System.currentTimeMillis() < limite, "Los pedidos no se unieron a la lectura en curso");
+            Thread.sleep(5);
+        }
+    }
+}